@@ -0,0 +1,312 @@
+package nl.roboteamtwente.autoref;
+
+import nl.roboteamtwente.autoref.input.StateAssembler;
+import nl.roboteamtwente.autoref.input.VisionTracker;
+import nl.roboteamtwente.autoref.model.Division;
+import nl.roboteamtwente.proto.StateOuterClass;
+import nl.roboteamtwente.proto.WorldOuterClass;
+import nl.roboteamtwente.proto.WorldRobotOuterClass;
+import org.robocup.ssl.proto.SslAutorefCi;
+import org.robocup.ssl.proto.SslGcCommon;
+import org.robocup.ssl.proto.SslGcGeometry;
+import org.robocup.ssl.proto.SslGcRcon;
+import org.robocup.ssl.proto.SslVisionDetectionTracked;
+import org.robocup.ssl.proto.SslVisionWrapperTracked;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the AutoRef in lockstep with a simulator, using the AutoRef CI protocol of the ssl-game-controller.
+ * <p>
+ * The simulator connects over TCP and sends an {@code AutoRefCiInput} for every frame, with the referee message and
+ * either a tracker packet or the raw detections of the cameras. The frame is processed right away, without the
+ * wall clock connection to World, and the game events it results in are sent to the GameController and
+ * acknowledged before the {@code AutoRefCiOutput} with the tracked frame is written back. Once the simulator has
+ * the output, the GameController has seen every game event of that frame, so a simulation can run much faster than
+ * real time and still give the same results every run.
+ * <p>
+ * All messages are length delimited protobuf messages, one client is served at a time.
+ */
+public class AutoRefCiServer {
+    public static final int DEFAULT_PORT = 10013;
+
+    // how long to wait for the GameController to acknowledge the game events of a frame (in ms)
+    private static final long ACK_TIMEOUT = 1000;
+
+    private static final String SOURCE_NAME = "RoboTeam Twente AutoRef";
+
+    private final Supplier<SSLAutoRef> autoRefFactory;
+    private final GameControllerConnection gcConnection;
+    private final String uuid = UUID.randomUUID().toString();
+
+    private Consumer<RuleViolation> onViolation;
+
+    private long frames;
+    private long gameEvents;
+
+    /**
+     * @param autoRefFactory creates the AutoRef to process the frames of a client with, which should not be started
+     * @param gcConnection   the connection to send the game events to, or null to not send them. Its queue must not be
+     *                       used while the server runs, since events are written to the connection directly
+     */
+    public AutoRefCiServer(Supplier<SSLAutoRef> autoRefFactory, GameControllerConnection gcConnection) {
+        this.autoRefFactory = autoRefFactory;
+        this.gcConnection = gcConnection;
+    }
+
+    /**
+     * Accept clients one after another until the thread is interrupted.
+     *
+     * @param port the port to listen on
+     * @throws IOException if the port could not be opened
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Waiting for AutoRef CI clients on port " + port);
+            while (!Thread.currentThread().isInterrupted()) {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.setTcpNoDelay(true);
+                    System.out.println("AutoRef CI client connected from " + socket.getRemoteSocketAddress());
+                    long startFrames = frames;
+                    handle(socket.getInputStream(), socket.getOutputStream());
+                    System.out.println("AutoRef CI client disconnected after " + (frames - startFrames) + " frames");
+                } catch (IOException e) {
+                    System.err.println("AutoRef CI connection failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the frames of one client until it disconnects. Every client gets a new AutoRef, so earlier clients do
+     * not influence the results.
+     *
+     * @param in  the stream to read inputs from
+     * @param out the stream to write outputs to
+     * @throws IOException if reading or writing failed
+     */
+    public void handle(InputStream in, OutputStream out) throws IOException {
+        in = new BufferedInputStream(in);
+        out = new BufferedOutputStream(out);
+
+        SSLAutoRef autoRef = autoRefFactory.get();
+        StateAssembler assembler = new StateAssembler();
+        VisionTracker visionTracker = new VisionTracker();
+        visionTracker.setOutputInterval(0);
+
+        SslAutorefCi.AutoRefCiInput input;
+        while ((input = SslAutorefCi.AutoRefCiInput.parseDelimitedFrom(in)) != null) {
+            if (input.hasGeometry()) {
+                assembler.onGeometry(input.getGeometry());
+            }
+            if (input.hasRefereeMessage()) {
+                assembler.onReferee(input.getRefereeMessage());
+            }
+
+            SslAutorefCi.AutoRefCiOutput.Builder output = SslAutorefCi.AutoRefCiOutput.newBuilder();
+            StateOuterClass.State state = null;
+            if (input.hasTrackerWrapperPacket()) {
+                state = assembler.onTracker(input.getTrackerWrapperPacket());
+                output.setTrackerWrapperPacket(input.getTrackerWrapperPacket());
+            } else if (input.getDetectionCount() > 0) {
+                for (int i = 0; i < input.getDetectionCount(); i++) {
+                    visionTracker.update(input.getDetection(i));
+                }
+
+                WorldOuterClass.World world = visionTracker.getWorld();
+                state = assembler.onWorld(world);
+                output.setTrackerWrapperPacket(toTrackerPacket(world, visionTracker.getTime()));
+            }
+
+            if (state != null) {
+                process(autoRef, state);
+            }
+
+            output.build().writeDelimitedTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Run the validators over a frame and send the resulting game events to the GameController, waiting until it
+     * acknowledged all of them.
+     */
+    private void process(SSLAutoRef autoRef, StateOuterClass.State state) {
+        frames++;
+        autoRef.processWorldState(state);
+        List<RuleViolation> violations = autoRef.getReferee().validate();
+
+        List<CompletableFuture<SslGcRcon.ControllerReply>> replies = new ArrayList<>();
+        for (RuleViolation violation : violations) {
+            gameEvents++;
+            if (onViolation != null) {
+                onViolation.accept(violation);
+            }
+
+            if (gcConnection != null) {
+                try {
+                    replies.add(gcConnection.sendGameEvent(violation.toPacket()));
+                } catch (IOException e) {
+                    System.err.println("Failed to send game event to GameController: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        for (CompletableFuture<SslGcRcon.ControllerReply> reply : replies) {
+            try {
+                reply.get(ACK_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                System.err.println("Game event not accepted by GameController: " + e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                System.err.println("GameController did not acknowledge game event within " + ACK_TIMEOUT + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Convert a world tracked by the AutoRef itself to a tracker packet for the GameController.
+     */
+    private SslVisionWrapperTracked.TrackerWrapperPacket toTrackerPacket(WorldOuterClass.World world, double timestamp) {
+        SslVisionDetectionTracked.TrackedFrame.Builder frame = SslVisionDetectionTracked.TrackedFrame.newBuilder()
+                .setFrameNumber(world.getId())
+                .setTimestamp(timestamp);
+
+        if (world.hasBall()) {
+            frame.addBalls(SslVisionDetectionTracked.TrackedBall.newBuilder()
+                    .setPos(SslGcGeometry.Vector3.newBuilder().setX(world.getBall().getPos().getX()).setY(world.getBall().getPos().getY()).setZ(world.getBall().getZ()))
+                    .setVel(SslGcGeometry.Vector3.newBuilder().setX(world.getBall().getVel().getX()).setY(world.getBall().getVel().getY()).setZ(world.getBall().getZVel()))
+                    .setVisibility(world.getBall().getVisible() ? 1 : 0));
+        }
+
+        for (WorldRobotOuterClass.WorldRobot robot : world.getYellowList()) {
+            frame.addRobots(toTrackedRobot(robot, SslGcCommon.Team.YELLOW));
+        }
+        for (WorldRobotOuterClass.WorldRobot robot : world.getBlueList()) {
+            frame.addRobots(toTrackedRobot(robot, SslGcCommon.Team.BLUE));
+        }
+
+        return SslVisionWrapperTracked.TrackerWrapperPacket.newBuilder()
+                .setUuid(uuid)
+                .setSourceName(SOURCE_NAME)
+                .setTrackedFrame(frame)
+                .build();
+    }
+
+    private static SslVisionDetectionTracked.TrackedRobot toTrackedRobot(WorldRobotOuterClass.WorldRobot robot, SslGcCommon.Team team) {
+        return SslVisionDetectionTracked.TrackedRobot.newBuilder()
+                .setRobotId(SslGcCommon.RobotId.newBuilder().setId(robot.getId()).setTeam(team))
+                .setPos(SslGcGeometry.Vector2.newBuilder().setX(robot.getPos().getX()).setY(robot.getPos().getY()))
+                .setOrientation(robot.getAngle())
+                .setVel(SslGcGeometry.Vector2.newBuilder().setX(robot.getVel().getX()).setY(robot.getVel().getY()))
+                .setVelAngular(robot.getW())
+                .build();
+    }
+
+    /**
+     * @param onViolation called for every violation, on the thread serving the client
+     */
+    public void setOnViolation(Consumer<RuleViolation> onViolation) {
+        this.onViolation = onViolation;
+    }
+
+    /**
+     * @return the amount of frames processed
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the amount of game events raised
+     */
+    public long getGameEvents() {
+        return gameEvents;
+    }
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        String gc = null;
+        Division division = Division.B;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--port=")) {
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--gc=")) {
+                    gc = arg.substring("--gc=".length());
+                } else if (arg.startsWith("--division=")) {
+                    division = arg.substring("--division=".length()).equalsIgnoreCase("a") ? Division.A : Division.B;
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse port program argument.");
+            System.exit(1);
+            return;
+        }
+
+        GameControllerConnection gcConnection = null;
+        if (gc != null) {
+            String[] parts = gc.split(":");
+            if (parts.length != 2) {
+                System.err.println("Invalid GameController address " + gc + ", use --gc=<ip>:<port>");
+                System.exit(1);
+                return;
+            }
+
+            gcConnection = new GameControllerConnection();
+            gcConnection.setIp(parts[0]);
+            try {
+                gcConnection.setPort(Integer.parseInt(parts[1]));
+            } catch (NumberFormatException e) {
+                System.err.println("Failed to parse port in GameController address " + gc);
+                System.exit(1);
+                return;
+            }
+            gcConnection.setActive(true);
+
+            Thread gcThread = new Thread(gcConnection, "AutoRef GameController");
+            gcThread.setDaemon(true);
+            gcThread.start();
+        }
+
+        Division matchDivision = division;
+        AutoRefCiServer server = new AutoRefCiServer(() -> {
+            SSLAutoRef autoRef = new SSLAutoRef();
+            autoRef.setDivision(matchDivision);
+            return autoRef;
+        }, gcConnection);
+        server.setOnViolation((violation) -> System.out.println(violation));
+        try {
+            server.serve(port);
+        } catch (IOException e) {
+            System.err.println("Failed to listen on port " + port);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package nl.roboteamtwente.autoref;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.*;
+import java.security.interfaces.RSAKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+/**
+ * The RSA key pair the AutoRef signs its messages to the GameController with.
+ * <p>
+ * The key pair can be kept in a pair of PEM files, the private key in PKCS#8 and the public key in X.509
+ * format. The public key file can be added to the trusted AutoRef keys of the GameController. The GameController
+ * then checks that every message is signed over the token of its last reply, so the AutoRef waits for the reply to
+ * an event before sending the next one.
+ * <p>
+ * A stored key pair is trusted for a long time, so it gets a 2048 bit key and the private key file is only
+ * readable by its owner where the file system supports POSIX permissions. A key pair that is not stored only
+ * lives as long as the connection and is not trusted by the GameController, so it keeps a small key that is
+ * generated quickly.
+ */
+public final class AutoRefKeys {
+    private static final String ALGORITHM = "RSA";
+    private static final int KEY_SIZE = 512;
+    private static final int STORED_KEY_SIZE = 2048;
+
+    private static final String PRIVATE_KEY_TYPE = "PRIVATE KEY";
+    private static final String PUBLIC_KEY_TYPE = "PUBLIC KEY";
+
+    private AutoRefKeys() {
+    }
+
+    /**
+     * Generate a new key pair that is not stored anywhere.
+     *
+     * @return the new key pair
+     * @throws NoSuchAlgorithmException if RSA is not supported
+     */
+    public static KeyPair generate() throws NoSuchAlgorithmException {
+        return generate(KEY_SIZE);
+    }
+
+    private static KeyPair generate(int keySize) throws NoSuchAlgorithmException {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance(ALGORITHM);
+        keyGen.initialize(keySize, new SecureRandom());
+        return keyGen.generateKeyPair();
+    }
+
+    /**
+     * Load the key pair from the given file, or generate one and store it there if the file does not exist.
+     * The public key is stored next to it, with {@code .pem} in the name replaced by {@code .pub.pem}.
+     *
+     * @param privateKeyFile the file with the private key
+     * @return the key pair
+     * @throws IOException              if the files could not be read or written
+     * @throws GeneralSecurityException if the files do not contain a valid key pair
+     */
+    public static KeyPair loadOrCreate(Path privateKeyFile) throws IOException, GeneralSecurityException {
+        String name = privateKeyFile.getFileName().toString();
+        Path publicKeyFile = privateKeyFile.resolveSibling((name.endsWith(".pem") ? name.substring(0, name.length() - 4) : name) + ".pub.pem");
+
+        if (Files.exists(privateKeyFile)) {
+            KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+            PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(readPem(privateKeyFile, PRIVATE_KEY_TYPE)));
+            PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(readPem(publicKeyFile, PUBLIC_KEY_TYPE)));
+
+            if (privateKey instanceof RSAKey rsaKey && rsaKey.getModulus().bitLength() < STORED_KEY_SIZE) {
+                System.err.println("The GameController key in " + privateKeyFile.toAbsolutePath() + " has only " + rsaKey.getModulus().bitLength()
+                        + " bits, delete it to generate a " + STORED_KEY_SIZE + " bit key pair and trust the new public key instead.");
+            }
+            return new KeyPair(publicKey, privateKey);
+        }
+
+        KeyPair keyPair = generate(STORED_KEY_SIZE);
+        if (privateKeyFile.getParent() != null) {
+            Files.createDirectories(privateKeyFile.getParent());
+        }
+        createOwnerOnly(privateKeyFile);
+        writePem(privateKeyFile, PRIVATE_KEY_TYPE, keyPair.getPrivate().getEncoded());
+        writePem(publicKeyFile, PUBLIC_KEY_TYPE, keyPair.getPublic().getEncoded());
+
+        System.out.println("Generated new GameController key pair in " + privateKeyFile.toAbsolutePath());
+        return keyPair;
+    }
+
+    private static byte[] readPem(Path file, String type) throws IOException {
+        String pem = Files.readString(file, StandardCharsets.US_ASCII);
+        String begin = "-----BEGIN " + type + "-----";
+        String end = "-----END " + type + "-----";
+
+        int start = pem.indexOf(begin);
+        int stop = pem.indexOf(end);
+        if (start < 0 || stop < start) {
+            throw new IOException("No " + type + " found in " + file);
+        }
+
+        return Base64.getMimeDecoder().decode(pem.substring(start + begin.length(), stop));
+    }
+
+    /**
+     * Create an empty file that only its owner can read and write, before anything secret is written to it.
+     * On file systems without POSIX permissions the file is left to be created with the default permissions.
+     */
+    private static void createOwnerOnly(Path file) throws IOException {
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+    }
+
+    private static void writePem(Path file, String type, byte[] encoded) throws IOException {
+        String pem = "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(encoded)
+                + "\n-----END " + type + "-----\n";
+        Files.writeString(file, pem, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,266 @@
+package nl.roboteamtwente.autoref;
+
+import org.robocup.ssl.proto.SslGcCommon;
+import org.robocup.ssl.proto.SslGcGameEvent;
+import org.robocup.ssl.proto.SslGcRcon;
+import org.robocup.ssl.proto.SslGcRconAutoref;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many game events per second the GameController connection gets acknowledged, for several pipeline
+ * windows, against a stand-in GameController on the loopback interface.
+ * <p>
+ * The stand-in answers every message after a fixed delay, which stands for the round trip to a GameController on
+ * another machine. Like the real one, it hands out a new token with every reply and, for signed messages, rejects
+ * those that are not signed over the last token it handed out. The signature itself is not checked.
+ */
+public class GameControllerBenchmark {
+    private static final SslGcGameEvent.GameEvent EVENT = SslGcGameEvent.GameEvent.newBuilder()
+            .setType(SslGcGameEvent.GameEvent.Type.BOT_KICKED_BALL_TOO_FAST)
+            .setBotKickedBallTooFast(SslGcGameEvent.GameEvent.BotKickedBallTooFast.newBuilder()
+                    .setByTeam(SslGcCommon.Team.BLUE)
+                    .setByBot(3)
+                    .setInitialBallSpeed(7.2f))
+            .build();
+
+    private final int events;
+    private final long delay;
+
+    /**
+     * @param events the amount of game events to send in every run
+     * @param delay  the time the stand-in GameController takes to reply, in microseconds
+     */
+    public GameControllerBenchmark(int events, long delay) {
+        this.events = events;
+        this.delay = delay;
+    }
+
+    /**
+     * Send all game events through a new connection and wait until every one of them was answered.
+     *
+     * @param window  the pipeline window
+     * @param signing if the messages are signed
+     * @return the outcome of the run
+     * @throws IOException          if the stand-in GameController could not be started
+     * @throws InterruptedException if interrupted while waiting for the replies
+     */
+    public Result run(int window, boolean signing) throws IOException, InterruptedException {
+        try (StandInGameController gameController = new StandInGameController(delay)) {
+            gameController.start();
+
+            GameControllerConnection connection = new GameControllerConnection(events);
+            connection.setIp("127.0.0.1");
+            connection.setPort(gameController.getPort());
+            connection.setActive(true);
+            connection.setSigning(signing);
+            connection.setPipelineWindow(window);
+            // every event is added at once, none of them should expire while the others are sent
+            connection.setMaxEventAge(TimeUnit.HOURS.toMillis(1));
+
+            Thread thread = new Thread(connection, "AutoRef GameController");
+            thread.setDaemon(true);
+            thread.start();
+
+            try {
+                if (!gameController.awaitRegistration(10, TimeUnit.SECONDS)) {
+                    throw new IOException("The connection did not register with the stand-in GameController");
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < events; i++) {
+                    connection.addToQueue(EVENT);
+                }
+
+                long deadline = start + TimeUnit.MINUTES.toNanos(1);
+                while (answered(connection) < events && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                long nanos = System.nanoTime() - start;
+
+                return new Result(window, signing, connection.getSentEvents() - connection.getRejectedEvents(),
+                        connection.getRejectedEvents(), events - answered(connection), nanos, connection.getAverageAckLatencyNanos());
+            } finally {
+                connection.setActive(false);
+                thread.interrupt();
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static long answered(GameControllerConnection connection) {
+        return connection.getSentEvents() + connection.getExpiredEvents() + connection.getDroppedEvents();
+    }
+
+    /**
+     * The outcome of one run.
+     *
+     * @param window       the pipeline window
+     * @param signing      if the messages were signed
+     * @param accepted     the amount of events the GameController accepted
+     * @param rejected     the amount of events the GameController rejected
+     * @param lost         the amount of events that were not answered, dropped or expired
+     * @param nanos        the time from adding the first event to the last reply
+     * @param averageNanos the average time between adding an event and its reply over the last events
+     */
+    public record Result(int window, boolean signing, long accepted, long rejected, long lost, long nanos, double averageNanos) {
+        void print() {
+            System.out.printf("window %2d, %-8s %9.0f events/s, %6d accepted, %6d rejected, %4d lost, %8.1f ms average reply%n",
+                    window, signing ? "signed:" : "unsigned:", (accepted + rejected) / (nanos / 1e9), accepted, rejected, lost, averageNanos / 1e6);
+        }
+    }
+
+    /**
+     * Speaks the AutoRef side of the GameController remote control protocol, replying to every message after a delay.
+     */
+    static class StandInGameController implements AutoCloseable {
+        private final long delay;
+        private final ServerSocket serverSocket;
+        private final ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Stand-in GameController replies");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final CountDownLatch registered = new CountDownLatch(1);
+
+        // only used on the reply thread after the registration
+        private String token;
+
+        /**
+         * @param delay the time to wait before replying to a message, in microseconds
+         */
+        StandInGameController(long delay) throws IOException {
+            this.delay = delay;
+            this.serverSocket = new ServerSocket(0);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void start() {
+            Thread thread = new Thread(this::serve, "Stand-in GameController");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean awaitRegistration(long timeout, TimeUnit unit) throws InterruptedException {
+            return registered.await(timeout, unit);
+        }
+
+        private void serve() {
+            try (Socket socket = serverSocket.accept()) {
+                OutputStream out = socket.getOutputStream();
+
+                token = UUID.randomUUID().toString();
+                reply(out, SslGcRcon.ControllerReply.newBuilder().setNextToken(token));
+
+                SslGcRconAutoref.AutoRefRegistration registration = SslGcRconAutoref.AutoRefRegistration.parseDelimitedFrom(socket.getInputStream());
+                if (registration == null) {
+                    return;
+                }
+                reply(out, check(registration.hasSignature() ? registration.getSignature() : null));
+                registered.countDown();
+
+                SslGcRconAutoref.AutoRefToController message;
+                while ((message = SslGcRconAutoref.AutoRefToController.parseDelimitedFrom(socket.getInputStream())) != null) {
+                    SslGcRcon.Signature signature = message.hasSignature() ? message.getSignature() : null;
+                    replies.schedule(() -> {
+                        try {
+                            reply(out, check(signature));
+                        } catch (IOException e) {
+                            //empty, the connection is closed
+                        }
+                    }, delay, TimeUnit.MICROSECONDS);
+                }
+            } catch (IOException e) {
+                //empty, the connection or the server is closed
+            }
+        }
+
+        /**
+         * Check that a signed message is signed over the last token, and hand out the next token.
+         */
+        private SslGcRcon.ControllerReply.Builder check(SslGcRcon.Signature signature) {
+            SslGcRcon.ControllerReply.Builder reply = SslGcRcon.ControllerReply.newBuilder();
+            if (signature != null && !signature.getToken().equals(token)) {
+                reply.setStatusCode(SslGcRcon.ControllerReply.StatusCode.REJECTED).setReason("Invalid token");
+            } else {
+                reply.setStatusCode(SslGcRcon.ControllerReply.StatusCode.OK);
+            }
+
+            token = UUID.randomUUID().toString();
+            return reply.setNextToken(token);
+        }
+
+        private static void reply(OutputStream out, SslGcRcon.ControllerReply.Builder reply) throws IOException {
+            synchronized (out) {
+                SslGcRconAutoref.ControllerToAutoRef.newBuilder().setControllerReply(reply).build().writeDelimitedTo(out);
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            replies.shutdownNow();
+            serverSocket.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        int events = 2000;
+        long delay = 1000;
+        List<Integer> windows = new ArrayList<>(List.of(1, 2, 4, 8, 16));
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--events=")) {
+                    events = Integer.parseInt(arg.substring("--events=".length()));
+                } else if (arg.startsWith("--delay=")) {
+                    delay = Long.parseLong(arg.substring("--delay=".length()));
+                } else if (arg.startsWith("--windows=")) {
+                    windows.clear();
+                    for (String window : arg.substring("--windows=".length()).split(",")) {
+                        windows.add(Integer.parseInt(window));
+                    }
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse events, delay or windows program argument.");
+            System.exit(1);
+            return;
+        }
+
+        GameControllerBenchmark benchmark = new GameControllerBenchmark(events, delay);
+        System.out.println("Sending " + events + " game events to a stand-in GameController that replies after " + delay + " us");
+        try {
+            // warm up the JIT, the key pair and the connection code
+            benchmark.run(1, false);
+
+            benchmark.run(1, true).print();
+            for (int window : windows) {
+                benchmark.run(window, false).print();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to run the stand-in GameController");
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,26 +1,78 @@
 package nl.roboteamtwente.autoref;
 
 import com.google.protobuf.ByteString;
+import nl.roboteamtwente.autoref.metrics.LatencyMetrics;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcRcon;
 import org.robocup.ssl.proto.SslGcRconAutoref;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class GameControllerConnection implements Runnable {
+    //default amount of game events that can wait to be sent
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    //amount of events the average latency is taken over
+    private static final int AVERAGE_WINDOW = 100;
+    //default amount of game events that can be sent before the reply to the first one arrived, more is only possible without signing
+    public static final int DEFAULT_PIPELINE_WINDOW = 1;
+    //default time an event can wait to be sent before it is no longer worth sending (in ms)
+    public static final long DEFAULT_MAX_EVENT_AGE = 5000;
+
     private Socket socket;
+    //the key pair is created once and kept over reconnects, optionally stored in a file
+    private Path keyFile;
+    private KeyPair keyPair;
     private Signature signature;
-    private String token;
+    //when false, messages are sent without signature, which GC only accepts if it has no public key of this AutoRef
+    private boolean signing = true;
+    //written by the reply thread, read when signing the next message
+    private volatile String token;
     private String ip;
     private int port;
-    private List<SslGcGameEvent.GameEvent> queue = new ArrayList<>();
+    private final BlockingDeque<QueuedEvent> queue;
+    private long maxEventAge = DEFAULT_MAX_EVENT_AGE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
     private boolean active;
     //time between attempts to reconnect (in ms)
     private final int reconnectSleep = 1000;
+    //time the sending thread waits for a new event before checking the connection again (in ms)
+    private final int queuePollTimeout = 100;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong sentEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final AtomicLong expiredEvents = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile long lastAckLatency;
+    private volatile double averageAckLatency;
+
+    //events sent on the current connection which GC did not reply to yet, in the order they were sent
+    private volatile Deque<PendingEvent> inFlight = new ConcurrentLinkedDeque<>();
+    private Semaphore pipelineWindow = new Semaphore(DEFAULT_PIPELINE_WINDOW);
+    private int pipelineWindowSize = DEFAULT_PIPELINE_WINDOW;
+    private Consumer<GameEventRejectedException> onRejected;
+    //when set, the time events spend in every stage is recorded
+    private LatencyMetrics latencyMetrics;
+
+    public GameControllerConnection() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity the amount of game events that can wait to be sent before the overflow policy applies
+     */
+    public GameControllerConnection(int queueCapacity) {
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+    }
 
 
     /**
@@ -37,14 +89,11 @@ public class GameControllerConnection implements Runnable {
         try {
             this.socket = new Socket(ip, port);
 
-            //Generate keyPair
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-            keyGen.initialize(512, new SecureRandom());
-            KeyPair keyPair = keyGen.generateKeyPair();
-
-            //Generate signature
-            this.signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(keyPair.getPrivate());
+            //Generate signature, only the first time, since the key pair does not change
+            if (this.signature == null) {
+                this.signature = Signature.getInstance("SHA256withRSA");
+                signature.initSign(getKeyPair().getPrivate());
+            }
 
             //receive token from GameController
             SslGcRcon.ControllerReply reply = receivePacket();
@@ -56,12 +105,13 @@ public class GameControllerConnection implements Runnable {
             }
 
             //send registration
-            SslGcRconAutoref.AutoRefRegistration registration = SslGcRconAutoref.AutoRefRegistration.newBuilder()
-                    .setIdentifier("RoboTeam Twente")
-                    .setSignature(getSignature())
-                    .build();
+            SslGcRconAutoref.AutoRefRegistration.Builder registration = SslGcRconAutoref.AutoRefRegistration.newBuilder()
+                    .setIdentifier("RoboTeam Twente");
+            if (isSigning()) {
+                registration.setSignature(getSignature());
+            }
 
-            registration.writeDelimitedTo(socket.getOutputStream());
+            registration.build().writeDelimitedTo(socket.getOutputStream());
             socket.getOutputStream().flush();
 
             //receive reply
@@ -69,6 +119,8 @@ public class GameControllerConnection implements Runnable {
             if (reply != null && reply.getStatusCode() != SslGcRcon.ControllerReply.StatusCode.OK) {
                 System.out.println("Failed to connect to GameController: " + reply.getReason());
                 reconnect();
+            } else if (reply != null) {
+                startReplyThread();
             }
         } catch (IOException e) {
             //prevent spamming of trying to reconnect
@@ -83,7 +135,7 @@ public class GameControllerConnection implements Runnable {
     }
 
     /**
-     * Check if something is in the queue, if there is, send the first item in the queue to GC.
+     * Wait for game events and send them to GC as soon as they arrive.
      * queue follows FIFO principle
      *
      * @throws InterruptedException
@@ -91,22 +143,113 @@ public class GameControllerConnection implements Runnable {
     private void processQueue() throws InterruptedException {
         while (!Thread.currentThread().isInterrupted()) {
             if (isConnected()) {
-                if (!queue.isEmpty()) {
-                    //get first gameEvent from queue
-                    SslGcGameEvent.GameEvent gameEvent = queue.remove(0);
-                    try {
-                        sendGameEvent(gameEvent);
-                    } catch (IOException e) {
-                        reconnect();
-                    } catch (RuntimeException e) {
-                        System.out.println(e.getMessage());
+                //wait for the first gameEvent in the queue, but wake up once in a while to check the connection
+                QueuedEvent queuedEvent = queue.poll(queuePollTimeout, TimeUnit.MILLISECONDS);
+                if (queuedEvent == null) {
+                    continue;
+                }
+
+                //events that waited too long, for example while reconnecting, are no longer relevant
+                long dequeuedAt = System.nanoTime();
+                if (dequeuedAt - queuedEvent.enqueuedAt() > TimeUnit.MILLISECONDS.toNanos(maxEventAge)) {
+                    expiredEvents.incrementAndGet();
+                    continue;
+                }
+
+                try {
+                    //the reply is handled on the reply thread, so the next event can be sent right away
+                    CompletableFuture<SslGcRcon.ControllerReply> reply = sendGameEvent(queuedEvent.event());
+                    long sentAt = System.nanoTime();
+                    if (latencyMetrics != null) {
+                        latencyMetrics.record(LatencyMetrics.Stage.QUEUE, dequeuedAt - queuedEvent.enqueuedAt());
+                        latencyMetrics.record(LatencyMetrics.Stage.SEND, sentAt - dequeuedAt);
                     }
+                    reply.whenComplete((result, error) -> handleReply(queuedEvent, sentAt, error));
+                } catch (IOException e) {
+                    //send it again once the connection is back
+                    requeue(queuedEvent);
+                    reconnect();
                 }
             } else if (active) {
                 reconnect();
+            } else {
+                //not connected and not supposed to be, check again in a bit
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * Handle the outcome of sending a queued event.
+     *
+     * @param queuedEvent the event that was sent
+     * @param sentAt      the time the event was written to the connection, from {@link System#nanoTime()}
+     * @param error       null if GC accepted the event, otherwise why it was not accepted
+     */
+    private void handleReply(QueuedEvent queuedEvent, long sentAt, Throwable error) {
+        if (error instanceof GameEventRejectedException rejected) {
+            rejectedEvents.incrementAndGet();
+            recordAck(queuedEvent, sentAt);
+
+            if (onRejected != null) {
+                onRejected.accept(rejected);
+            } else {
+                System.out.println(rejected.getMessage());
+            }
+        } else if (error == null) {
+            recordAck(queuedEvent, sentAt);
+        } else if (error instanceof IOException) {
+            //the connection was lost before GC replied, send it again once the connection is back
+            requeue(queuedEvent);
+        }
+    }
+
+    /**
+     * Put an event that could not be sent back at the front of the queue, dropping it if the queue is full.
+     */
+    private void requeue(QueuedEvent queuedEvent) {
+        if (!queue.offerFirst(queuedEvent)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the key pair to sign messages with, loaded or created the first time it is needed
+     */
+    private KeyPair getKeyPair() throws NoSuchAlgorithmException {
+        if (keyPair == null) {
+            if (keyFile != null) {
+                try {
+                    keyPair = AutoRefKeys.loadOrCreate(keyFile);
+                } catch (IOException | GeneralSecurityException e) {
+                    System.err.println("Failed to load GameController key pair from " + keyFile + ", using a temporary one: " + e.getMessage());
+                }
+            }
+
+            if (keyPair == null) {
+                keyPair = AutoRefKeys.generate();
+            }
+        }
+        return keyPair;
+    }
+
+    /**
+     * Update the latency between adding an event to the queue and receiving the reply of GC.
+     */
+    private void recordAck(QueuedEvent queuedEvent, long sentAt) {
+        long now = System.nanoTime();
+        long latency = now - queuedEvent.enqueuedAt();
+        long count = sentEvents.incrementAndGet();
+
+        lastAckLatency = latency;
+        averageAckLatency += (latency - averageAckLatency) / Math.min(count, AVERAGE_WINDOW);
+
+        if (latencyMetrics != null) {
+            latencyMetrics.record(LatencyMetrics.Stage.REPLY, now - sentAt);
+            if (queuedEvent.worldTime() > 0) {
+                //the World timestamp is wall clock time, possibly of another machine
+                latencyMetrics.record(LatencyMetrics.Stage.END_TO_END, System.currentTimeMillis() * 1_000_000 - queuedEvent.worldTime());
             }
-            //small delay to not always check queue but check in intervals
-            Thread.sleep(10); //1 second / 100Hz = 10ms
         }
     }
 
@@ -130,15 +273,15 @@ public class GameControllerConnection implements Runnable {
      * Reconnect
      */
     private synchronized void reconnect() {
+        //the queue is kept, events that are too old by the time the connection is back are skipped
         System.out.println("Reconnecting");
-        queue.clear();
+        reconnects.incrementAndGet();
         try {
             if (this.socket != null) {
                 this.socket.close();
             }
 
             this.socket = null;
-            this.signature = null;
             if (active) {
                 this.connect();
             }
@@ -148,28 +291,114 @@ public class GameControllerConnection implements Runnable {
     }
 
     /**
-     * Send Game Event to GameController
+     * Send Game Event to GameController without waiting for the reply.
+     * <p>
+     * Up to the pipeline window of events can be waiting for a reply, after that this method blocks
+     * until the oldest one is answered. GC replies in the order the events were sent, so replies are
+     * matched to events by their order.
      *
      * @param gameEvent game event with details about the violation
-     * @throws IOException      something is wrong with the connection
-     * @throws RuntimeException GameEvent got rejected. This should be catched by method that calls sendGameEvent
+     * @return a future that completes with the reply of GC, or completes exceptionally with a
+     * {@link GameEventRejectedException} if GC rejected the event or an IOException if the connection was lost
+     * @throws IOException          something is wrong with the connection
+     * @throws InterruptedException if interrupted while waiting for room in the pipeline window
      */
-    public void sendGameEvent(SslGcGameEvent.GameEvent gameEvent) throws IOException {
+    public CompletableFuture<SslGcRcon.ControllerReply> sendGameEvent(SslGcGameEvent.GameEvent gameEvent) throws IOException, InterruptedException {
+        Socket socket = this.socket;
+        Deque<PendingEvent> inFlight = this.inFlight;
+        Semaphore pipelineWindow = this.pipelineWindow;
+        if (socket == null) {
+            throw new IOException("Not connected to GameController");
+        }
+
+        pipelineWindow.acquire();
+
+        //add the event before writing it, so the reply can never arrive before the event is known
+        PendingEvent pending = new PendingEvent(gameEvent, new CompletableFuture<>());
+        inFlight.add(pending);
         try {
             //build packet
-            SslGcRconAutoref.AutoRefToController.newBuilder()
-                    .setSignature(getSignature())
-                    .setGameEvent(gameEvent)
-                    .build()
-                    .writeDelimitedTo(socket.getOutputStream());
+            SslGcRconAutoref.AutoRefToController.Builder message = SslGcRconAutoref.AutoRefToController.newBuilder()
+                    .setGameEvent(gameEvent);
+            if (isSigning()) {
+                message.setSignature(getSignature());
+            }
+
+            message.build().writeDelimitedTo(socket.getOutputStream());
             socket.getOutputStream().flush();
+        } catch (IOException | SignatureException e) {
+            if (inFlight.removeLastOccurrence(pending)) {
+                pipelineWindow.release();
+            }
+            pending.reply().completeExceptionally(e);
 
-            SslGcRcon.ControllerReply reply = receivePacket();
-            if (reply != null && reply.getStatusCode() != SslGcRcon.ControllerReply.StatusCode.OK) {
-                throw new RuntimeException("Game event rejected: " + reply.getReason());
+            if (e instanceof IOException ioException) {
+                throw ioException;
+            }
+        }
+
+        return pending.reply();
+    }
+
+    /**
+     * Start a thread that reads the replies to game events from the current connection.
+     */
+    private void startReplyThread() {
+        Socket socket = this.socket;
+        Deque<PendingEvent> inFlight = new ConcurrentLinkedDeque<>();
+        Semaphore pipelineWindow = new Semaphore(getPipelineWindow());
+        this.inFlight = inFlight;
+        this.pipelineWindow = pipelineWindow;
+
+        Thread thread = new Thread(() -> readReplies(socket, inFlight, pipelineWindow), "AutoRef GC replies");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Read replies until the connection is closed, completing the oldest pending event with every reply.
+     * Once the connection is closed, all events still waiting for a reply fail.
+     */
+    private void readReplies(Socket socket, Deque<PendingEvent> inFlight, Semaphore pipelineWindow) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                SslGcRconAutoref.ControllerToAutoRef message = SslGcRconAutoref.ControllerToAutoRef.parseDelimitedFrom(socket.getInputStream());
+                if (message == null) {
+                    throw new EOFException("GameController closed the connection");
+                }
+
+                SslGcRcon.ControllerReply reply = message.getControllerReply();
+                if (reply.hasNextToken()) {
+                    this.token = reply.getNextToken();
+                }
+
+                PendingEvent pending = inFlight.poll();
+                if (pending == null) {
+                    continue;
+                }
+                pipelineWindow.release();
+
+                if (reply.getStatusCode() == SslGcRcon.ControllerReply.StatusCode.OK) {
+                    pending.reply().complete(reply);
+                } else {
+                    pending.reply().completeExceptionally(new GameEventRejectedException(pending.event(), reply.getReason()));
+                }
+            }
+        } catch (IOException e) {
+            //connection lost or closed by us
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //empty
+            }
+
+            //fail the newest event first, so events put back at the front of the queue keep their order
+            PendingEvent pending;
+            while ((pending = inFlight.pollLast()) != null) {
+                pipelineWindow.release();
+                pending.reply().completeExceptionally(new IOException("Connection to GameController lost"));
             }
-        } catch (SignatureException e) {
-            //empty
         }
     }
 
@@ -177,6 +406,7 @@ public class GameControllerConnection implements Runnable {
      * @return signature
      */
     private SslGcRcon.Signature getSignature() throws SignatureException {
+        signature.update(this.token.getBytes(StandardCharsets.UTF_8));
         return SslGcRcon.Signature.newBuilder()
                 .setToken(this.token)
                 .setPkcs1V15(ByteString.copyFrom(signature.sign())).build();
@@ -187,8 +417,8 @@ public class GameControllerConnection implements Runnable {
     }
 
     /**
-     * Receive controller reply
-     * If reply has a nextToken, set this.token to nextToken and update signature
+     * Receive controller reply while registering, before the reply thread is started
+     * If reply has a nextToken, set this.token to nextToken
      *
      * @return reply
      */
@@ -197,13 +427,10 @@ public class GameControllerConnection implements Runnable {
             SslGcRcon.ControllerReply reply = SslGcRconAutoref.ControllerToAutoRef.parseDelimitedFrom(this.socket.getInputStream()).getControllerReply();
             if (reply.hasNextToken()) {
                 this.token = reply.getNextToken();
-                signature.update(reply.getNextTokenBytes().toByteArray());
             }
             return reply;
         } catch (IOException e) {
             this.reconnect();
-        } catch (SignatureException e) {
-            //empty
         }
         return null;
     }
@@ -212,7 +439,8 @@ public class GameControllerConnection implements Runnable {
      * @return if there is a connection
      */
     public boolean isConnected() {
-        return socket != null && socket.isConnected();
+        Socket socket = this.socket;
+        return socket != null && socket.isConnected() && !socket.isClosed();
     }
 
     public void setIp(String ip) {
@@ -223,8 +451,176 @@ public class GameControllerConnection implements Runnable {
         this.port = port;
     }
 
+    /**
+     * Add a game event to the queue, it is sent as soon as the connection is free. When the queue is
+     * full, the overflow policy decides which event is dropped.
+     *
+     * @param gameEvent the game event to send
+     */
     public void addToQueue(SslGcGameEvent.GameEvent gameEvent) {
-        this.queue.add(gameEvent);
+        addToQueue(gameEvent, 0);
+    }
+
+    /**
+     * Add a game event to the queue, remembering the World timestamp of the frame it was raised in so the
+     * time until GC replied can be recorded.
+     *
+     * @param gameEvent the game event to send
+     * @param worldTime the World timestamp of the frame, in nanoseconds since the epoch, or 0 if unknown
+     */
+    public void addToQueue(SslGcGameEvent.GameEvent gameEvent, long worldTime) {
+        QueuedEvent queuedEvent = new QueuedEvent(gameEvent, System.nanoTime(), worldTime);
+        while (!queue.offer(queuedEvent)) {
+            droppedEvents.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                return;
+            }
+
+            queue.poll();
+        }
+    }
+
+    /**
+     * Set the amount of game events that can be sent before the reply to the first one arrived, applies from the next connection.
+     * <p>
+     * Every message is signed over the token GC sent in its reply to the previous message, so while signing, the
+     * next event can only be signed once that reply arrived and the window is always one. A larger window is only
+     * used with {@link #setSigning(boolean) signing} turned off.
+     *
+     * @param pipelineWindowSize the maximum amount of events waiting for a reply when not signing, at least one
+     */
+    public void setPipelineWindow(int pipelineWindowSize) {
+        if (pipelineWindowSize < 1) {
+            throw new IllegalArgumentException("The pipeline window must be at least one, got " + pipelineWindowSize);
+        }
+        this.pipelineWindowSize = pipelineWindowSize;
+    }
+
+    /**
+     * @return the amount of game events that can be sent before the reply to the first one arrived, one while signing
+     */
+    public int getPipelineWindow() {
+        return isSigning() ? 1 : pipelineWindowSize;
+    }
+
+    /**
+     * @return if messages are signed, which is always the case with a key file, since its public key is meant to
+     * be registered with GC and GC then checks every signature and token
+     */
+    public boolean isSigning() {
+        return signing || keyFile != null;
+    }
+
+    /**
+     * Turn signing the messages to GC off or on, applies from the next connection. GC only accepts unsigned messages
+     * when it has no public key of this AutoRef, and then does not check the tokens either. Messages are always
+     * signed when a {@link #setKeyFile(Path) key file} is set.
+     *
+     * @param signing if messages are signed with the key pair over the token of the last reply of GC
+     */
+    public void setSigning(boolean signing) {
+        this.signing = signing;
+    }
+
+    /**
+     * @param onRejected called on the reply thread when GC rejects a queued game event
+     */
+    public void setOnRejected(Consumer<GameEventRejectedException> onRejected) {
+        this.onRejected = onRejected;
+    }
+
+    /**
+     * @param latencyMetrics the metrics to record the time events spend in the queue, sending and waiting for GC in, or null to not record
+     */
+    public void setLatencyMetrics(LatencyMetrics latencyMetrics) {
+        this.latencyMetrics = latencyMetrics;
+    }
+
+    /**
+     * @return the amount of game events that were sent but not answered yet
+     */
+    public int getInFlightEvents() {
+        return inFlight.size();
+    }
+
+    /**
+     * Set the file with the key pair. Its public key is meant to be registered with GC, so messages are always signed
+     * with it and only one event is sent per round trip.
+     *
+     * @param keyFile the file to load the key pair from, or to store a new key pair in if it does not exist yet
+     */
+    public void setKeyFile(Path keyFile) {
+        this.keyFile = keyFile;
+    }
+
+    /**
+     * @param maxEventAge the time in ms an event can wait to be sent, older events are skipped
+     */
+    public void setMaxEventAge(long maxEventAge) {
+        this.maxEventAge = maxEventAge;
+    }
+
+    /**
+     * @return the amount of game events that were skipped because they waited too long to be sent
+     */
+    public long getExpiredEvents() {
+        return expiredEvents.get();
+    }
+
+    /**
+     * @param overflowPolicy which event to drop when an event is added to a full queue
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return the amount of game events waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the amount of game events that were dropped because the queue was full
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return the amount of times the connection to GC was set up again
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return the amount of game events GC replied to
+     */
+    public long getSentEvents() {
+        return sentEvents.get();
+    }
+
+    /**
+     * @return the amount of game events GC rejected
+     */
+    public long getRejectedEvents() {
+        return rejectedEvents.get();
+    }
+
+    /**
+     * @return the time between adding the last event to the queue and receiving the reply of GC, in nanoseconds
+     */
+    public long getLastAckLatencyNanos() {
+        return lastAckLatency;
+    }
+
+    /**
+     * @return the average time between adding an event to the queue and receiving the reply of GC over the recent events, in nanoseconds
+     */
+    public double getAverageAckLatencyNanos() {
+        return averageAckLatency;
     }
 
     public int getReconnectSleep() {
@@ -233,6 +629,13 @@ public class GameControllerConnection implements Runnable {
 
     @Override
     public void run() {
+        try {
+            //load the key pair once at startup, so connecting only costs the handshake and the registration
+            getKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+
         try {
             if (active) {
                 this.connect();
@@ -242,4 +645,25 @@ public class GameControllerConnection implements Runnable {
             //empty
         }
     }
+
+    /**
+     * Which event to drop when an event is added to a full queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the event that has been waiting the longest, so the newest events are sent.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drop the event that is being added, so the events that were waiting are sent.
+         */
+        DROP_NEWEST
+    }
+
+    private record PendingEvent(SslGcGameEvent.GameEvent event, CompletableFuture<SslGcRcon.ControllerReply> reply) {
+    }
+
+    private record QueuedEvent(SslGcGameEvent.GameEvent event, long enqueuedAt, long worldTime) {
+    }
 }
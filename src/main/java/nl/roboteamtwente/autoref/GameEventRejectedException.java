@@ -0,0 +1,31 @@
+package nl.roboteamtwente.autoref;
+
+import org.robocup.ssl.proto.SslGcGameEvent;
+
+/**
+ * Thrown when the GameController replies to a game event with a status other than OK.
+ */
+public class GameEventRejectedException extends Exception {
+    private final SslGcGameEvent.GameEvent gameEvent;
+    private final String reason;
+
+    public GameEventRejectedException(SslGcGameEvent.GameEvent gameEvent, String reason) {
+        super("Game event rejected: " + reason);
+        this.gameEvent = gameEvent;
+        this.reason = reason;
+    }
+
+    /**
+     * @return the game event that got rejected
+     */
+    public SslGcGameEvent.GameEvent getGameEvent() {
+        return gameEvent;
+    }
+
+    /**
+     * @return the reason the GameController gave for rejecting the event
+     */
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,104 @@
+package nl.roboteamtwente.autoref;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-slot, lock-free handoff between a producer and one consumer thread.
+ * <p>
+ * Offering a frame replaces any frame that has not been taken yet, so the consumer always
+ * gets the newest frame and never has to work through a backlog. Replaced frames are counted
+ * as conflated.
+ *
+ * @param <T> the type of the frames
+ */
+public class LatestFrameHolder<T> {
+    private final AtomicReference<T> latest = new AtomicReference<>();
+    private volatile Thread consumer;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+
+    /**
+     * Store the given frame as the latest one, replacing the frame that was not taken yet.
+     *
+     * @param frame the new frame
+     */
+    public void offer(T frame) {
+        offered.incrementAndGet();
+        if (latest.getAndSet(frame) != null) {
+            conflated.incrementAndGet();
+        }
+
+        Thread waiting = consumer;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    /**
+     * Take the latest frame, or return null if no new frame was offered since the last take.
+     *
+     * @return the latest frame or null
+     */
+    public T poll() {
+        T frame = latest.getAndSet(null);
+        if (frame != null) {
+            taken.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Wait until a frame is available and take it.
+     *
+     * @return the latest frame
+     * @throws InterruptedException if the consumer thread got interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        consumer = Thread.currentThread();
+        while (true) {
+            T frame = poll();
+            if (frame != null) {
+                return frame;
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            // the producer unparks us after setting a frame, so a frame set after our poll is never missed
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * @return true if a frame was offered that has not been taken yet
+     */
+    public boolean hasFrame() {
+        return latest.get() != null;
+    }
+
+    /**
+     * @return the total amount of frames that were offered
+     */
+    public long getOffered() {
+        return offered.get();
+    }
+
+    /**
+     * @return the amount of frames that were replaced by a newer frame before being taken
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    /**
+     * @return the amount of frames that were taken by the consumer
+     */
+    public long getTaken() {
+        return taken.get();
+    }
+}
@@ -0,0 +1,224 @@
+package nl.roboteamtwente.autoref;
+
+import nl.roboteamtwente.autoref.metrics.LatencyMetrics;
+import nl.roboteamtwente.autoref.metrics.MetricsServer;
+import nl.roboteamtwente.autoref.model.Division;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Referees several fields from one process without a UI.
+ * <p>
+ * Every field gets its own SSLAutoRef, with its own validators and its own connections to World and
+ * the GameController. The frames of all fields are processed on one shared pool of threads, one frame
+ * per task, so a busy field can not starve the other fields.
+ * <p>
+ * Usage: {@code --field=<world-ip>:<world-port>,<gc-ip>:<gc-port>[,A|B]} once for every field, optionally
+ * followed by {@code --threads=N}, {@code --active}, {@code --parallel-validators}, {@code --full-decode},
+ * {@code --recycle-games} and {@code --metrics-port=N}.
+ */
+public class MultiFieldHost {
+    private static final long SUMMARY_INTERVAL = 10_000;
+
+    private final ExecutorService executor;
+    private final List<HostedField> fields = new ArrayList<>();
+
+    // when set, the metrics of all fields are served on this port
+    private Integer metricsPort;
+    private MetricsServer metricsServer;
+
+    /**
+     * @param threads the amount of threads shared by all fields
+     */
+    public MultiFieldHost(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "AutoRef field worker " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add a field to the host, it is connected when the host is started.
+     *
+     * @param name      the name used when logging about this field
+     * @param worldIp   the IP of the World observer of this field
+     * @param worldPort the port of the World observer of this field
+     * @param gcIp      the IP of the GameController of this field
+     * @param gcPort    the port of the GameController of this field
+     * @return the AutoRef of the field, which can be configured further before starting
+     */
+    public SSLAutoRef addField(String name, String worldIp, int worldPort, String gcIp, int gcPort) {
+        SSLAutoRef autoRef = new SSLAutoRef();
+        autoRef.setWorldExecutor(executor);
+        autoRef.setOnViolation((violation) -> System.out.println("[" + name + "] " + violation));
+
+        fields.add(new HostedField(name, autoRef, worldIp, worldPort, gcIp, gcPort));
+        return autoRef;
+    }
+
+    /**
+     * Connect all fields.
+     */
+    public void start() {
+        for (HostedField field : fields) {
+            System.out.println("Starting field " + field.name() + " (world " + field.worldIp() + ":" + field.worldPort() + ", gc " + field.gcIp() + ":" + field.gcPort() + ")");
+            field.autoRef().start(field.worldIp(), field.gcIp(), field.worldPort(), field.gcPort());
+        }
+
+        if (metricsPort != null) {
+            metricsServer = new MetricsServer(metricsPort);
+            for (HostedField field : fields) {
+                metricsServer.addAutoRef(field.name(), field.autoRef());
+            }
+
+            try {
+                metricsServer.start();
+            } catch (IOException e) {
+                System.err.println("Failed to serve metrics on port " + metricsPort + ", continuing without metrics.");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param metricsPort the port to serve the metrics of all fields on, or null to not serve them. Must be set before starting.
+     */
+    public void setMetricsPort(Integer metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * Disconnect all fields and stop the shared threads.
+     */
+    public void stop() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        for (HostedField field : fields) {
+            field.autoRef().stop();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Print the frame counters and validation time of every field.
+     */
+    public void printSummary() {
+        for (HostedField field : fields) {
+            WorldConnection connection = field.autoRef().getWorldConnection();
+            if (connection == null) {
+                continue;
+            }
+
+            LatencyMetrics latency = field.autoRef().getLatencyMetrics();
+            System.out.printf("[%s] frames received: %d, processed: %d, conflated: %d, dropped: %d, avg validation: %.3f ms, p99 validation: %.3f ms, p99 World to GC reply: %.3f ms%n",
+                    field.name(), connection.getFramesReceived(), connection.getFramesProcessed(), connection.getFramesConflated(),
+                    connection.getFramesDropped(), field.autoRef().getReferee().getAverageValidationNanos() / 1_000_000.0,
+                    latency.getStage(LatencyMetrics.Stage.VALIDATE).getPercentile(99) / 1_000_000.0,
+                    latency.getStage(LatencyMetrics.Stage.END_TO_END).getPercentile(99) / 1_000_000.0);
+        }
+    }
+
+    public static void main(String[] args) {
+        List<String> fieldSpecs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean active = false;
+        boolean parallelValidators = false;
+        boolean fullDecode = false;
+        boolean recycleGames = false;
+        Integer metricsPort = null;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--field=")) {
+                    fieldSpecs.add(arg.substring("--field=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.equals("--active")) {
+                    active = true;
+                } else if (arg.equals("--parallel-validators")) {
+                    parallelValidators = true;
+                } else if (arg.equals("--full-decode")) {
+                    fullDecode = true;
+                } else if (arg.equals("--recycle-games")) {
+                    recycleGames = true;
+                } else if (arg.startsWith("--metrics-port=")) {
+                    metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse threads or metrics port program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (fieldSpecs.isEmpty()) {
+            System.err.println("No fields given, use --field=<world-ip>:<world-port>,<gc-ip>:<gc-port>[,A|B] for every field.");
+            System.exit(1);
+            return;
+        }
+
+        MultiFieldHost host = new MultiFieldHost(threads);
+        host.setMetricsPort(metricsPort);
+        for (int i = 0; i < fieldSpecs.size(); i++) {
+            String[] parts = fieldSpecs.get(i).split(",");
+            String[] world = parts[0].split(":");
+            String[] gc = parts.length > 1 ? parts[1].split(":") : new String[0];
+            if (world.length != 2 || gc.length != 2) {
+                System.err.println("Invalid field " + fieldSpecs.get(i));
+                System.exit(1);
+                return;
+            }
+
+            Division division = Division.B;
+            if (parts.length > 2) {
+                if (parts[2].equalsIgnoreCase("a")) {
+                    division = Division.A;
+                } else if (!parts[2].equalsIgnoreCase("b")) {
+                    System.err.println("Unknown division " + parts[2]);
+                    System.exit(1);
+                    return;
+                }
+            }
+
+            try {
+                SSLAutoRef autoRef = host.addField("field " + (i + 1), world[0], Integer.parseInt(world[1]), gc[0], Integer.parseInt(gc[1]));
+                autoRef.setActive(active);
+                autoRef.setDivision(division);
+                autoRef.setParallelValidators(parallelValidators);
+                autoRef.setFullStateDecoding(fullDecode);
+                autoRef.setRecycleGames(recycleGames);
+            } catch (NumberFormatException e) {
+                System.err.println("Failed to parse port in field " + fieldSpecs.get(i));
+                System.exit(1);
+                return;
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(host::stop));
+        host.start();
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(SUMMARY_INTERVAL);
+                host.printSummary();
+            }
+        } catch (InterruptedException e) {
+            //empty
+        }
+    }
+
+    private record HostedField(String name, SSLAutoRef autoRef, String worldIp, int worldPort, String gcIp, int gcPort) {
+    }
+}
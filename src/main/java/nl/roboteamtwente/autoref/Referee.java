@@ -1,37 +1,94 @@
 package nl.roboteamtwente.autoref;
 
+import nl.roboteamtwente.autoref.metrics.LatencyHistogram;
+import nl.roboteamtwente.autoref.metrics.LatencyMetrics;
+import nl.roboteamtwente.autoref.model.Division;
+import nl.roboteamtwente.autoref.model.Field;
 import nl.roboteamtwente.autoref.model.Game;
 import nl.roboteamtwente.autoref.validators.*;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 public class Referee {
-    private static final List<RuleValidator> RULE_VALIDATORS = List.of(
-            new AimlessKickValidator(),
-            new AttackerDoubleTouchedBallValidator(),
-            new AttackerTooCloseToDefenseAreaValidator(),
-            new AttackerTouchedBallInDefenseAreaValidator(),
-            new BallLeftFieldGoalLineValidator(),
-            new BallLeftFieldTouchLineValidator(),
-            new BotCrashingValidator(),
-            new BotDribbledBallTooFarValidator(),
-            new BotInterferedPlacementValidator(),
-            new BotKickedBallTooFastValidator(),
-            new BotTooFastInStopValidator(),
-            new BoundaryCrossingValidator(),
-            new DefenderInDefenseAreaValidator(),
-            new DefenderTooCloseToKickPointValidator(),
-            new PenaltyKickFailedValidator(),
-            new PlacementSucceededValidator(),
-            new PossibleGoalValidator()
+    /**
+     * Factories of all rule validators. Validators keep state between frames, so every referee
+     * creates its own instances and several referees can run in the same process.
+     */
+    public static final List<Supplier<RuleValidator>> RULE_VALIDATORS = List.of(
+            AimlessKickValidator::new,
+            AttackerDoubleTouchedBallValidator::new,
+            AttackerTooCloseToDefenseAreaValidator::new,
+            AttackerTouchedBallInDefenseAreaValidator::new,
+            BallLeftFieldGoalLineValidator::new,
+            BallLeftFieldTouchLineValidator::new,
+            BotCrashingValidator::new,
+            BotDribbledBallTooFarValidator::new,
+            BotInterferedPlacementValidator::new,
+            BotKickedBallTooFastValidator::new,
+            BotTooFastInStopValidator::new,
+            BoundaryCrossingValidator::new,
+            DefenderInDefenseAreaValidator::new,
+            DefenderTooCloseToKickPointValidator::new,
+            PenaltyKickFailedValidator::new,
+            PlacementSucceededValidator::new,
+            PossibleGoalValidator::new
     );
 
+    // amount of frames the average validation time is taken over
+    private static final int AVERAGE_WINDOW = 1000;
+
+    private final List<RuleValidator> ruleValidators;
+
     private List<RuleValidator> activeValidators = new ArrayList<>();
     private final List<RuleValidator> disabledValidators = new ArrayList<>();
+    // read from other threads, so kept apart from the list
+    private volatile int disabledValidatorCount;
+    private volatile long validatorsDisabled;
 
     private Game game;
 
+    // the field and division the validators were last notified about
+    private Field field;
+    private Division division;
+
+    // called with every validator that throws an exception, before it is deactivated
+    private BiConsumer<RuleValidator, Exception> onValidatorException;
+
+    // when set, the active validators of a frame run in parallel on this pool
+    private ForkJoinPool validationPool;
+
+    // time spent running the validators, in nanoseconds
+    private long lastValidationNanos;
+    private double averageValidationNanos;
+    private long validatedFrames;
+
+    // when set, the time of all validators together and of every validator is recorded
+    private LatencyMetrics latencyMetrics;
+    private final Map<RuleValidator, LatencyHistogram> validatorLatencies = new IdentityHashMap<>();
+
+    /**
+     * Create a referee with all rule validators.
+     */
+    public Referee() {
+        this(RULE_VALIDATORS);
+    }
+
+    /**
+     * Create a referee with its own instances of the given validators.
+     *
+     * @param validators factories of the validators to use
+     */
+    public Referee(List<Supplier<RuleValidator>> validators) {
+        this.ruleValidators = validators.stream().map(Supplier::get).toList();
+    }
+
     public Game getGame() {
         return game;
     }
@@ -41,8 +98,18 @@ public class Referee {
     }
 
     public List<RuleViolation> validate() {
+        // The field is shared between games until the geometry changes, so comparing the instance is enough.
+        if (game.getField() != field || game.getDivision() != division) {
+            field = game.getField();
+            division = game.getDivision();
+
+            for (RuleValidator validator : ruleValidators) {
+                validator.fieldChanged(game);
+            }
+        }
+
         // Make a list of validators that should be active.
-        List<RuleValidator> validators = RULE_VALIDATORS.stream().filter((validator) -> validator.isActive(game)).toList();
+        List<RuleValidator> validators = ruleValidators.stream().filter((validator) -> validator.isActive(game)).toList();
 
         // While these validators are active, retain the ones that should be disabled.
         disabledValidators.retainAll(validators);
@@ -62,22 +129,145 @@ public class Referee {
 
         activeValidators = validators;
 
-        List<RuleViolation> violations = new ArrayList<>();
-        for (RuleValidator validator : activeValidators) {
-            try {
-                RuleViolation violation = validator.validate(game);
+        long start = System.nanoTime();
 
-                if (violation != null) {
-                    violations.add(violation);
+        // Run the validators, the results are kept in the order of the validators so the violations are deterministic.
+        RuleViolation[] results = new RuleViolation[activeValidators.size()];
+        Exception[] exceptions = new Exception[activeValidators.size()];
+        if (validationPool != null && activeValidators.size() > 1) {
+            validateParallel(results, exceptions);
+        } else {
+            for (int i = 0; i < activeValidators.size(); i++) {
+                runValidator(i, results, exceptions);
+            }
+        }
+
+        List<RuleViolation> violations = new ArrayList<>();
+        for (int i = 0; i < activeValidators.size(); i++) {
+            if (exceptions[i] != null) {
+                exceptions[i].printStackTrace();
+                if (onValidatorException != null) {
+                    onValidatorException.accept(activeValidators.get(i), exceptions[i]);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
 
                 // Disable the validators that throw exceptions.
-                System.err.println("!! " + validator.getClass().getSimpleName() + " will now be deactivated.");
-                disabledValidators.add(validator);
+                System.err.println("!! " + activeValidators.get(i).getClass().getSimpleName() + " will now be deactivated.");
+                disabledValidators.add(activeValidators.get(i));
+                validatorsDisabled++;
+            } else if (results[i] != null) {
+                violations.add(results[i]);
             }
         }
+
+        disabledValidatorCount = disabledValidators.size();
+        lastValidationNanos = System.nanoTime() - start;
+        if (latencyMetrics != null) {
+            latencyMetrics.record(LatencyMetrics.Stage.VALIDATE, lastValidationNanos);
+        }
+        validatedFrames++;
+        averageValidationNanos += (lastValidationNanos - averageValidationNanos) / Math.min(validatedFrames, AVERAGE_WINDOW);
         return violations;
     }
+
+    /**
+     * Run every active validator as a separate task on the validation pool and wait for all of them.
+     * The game is not modified while validating, so all validators can read it at the same time.
+     */
+    private void validateParallel(RuleViolation[] results, Exception[] exceptions) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(activeValidators.size());
+        for (int i = 0; i < activeValidators.size(); i++) {
+            int index = i;
+            tasks.add(validationPool.submit(() -> runValidator(index, results, exceptions)));
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private void runValidator(int index, RuleViolation[] results, Exception[] exceptions) {
+        RuleValidator validator = activeValidators.get(index);
+        long start = System.nanoTime();
+        try {
+            results[index] = validator.validate(game);
+        } catch (Exception e) {
+            exceptions[index] = e;
+        }
+
+        // the map is only written when the metrics are set, so it can be read from the validation pool
+        LatencyHistogram latency = validatorLatencies.get(validator);
+        if (latency != null) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Set the pool the validators run on. Without a pool the validators run one after another
+     * on the calling thread. A validator never runs on two threads at the same time, so validators
+     * only have to be safe to run next to other validators.
+     *
+     * @param validationPool the pool to run the validators on, or null to run them serially.
+     */
+    public void setValidationPool(ForkJoinPool validationPool) {
+        this.validationPool = validationPool;
+    }
+
+    /**
+     * @param onValidatorException called with every validator that throws an exception, before the validator is deactivated.
+     */
+    public void setOnValidatorException(BiConsumer<RuleValidator, Exception> onValidatorException) {
+        this.onValidatorException = onValidatorException;
+    }
+
+    /**
+     * Record the time the validators take in the given metrics, both all of them together and every validator
+     * on its own. Must not be called while validating.
+     *
+     * @param latencyMetrics the metrics to record in, or null to not record.
+     */
+    public void setLatencyMetrics(LatencyMetrics latencyMetrics) {
+        this.latencyMetrics = latencyMetrics;
+
+        validatorLatencies.clear();
+        if (latencyMetrics != null) {
+            for (RuleValidator validator : ruleValidators) {
+                validatorLatencies.put(validator, latencyMetrics.getValidator(validator.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    /**
+     * @return true if the validators run in parallel.
+     */
+    public boolean isParallelValidation() {
+        return validationPool != null;
+    }
+
+    /**
+     * @return the amount of validators that are disabled because they threw an exception, until they are no longer active.
+     */
+    public int getDisabledValidatorCount() {
+        return disabledValidatorCount;
+    }
+
+    /**
+     * @return the amount of times a validator was disabled because it threw an exception.
+     */
+    public long getValidatorsDisabled() {
+        return validatorsDisabled;
+    }
+
+    /**
+     * @return the time it took to run the validators for the last frame, in nanoseconds.
+     */
+    public long getLastValidationNanos() {
+        return lastValidationNanos;
+    }
+
+    /**
+     * @return the average time it took to run the validators over the recent frames, in nanoseconds.
+     */
+    public double getAverageValidationNanos() {
+        return averageValidationNanos;
+    }
 }
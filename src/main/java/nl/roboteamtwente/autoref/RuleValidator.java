@@ -9,4 +9,13 @@ public interface RuleValidator {
 
     default void reset(Game game) {
     }
+
+    /**
+     * Called for every validator, active or not, when the field or the division of the game changed,
+     * so validators can rebuild anything they derived from them.
+     *
+     * @param game the first game with the new field or division
+     */
+    default void fieldChanged(Game game) {
+    }
 }
@@ -1,19 +1,32 @@
 package nl.roboteamtwente.autoref;
 
+import nl.roboteamtwente.autoref.input.TrackerMulticastConnection;
+import nl.roboteamtwente.autoref.input.VisionTracker;
+import nl.roboteamtwente.autoref.metrics.LatencyMetrics;
 import nl.roboteamtwente.autoref.model.*;
+import nl.roboteamtwente.autoref.recording.MatchRecorder;
 import nl.roboteamtwente.proto.StateOuterClass;
 import nl.roboteamtwente.proto.WorldOuterClass;
 import nl.roboteamtwente.proto.WorldRobotOuterClass;
 import org.robocup.ssl.proto.SslVisionGeometry;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 public class SSLAutoRef {
     private static final float BALL_TOUCHING_DISTANCE = 0.025f;
 
+    // enough games that a reader on another thread, like the UI, can use the current game it got for 15 more
+    // frames, 150 ms at 100 frames per second, which is far longer than drawing a frame takes
+    private static final int GAME_ARENA_SIZE = 16;
+
     private final Referee referee;
     private Division division = Division.B;
 
@@ -22,15 +35,57 @@ public class SSLAutoRef {
     private Thread gcThread;
 
     private WorldConnection worldConnection;
+    private TrackerMulticastConnection trackerConnection;
+
+    // where the frames come from, RoboTeam World or the standard SSL multicast groups
+    private InputSource inputSource = InputSource.WORLD;
+    private String trackerSource;
+    private String networkInterface;
+
+    // when set, frames are processed on this shared executor instead of on an own thread
+    private Executor worldExecutor;
+
+    // when set, every frame from World is recorded to a new directory in this directory
+    private Path recordingDirectory;
+    private MatchRecorder recorder;
 
     private Consumer<RuleViolation> onViolation;
+    private Consumer<GameEventRejectedException> onGameEventRejected;
     private boolean active = false;
+    private boolean fullStateDecoding = false;
+    private Path gcKeyFile;
+    private GameControllerConnection.OverflowPolicy gcOverflowPolicy = GameControllerConnection.OverflowPolicy.DROP_OLDEST;
+    private int gcPipelineWindow = GameControllerConnection.DEFAULT_PIPELINE_WINDOW;
+    private boolean gcSigning = true;
+    private long gcMaxEventAge = GameControllerConnection.DEFAULT_MAX_EVENT_AGE;
+
+    // the time frames and game events spend in every stage, from the World timestamp to the reply of GC
+    private final LatencyMetrics latencyMetrics = new LatencyMetrics();
+    // when above 0, a summary of the latencies is printed every this many seconds
+    private int latencySummaryInterval = 0;
+    private Thread latencySummaryThread;
+
+    // frames checked in the current second of wall clock time, and in the one before it
+    private volatile long rateSecond;
+    private int rateFrames;
+    private volatile int framesPerSecond;
 
     private int commands = 0;
     private int nextTouchId = 0;
 
+    // the finished touches of all games, each game refers to the touches since the last stoppage
+    private final TouchTimeline touchTimeline = new TouchTimeline();
+
+    // when set, games are recycled instead of allocated for every frame
+    private GameArena gameArena;
+
+    // the field is only derived again when the geometry changes
+    private Field field;
+    private SslVisionGeometry.SSL_GeometryFieldSize fieldGeometry;
+
     public SSLAutoRef() {
         this.referee = new Referee();
+        this.referee.setLatencyMetrics(latencyMetrics);
     }
 
     /**
@@ -40,7 +95,7 @@ public class SSLAutoRef {
      */
     public void processWorldState(StateOuterClass.State statePacket) {
         //build game
-        Game game = new Game();
+        Game game = gameArena != null ? gameArena.next() : new Game();
         if (referee.getGame() != null) {
             referee.getGame().setPrevious(null);
             game.setPrevious(referee.getGame());
@@ -63,6 +118,7 @@ public class SSLAutoRef {
         for (WorldRobotOuterClass.WorldRobot robot : world.getYellowList()) {
             deriveRobot(game, TeamColor.YELLOW, robot);
         }
+        game.getRobotGrid().rebuild(game.getRobots());
         deriveTeamData(game, statePacket);
         deriveField(game, statePacket);
         deriveTouch(game);
@@ -200,9 +256,12 @@ public class SSLAutoRef {
     private void deriveRobot(Game game, TeamColor teamColor, WorldRobotOuterClass.WorldRobot worldRobot) {
         Robot robot = game.getTeam(teamColor).getRobotById(worldRobot.getId());
         if (robot == null) {
-            robot = new Robot(worldRobot.getId());
-            game.addRobot(robot);
+            robot = game.getTeam(teamColor).takeSpareRobot(worldRobot.getId());
+            if (robot == null) {
+                robot = new Robot(worldRobot.getId());
+            }
             game.getTeam(teamColor).addRobot(robot);
+            game.addRobot(robot);
         }
 
         robot.getPosition().setX(worldRobot.getPos().getX());
@@ -232,25 +291,59 @@ public class SSLAutoRef {
     }
 
     /**
-     * Derive all lines on the field
+     * Set the field of the game, only deriving it again when the geometry has changed.
      *
      * @param game        game
      * @param statePacket packet AutoRef got from World
      */
     private void deriveField(Game game, StateOuterClass.State statePacket) {
-        game.getField().setBoundaryWidth(statePacket.getField().getField().getBoundaryWidth() / 1000.0f);
-        game.getField().getSize().setX(statePacket.getField().getField().getFieldLength() / 1000.0f);
-        game.getField().getSize().setY(statePacket.getField().getField().getFieldWidth() / 1000.0f);
-        game.getField().getPosition().setX(-statePacket.getField().getField().getFieldLength() / 2.0f / 1000.0f);
-        game.getField().getPosition().setY(-statePacket.getField().getField().getFieldWidth() / 2.0f / 1000.0f);
+        SslVisionGeometry.SSL_GeometryFieldSize geometry = statePacket.getField().getField();
 
-        for (SslVisionGeometry.SSL_FieldLineSegment lineSegment : statePacket.getField().getField().getFieldLinesList()) {
+        if (field == null || !isSameGeometry(geometry, fieldGeometry)) {
+            field = deriveField(geometry);
+            fieldGeometry = geometry;
+        }
+
+        game.setField(field);
+    }
+
+    /**
+     * Compare two geometries. {@link StateDecoder} hands out the same geometry while its bytes do not change, so
+     * normally an unchanged geometry is the same object. With full decoding every frame has a new geometry, then
+     * the dimensions and the amount of lines and arcs are compared first, so only an unchanged geometry needs the
+     * full comparison.
+     */
+    private static boolean isSameGeometry(SslVisionGeometry.SSL_GeometryFieldSize geometry, SslVisionGeometry.SSL_GeometryFieldSize other) {
+        if (geometry == other) {
+            return true;
+        }
+
+        return geometry.getFieldLength() == other.getFieldLength()
+                && geometry.getFieldWidth() == other.getFieldWidth()
+                && geometry.getFieldLinesCount() == other.getFieldLinesCount()
+                && geometry.getFieldArcsCount() == other.getFieldArcsCount()
+                && geometry.getGoalWidth() == other.getGoalWidth()
+                && geometry.equals(other);
+    }
+
+    /**
+     * Derive all lines on the field
+     *
+     * @param geometry field geometry AutoRef got from World
+     * @return the field
+     */
+    private Field deriveField(SslVisionGeometry.SSL_GeometryFieldSize geometry) {
+        Vector2 position = new Vector2(-geometry.getFieldLength() / 2.0f / 1000.0f, -geometry.getFieldWidth() / 2.0f / 1000.0f);
+        Vector2 size = new Vector2(geometry.getFieldLength() / 1000.0f, geometry.getFieldWidth() / 1000.0f);
+
+        List<FieldLine> lines = new ArrayList<>();
+        for (SslVisionGeometry.SSL_FieldLineSegment lineSegment : geometry.getFieldLinesList()) {
             Vector2 p1 = new Vector2(lineSegment.getP1().getX() / 1000.0f, lineSegment.getP1().getY() / 1000.0f);
             Vector2 p2 = new Vector2(lineSegment.getP2().getX() / 1000.0f, lineSegment.getP2().getY() / 1000.0f);
-            FieldLine fieldLine = new FieldLine(lineSegment.getName(), p1, p2, lineSegment.getThickness() / 1000.0f);
-
-            game.getField().addLine(fieldLine);
+            lines.add(new FieldLine(lineSegment.getName(), p1, p2, lineSegment.getThickness() / 1000.0f));
         }
+
+        return new Field(position, size, geometry.getBoundaryWidth() / 1000.0f, geometry.getGoalWidth() / 1000.0f, geometry.getGoalDepth() / 1000.0f, lines);
     }
 
     /**
@@ -262,8 +355,8 @@ public class SSLAutoRef {
         // copy variables from previous game
         game.getBall().setLastTouchStarted(game.getPrevious().getBall().getLastTouchStarted());
 
-        // restore all finished touches, in-progress touches will be evaluated next
-        game.getTouches().addAll(game.getPrevious().getFinishedTouches());
+        // continue with the finished touches of the previous game, in-progress touches will be evaluated next
+        game.continueTouches(touchTimeline);
         game.setKickType(game.getPrevious().getKickType());
         game.setKickIntoPlay(game.getPrevious().getKickIntoPlay());
 
@@ -281,7 +374,7 @@ public class SSLAutoRef {
 
             Touch touch = robot.getTouch();
 
-            float distance = robot.getPosition().xy().distance(ballPosition.xy());
+            float distance = game.getFrameContext().getDistanceToBall(robot);
 
             // detect if there's a touch
             if (distance <= robot.getTeam().getRobotRadius() + BALL_TOUCHING_DISTANCE && ball.getPosition().getZ() <= robot.getTeam().getRobotHeight() + BALL_TOUCHING_DISTANCE) {
@@ -297,7 +390,7 @@ public class SSLAutoRef {
 
                 if (touch != null) {
                     // we update the touch to include the end position
-                    touch = new Touch(touch.id(), touch.startLocation(), ballPosition, touch.startTime(), game.getTime(), touch.startVelocity(), ball.getVelocity(), robot.getIdentifier());
+                    touch = new Touch(touch.id(), touch.startLocation(), ballPosition.copy(), touch.startTime(), game.getTime(), touch.startVelocity(), ball.getVelocity().copy(), robot.getIdentifier());
 
 
                     // if this touch is the kick into play, we update that too
@@ -309,7 +402,7 @@ public class SSLAutoRef {
 
             if (robot.hasJustTouchedBall()) {
                 // we create a new partial touch
-                touch = new Touch(nextTouchId++, ballPosition, null, game.getTime(), null, ball.getVelocity(), null, robot.getIdentifier());
+                touch = new Touch(nextTouchId++, ballPosition.copy(), null, game.getTime(), null, ball.getVelocity().copy(), null, robot.getIdentifier());
                 ball.setLastTouchStarted(touch);
                 robot.setTouch(touch);
 
@@ -331,7 +424,7 @@ public class SSLAutoRef {
 
             // to conclude, we add the touch to the game
             if (touch != null) {
-                game.getTouches().add(touch);
+                game.addTouch(touch);
             }
         }
     }
@@ -359,7 +452,7 @@ public class SSLAutoRef {
             game.getBall().setLastTouchStarted(null);
             game.setKickType(null);
             game.setKickIntoPlay(null);
-            game.getTouches().clear();
+            game.clearTouches();
 
             for (Robot robot : game.getRobots()) {
                 robot.setTouch(null);
@@ -380,13 +473,64 @@ public class SSLAutoRef {
         gcConnection.setIp(ipGameController);
         gcConnection.setPort(portGameController);
         gcConnection.setActive(active);
+        gcConnection.setOverflowPolicy(gcOverflowPolicy);
+        gcConnection.setOnRejected(onGameEventRejected);
+        gcConnection.setKeyFile(gcKeyFile);
+        gcConnection.setSigning(gcSigning);
+        gcConnection.setPipelineWindow(gcPipelineWindow);
+        gcConnection.setMaxEventAge(gcMaxEventAge);
+        gcConnection.setLatencyMetrics(latencyMetrics);
         gcThread = new Thread(gcConnection);
         gcThread.start();
 
-        //setup connection with World
-        worldConnection = new WorldConnection(ipWorld, portWorld, this);
-        worldThread = new Thread(worldConnection);
+        if (recordingDirectory != null) {
+            try {
+                recorder = MatchRecorder.inNewDirectory(recordingDirectory);
+                recorder.start();
+            } catch (IOException e) {
+                System.err.println("Failed to start recording in " + recordingDirectory + ", continuing without recording.");
+                e.printStackTrace();
+            }
+        }
+
+        if (inputSource == InputSource.TRACKER || inputSource == InputSource.VISION) {
+            //setup connection with the tracker, referee and vision multicast groups
+            trackerConnection = new TrackerMulticastConnection(this);
+            trackerConnection.setTrackerSource(trackerSource);
+            trackerConnection.setVisionTracker(inputSource == InputSource.VISION ? new VisionTracker() : null);
+            trackerConnection.setNetworkInterface(networkInterface);
+            trackerConnection.setRecorder(recorder);
+            worldThread = new Thread(trackerConnection, "AutoRef multicast");
+        } else {
+            //setup connection with World
+            worldConnection = new WorldConnection(ipWorld, portWorld, this);
+            worldConnection.setFullDecoding(fullStateDecoding);
+            worldConnection.setExecutor(worldExecutor);
+            worldConnection.setRecorder(recorder);
+            worldConnection.setLatencyMetrics(latencyMetrics);
+            worldThread = new Thread(worldConnection);
+        }
         worldThread.start();
+
+        if (latencySummaryInterval > 0) {
+            latencySummaryThread = new Thread(this::printLatencySummaries, "AutoRef latency summary");
+            latencySummaryThread.setDaemon(true);
+            latencySummaryThread.start();
+        }
+    }
+
+    /**
+     * Print the latencies every summary interval, until interrupted.
+     */
+    private void printLatencySummaries() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(latencySummaryInterval * 1000L);
+                System.out.print(latencyMetrics.summary());
+            }
+        } catch (InterruptedException e) {
+            //empty
+        }
     }
 
     /**
@@ -395,7 +539,16 @@ public class SSLAutoRef {
      * @param packet
      */
     public void checkViolations(StateOuterClass.State packet) {
+        //the World timestamp is wall clock time, possibly of another machine
+        long worldTime = packet.getCommandExtrapolatedWorld().getTime();
+        long now = System.currentTimeMillis();
+        latencyMetrics.record(LatencyMetrics.Stage.FRAME_AGE, now * 1_000_000 - worldTime);
+        countFrame(now / 1000);
+
+        long start = System.nanoTime();
         processWorldState(packet);
+        latencyMetrics.record(LatencyMetrics.Stage.PROCESS_WORLD_STATE, System.nanoTime() - start);
+
         //check for any violations
         List<RuleViolation> violations = getReferee().validate();
         for (RuleViolation violation : violations) {
@@ -405,11 +558,29 @@ public class SSLAutoRef {
             }
 
             if (isActive()) {
-                gcConnection.addToQueue(violation.toPacket());
+                long enqueueStart = System.nanoTime();
+                gcConnection.addToQueue(violation.toPacket(), worldTime);
+                latencyMetrics.record(LatencyMetrics.Stage.ENQUEUE, System.nanoTime() - enqueueStart);
             }
         }
     }
 
+    private void countFrame(long second) {
+        if (second != rateSecond) {
+            framesPerSecond = second == rateSecond + 1 ? rateFrames : 0;
+            rateFrames = 0;
+            rateSecond = second;
+        }
+        rateFrames++;
+    }
+
+    /**
+     * @return the amount of frames checked in the last whole second, or 0 if no frames were checked recently
+     */
+    public int getFramesPerSecond() {
+        return rateSecond >= System.currentTimeMillis() / 1000 - 1 ? framesPerSecond : 0;
+    }
+
     public void stop() {
         gcConnection.setActive(false);
         try {
@@ -419,14 +590,33 @@ public class SSLAutoRef {
         }
         gcConnection.disconnect();
         gcThread.interrupt();
-        worldConnection.close();
+        if (worldConnection != null) {
+            worldConnection.close();
+        }
+        if (trackerConnection != null) {
+            trackerConnection.close();
+        }
         worldThread.interrupt();
+        if (latencySummaryThread != null) {
+            latencySummaryThread.interrupt();
+        }
+
+        if (recorder != null) {
+            recorder.close();
+        }
     }
 
     public void setOnViolation(Consumer<RuleViolation> onViolation) {
         this.onViolation = onViolation;
     }
 
+    /**
+     * @param onGameEventRejected called when the GameController rejects a game event sent for a violation
+     */
+    public void setOnGameEventRejected(Consumer<GameEventRejectedException> onGameEventRejected) {
+        this.onGameEventRejected = onGameEventRejected;
+    }
+
     public void setActive(boolean active) {
         if (gcConnection != null) {
             gcConnection.setActive(active);
@@ -439,10 +629,141 @@ public class SSLAutoRef {
         return active;
     }
 
+    /**
+     * @param fullStateDecoding if the State packets from World should be decoded completely instead of selectively
+     */
+    public void setFullStateDecoding(boolean fullStateDecoding) {
+        this.fullStateDecoding = fullStateDecoding;
+    }
+
+    /**
+     * @param recycleGames if the games of old frames should be reset and reused instead of allocating new ones
+     */
+    public void setRecycleGames(boolean recycleGames) {
+        this.gameArena = recycleGames ? new GameArena(GAME_ARENA_SIZE) : null;
+    }
+
+    /**
+     * @param parallelValidators if the validators of a frame should run in parallel instead of one after another
+     */
+    public void setParallelValidators(boolean parallelValidators) {
+        referee.setValidationPool(parallelValidators ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * @param recordingDirectory the directory to record every match in, or null to not record
+     */
+    public void setRecordingDirectory(Path recordingDirectory) {
+        this.recordingDirectory = recordingDirectory;
+    }
+
+    /**
+     * @return the recorder of the current match, or null if it is not recorded
+     */
+    public MatchRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @param worldExecutor the executor to process the frames from World on, shared with other instances, or null for an own thread
+     */
+    public void setWorldExecutor(Executor worldExecutor) {
+        this.worldExecutor = worldExecutor;
+    }
+
+    /**
+     * @param gcKeyFile the file with the key pair to sign messages to the GameController with, created if it does not exist,
+     *                  or null to generate a key pair every time the application starts. With a key file, messages
+     *                  are always signed and only one game event is sent per round trip
+     */
+    public void setGcKeyFile(Path gcKeyFile) {
+        this.gcKeyFile = gcKeyFile;
+    }
+
+    /**
+     * @param gcSigning if messages to the GameController are signed, the GameController only accepts unsigned
+     *                  messages when it has no public key of this AutoRef
+     */
+    public void setGcSigning(boolean gcSigning) {
+        this.gcSigning = gcSigning;
+    }
+
+    /**
+     * @param gcPipelineWindow the amount of game events that can be sent before the GameController replied to the
+     *                         first one, only used when not signing
+     */
+    public void setGcPipelineWindow(int gcPipelineWindow) {
+        this.gcPipelineWindow = gcPipelineWindow;
+    }
+
+    /**
+     * @param gcMaxEventAge the time in ms a game event can wait to be sent to the GameController, older events are skipped
+     */
+    public void setGcMaxEventAge(long gcMaxEventAge) {
+        this.gcMaxEventAge = gcMaxEventAge;
+    }
+
+    /**
+     * @param gcOverflowPolicy which game event to drop when the queue to the GameController is full
+     */
+    public void setGcOverflowPolicy(GameControllerConnection.OverflowPolicy gcOverflowPolicy) {
+        this.gcOverflowPolicy = gcOverflowPolicy;
+    }
+
+    /**
+     * @return the time frames and game events spend in every stage, from the World timestamp to the reply of GC
+     */
+    public LatencyMetrics getLatencyMetrics() {
+        return latencyMetrics;
+    }
+
+    /**
+     * @param latencySummaryInterval the time in seconds between printing a summary of the latencies, or 0 to never print one
+     */
+    public void setLatencySummaryInterval(int latencySummaryInterval) {
+        this.latencySummaryInterval = latencySummaryInterval;
+    }
+
     public Referee getReferee() {
         return referee;
     }
 
+    public GameControllerConnection getGameControllerConnection() {
+        return gcConnection;
+    }
+
+    public WorldConnection getWorldConnection() {
+        return worldConnection;
+    }
+
+    /**
+     * @return the connection to the multicast groups, or null if the frames come from World
+     */
+    public TrackerMulticastConnection getTrackerConnection() {
+        return trackerConnection;
+    }
+
+    /**
+     * @param inputSource where the frames should come from, must be set before starting
+     */
+    public void setInputSource(InputSource inputSource) {
+        this.inputSource = inputSource;
+    }
+
+    /**
+     * @param trackerSource the source name of the tracker to use with {@link InputSource#TRACKER}, or null to use the first tracker seen
+     */
+    public void setTrackerSource(String trackerSource) {
+        this.trackerSource = trackerSource;
+    }
+
+    /**
+     * @param networkInterface the network interface to join the multicast groups on with {@link InputSource#TRACKER} or {@link InputSource#VISION}, or null for all
+     */
+    public void setNetworkInterface(String networkInterface) {
+        this.networkInterface = networkInterface;
+    }
+
     public boolean isWorldConnected() {
         // FIXME: There is no way to check a ZMQ socket if its connected.
         return true;
@@ -459,4 +780,24 @@ public class SSLAutoRef {
     public void setDivision(Division division) {
         this.division = division;
     }
+
+    /**
+     * Where the frames the AutoRef processes come from.
+     */
+    public enum InputSource {
+        /**
+         * State packets from RoboTeam World over ZMQ.
+         */
+        WORLD,
+
+        /**
+         * The standard SSL tracker, referee and vision multicast groups.
+         */
+        TRACKER,
+
+        /**
+         * The standard SSL referee and vision multicast groups, tracked by the AutoRef itself.
+         */
+        VISION
+    }
 }
@@ -0,0 +1,119 @@
+package nl.roboteamtwente.autoref;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
+import nl.roboteamtwente.proto.StateOuterClass;
+import org.robocup.ssl.proto.SslVisionGeometry;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes only the parts of a State packet that the AutoRef actually reads.
+ * <p>
+ * A full {@link StateOuterClass.State#parseFrom(byte[])} decodes all three worlds, every processed vision
+ * packet and every processed referee packet. The AutoRef only uses the command extrapolated world, the
+ * team parameters, the field and the referee message, so this decoder walks the wire format once and
+ * skips everything else without materialising it.
+ * <p>
+ * The field hardly ever changes, so every thread remembers the bytes of the last field it decoded. When the next
+ * packet has the same bytes, the field decoded before is returned again instead of decoding it, and callers can
+ * tell it did not change by comparing references.
+ */
+public final class StateDecoder {
+    private static final ExtensionRegistryLite EXTENSION_REGISTRY = ExtensionRegistryLite.getEmptyRegistry();
+
+    private static final ThreadLocal<DecodedField> LAST_FIELD = new ThreadLocal<>();
+
+    private StateDecoder() {
+    }
+
+    /**
+     * Decode the fields of a State packet that are used by the AutoRef.
+     *
+     * @param buffer the serialized State packet
+     * @return a State packet with only the used fields set
+     * @throws InvalidProtocolBufferException if the packet is malformed
+     */
+    public static StateOuterClass.State decode(byte[] buffer) throws InvalidProtocolBufferException {
+        StateOuterClass.State.Builder builder = StateOuterClass.State.newBuilder();
+        CodedInputStream input = CodedInputStream.newInstance(buffer);
+
+        try {
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                // every field of State is a message, anything else can not be one we are interested in
+                if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    input.skipField(tag);
+                    continue;
+                }
+
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case StateOuterClass.State.COMMAND_EXTRAPOLATED_WORLD_FIELD_NUMBER ->
+                            input.readMessage(builder.getCommandExtrapolatedWorldBuilder(), EXTENSION_REGISTRY);
+                    case StateOuterClass.State.BLUE_ROBOT_PARAMETERS_FIELD_NUMBER ->
+                            input.readMessage(builder.getBlueRobotParametersBuilder(), EXTENSION_REGISTRY);
+                    case StateOuterClass.State.YELLOW_ROBOT_PARAMETERS_FIELD_NUMBER ->
+                            input.readMessage(builder.getYellowRobotParametersBuilder(), EXTENSION_REGISTRY);
+                    case StateOuterClass.State.FIELD_FIELD_NUMBER -> {
+                        if (builder.hasField()) {
+                            // a repeated field is merged into the first one, which is rare enough to not cache
+                            input.readMessage(builder.getFieldBuilder(), EXTENSION_REGISTRY);
+                        } else {
+                            builder.setField(readField(input, buffer));
+                        }
+                    }
+                    case StateOuterClass.State.REFEREE_FIELD_NUMBER ->
+                            input.readMessage(builder.getRefereeBuilder(), EXTENSION_REGISTRY);
+                    // last seen world, ball camera world and the processed vision and referee packets
+                    default -> input.skipField(tag);
+                }
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+
+        try {
+            return builder.build();
+        } catch (UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException();
+        }
+    }
+
+    /**
+     * Read the field, or return the last field decoded on this thread if its bytes are the same.
+     *
+     * @param input  the input, positioned at the length of the field
+     * @param buffer the serialized State packet the input reads from
+     * @return the field
+     */
+    private static SslVisionGeometry.SSL_GeometryData readField(CodedInputStream input, byte[] buffer) throws IOException {
+        int length = input.readRawVarint32();
+        int offset = input.getTotalBytesRead();
+
+        DecodedField last = LAST_FIELD.get();
+        if (last != null && length >= 0 && length <= buffer.length - offset
+                && Arrays.equals(buffer, offset, offset + length, last.bytes(), 0, last.bytes().length)) {
+            input.skipRawBytes(length);
+            return last.field();
+        }
+
+        // a truncated packet makes readRawBytes throw
+        byte[] bytes = input.readRawBytes(length);
+        SslVisionGeometry.SSL_GeometryData field = SslVisionGeometry.SSL_GeometryData.parser().parsePartialFrom(bytes, EXTENSION_REGISTRY);
+        LAST_FIELD.set(new DecodedField(bytes, field));
+        return field;
+    }
+
+    /**
+     * @param bytes the serialized field
+     * @param field the field decoded from the bytes
+     */
+    private record DecodedField(byte[] bytes, SslVisionGeometry.SSL_GeometryData field) {
+    }
+}
@@ -1,22 +1,50 @@
 package nl.roboteamtwente.autoref;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.metrics.LatencyMetrics;
+import nl.roboteamtwente.autoref.recording.MatchRecorder;
+import nl.roboteamtwente.autoref.recording.RecordingFormat;
 import nl.roboteamtwente.proto.StateOuterClass;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class WorldConnection implements Runnable {
     private final String ip;
     private final int port;
     private ZMQ.Socket worldSocket;
     private final SSLAutoRef ref;
+    private boolean fullDecoding = false;
+
+    // the receiving thread only stores the newest frame, the referee thread processes it
+    private final LatestFrameHolder<ReceivedFrame> frames = new LatestFrameHolder<>();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private Thread refereeThread;
+
+    // when set, frames are processed by tasks on this executor instead of on an own referee thread
+    private Executor executor;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // when set, every frame handed to the referee is recorded
+    private MatchRecorder recorder;
+
+    // when set, the time it takes to decode a frame is recorded
+    private LatencyMetrics latencyMetrics;
 
     /**
      * Establish connection with World
      */
     public void connect() {
+        if (executor == null) {
+            refereeThread = new Thread(this::referee, "AutoRef referee");
+            refereeThread.start();
+        }
+
         try (ZContext context = new ZContext()) {
             //Create connection
             worldSocket = context.createSocket(SocketType.SUB);
@@ -28,21 +56,29 @@ public class WorldConnection implements Runnable {
             if (e.getErrorCode() != 4) {
                 e.printStackTrace();
             }
+        } finally {
+            if (refereeThread != null) {
+                refereeThread.interrupt();
+            }
         }
     }
 
     /**
-     * Receive and process messages
+     * Receive messages and hand them over to the referee thread.
+     * Nothing else happens on this thread, so a slow frame never backs up the socket.
      */
     public void listener() {
         try {
             while (!Thread.currentThread().isInterrupted() && worldSocket != null) {
                 byte[] buffer = worldSocket.recv();
-                StateOuterClass.State packet = StateOuterClass.State.parseFrom(buffer);
-                ref.checkViolations(packet);
+                if (buffer != null) {
+                    frames.offer(new ReceivedFrame(buffer, RecordingFormat.currentTimeMicros()));
+
+                    if (executor != null) {
+                        scheduleDrain();
+                    }
+                }
             }
-        } catch (InvalidProtocolBufferException e) {
-            e.printStackTrace();
         } catch (ZMQException e) {
             //4 is the error code when we close the connection by hand, which can be ignored
             if (e.getErrorCode() != 4) {
@@ -51,6 +87,72 @@ public class WorldConnection implements Runnable {
         }
     }
 
+    /**
+     * Process the newest received frame, skipping any frames that arrived while the previous one was being processed.
+     */
+    private void referee() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                process(frames.take());
+            }
+        } catch (InterruptedException e) {
+            //empty
+        }
+    }
+
+    /**
+     * Schedule a task on the executor to process the newest frame, unless one is scheduled already.
+     * At most one task per connection is scheduled, so frames of one connection are never processed concurrently.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Process a single frame and schedule a new task if another frame arrived in the meantime. The new task
+     * is queued behind the tasks of other connections sharing the executor, so every connection gets its turn.
+     */
+    private void drain() {
+        try {
+            ReceivedFrame frame = frames.poll();
+            if (frame != null) {
+                process(frame);
+            }
+        } finally {
+            drainScheduled.set(false);
+        }
+
+        // a frame offered before the flag was cleared did not schedule a task itself
+        if (frames.hasFrame()) {
+            scheduleDrain();
+        }
+    }
+
+    private void process(ReceivedFrame frame) {
+        if (recorder != null) {
+            recorder.record(frame.data(), frame.receiveTimeMicros());
+        }
+
+        try {
+            long start = System.nanoTime();
+            StateOuterClass.State packet = fullDecoding ? StateOuterClass.State.parseFrom(frame.data()) : StateDecoder.decode(frame.data());
+            if (latencyMetrics != null) {
+                latencyMetrics.record(LatencyMetrics.Stage.DECODE, System.nanoTime() - start);
+            }
+            ref.checkViolations(packet);
+        } catch (InvalidProtocolBufferException e) {
+            droppedFrames.incrementAndGet();
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // one bad frame should not stop the referee thread or the drain task
+            droppedFrames.incrementAndGet();
+            System.err.println("Failed to process a frame from World");
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Close connection to world
      */
@@ -64,9 +166,72 @@ public class WorldConnection implements Runnable {
             }
         } finally {
             worldSocket = null;
+
+            if (refereeThread != null) {
+                refereeThread.interrupt();
+            }
         }
     }
 
+    /**
+     * @param fullDecoding if every field of the State packet should be decoded instead of only the ones the AutoRef uses
+     */
+    public void setFullDecoding(boolean fullDecoding) {
+        this.fullDecoding = fullDecoding;
+    }
+
+    /**
+     * Process frames on the given executor instead of on an own referee thread, so several connections can
+     * share a pool of threads. Must be set before connecting.
+     *
+     * @param executor the executor to process frames on, or null to use an own thread
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param recorder the recorder to write every frame handed to the referee to, or null to not record
+     */
+    public void setRecorder(MatchRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @param latencyMetrics the metrics to record the time it takes to decode a frame in, or null to not record
+     */
+    public void setLatencyMetrics(LatencyMetrics latencyMetrics) {
+        this.latencyMetrics = latencyMetrics;
+    }
+
+    /**
+     * @return the amount of frames received from World
+     */
+    public long getFramesReceived() {
+        return frames.getOffered();
+    }
+
+    /**
+     * @return the amount of frames that were skipped because a newer frame arrived before they were processed
+     */
+    public long getFramesConflated() {
+        return frames.getConflated();
+    }
+
+    /**
+     * @return the amount of frames that were dropped because they could not be decoded or processed
+     */
+    public long getFramesDropped() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return the amount of frames that were handed to the referee
+     */
+    public long getFramesProcessed() {
+        return frames.getTaken();
+    }
+
     @Override
     public void run() {
         connect();
@@ -79,4 +244,13 @@ public class WorldConnection implements Runnable {
         this.ref = ref;
         this.worldSocket = null;
     }
+
+    /**
+     * A frame as received from World.
+     *
+     * @param data              the serialized State packet
+     * @param receiveTimeMicros the wall clock time the frame was received at, in microseconds since the epoch
+     */
+    private record ReceivedFrame(byte[] data, long receiveTimeMicros) {
+    }
 }
@@ -0,0 +1,138 @@
+package nl.roboteamtwente.autoref.input;
+
+/**
+ * A fixed set of one-dimensional Kalman filters with a constant velocity model, stored in primitive arrays so
+ * updating them never allocates.
+ * <p>
+ * Every filter estimates a position and a velocity from position measurements, with the acceleration modelled as
+ * white noise. Angular filters wrap the position to [-pi, pi).
+ */
+final class ConstantVelocityFilters {
+    private final double[] position;
+    private final double[] velocity;
+
+    // the symmetric covariance matrix of every filter: position, position-velocity and velocity variance
+    private final double[] p00;
+    private final double[] p01;
+    private final double[] p11;
+
+    // the time the estimate of every filter is for, in seconds
+    private final double[] time;
+
+    /**
+     * @param count the amount of filters
+     */
+    ConstantVelocityFilters(int count) {
+        this.position = new double[count];
+        this.velocity = new double[count];
+        this.p00 = new double[count];
+        this.p01 = new double[count];
+        this.p11 = new double[count];
+        this.time = new double[count];
+    }
+
+    /**
+     * Start a filter over at a measured position, with an unknown velocity.
+     *
+     * @param i                the filter
+     * @param z                the measured position
+     * @param t                the time of the measurement
+     * @param positionVariance the variance of the measurement
+     * @param velocityVariance the variance of the initial velocity of zero
+     */
+    void reset(int i, double z, double t, double positionVariance, double velocityVariance) {
+        position[i] = z;
+        velocity[i] = 0;
+        p00[i] = positionVariance;
+        p01[i] = 0;
+        p11[i] = velocityVariance;
+        time[i] = t;
+    }
+
+    /**
+     * Predict a filter forward to a time. Predicting to a time before the current estimate does nothing, so
+     * measurements that arrive slightly out of order are applied at the current estimate.
+     *
+     * @param i the filter
+     * @param t the time to predict to
+     * @param q the variance of the acceleration per second
+     */
+    void predict(int i, double t, double q) {
+        double dt = t - time[i];
+        if (dt <= 0) {
+            return;
+        }
+
+        double dt2 = dt * dt;
+        position[i] += velocity[i] * dt;
+        p00[i] += dt * (2 * p01[i] + dt * p11[i]) + q * dt2 * dt2 / 4;
+        p01[i] += dt * p11[i] + q * dt2 * dt / 2;
+        p11[i] += q * dt2;
+        time[i] = t;
+    }
+
+    /**
+     * Correct a filter with a measured position.
+     *
+     * @param i       the filter
+     * @param z       the measured position
+     * @param r       the variance of the measurement
+     * @param angular true if the position is an angle
+     */
+    void update(int i, double z, double r, boolean angular) {
+        double innovation = z - position[i];
+        if (angular) {
+            innovation = normalizeAngle(innovation);
+        }
+
+        double s = p00[i] + r;
+        double k0 = p00[i] / s;
+        double k1 = p01[i] / s;
+
+        position[i] += k0 * innovation;
+        velocity[i] += k1 * innovation;
+        if (angular) {
+            position[i] = normalizeAngle(position[i]);
+        }
+
+        // P = (I - K H) P, with H = [1 0]
+        double oldP00 = p00[i];
+        double oldP01 = p01[i];
+        p00[i] = (1 - k0) * oldP00;
+        p01[i] = (1 - k0) * oldP01;
+        p11[i] -= k1 * oldP01;
+    }
+
+    /**
+     * @param i the filter
+     * @param t the time to extrapolate to, which may be after the time of the estimate
+     * @return the estimated position at the time
+     */
+    double positionAt(int i, double t) {
+        return position[i] + velocity[i] * Math.max(0, t - time[i]);
+    }
+
+    /**
+     * @param i the filter
+     * @return the estimated velocity
+     */
+    double velocity(int i) {
+        return velocity[i];
+    }
+
+    /**
+     * @param i the filter
+     * @return the variance of the estimated position
+     */
+    double positionVariance(int i) {
+        return p00[i];
+    }
+
+    static double normalizeAngle(double angle) {
+        angle = (angle + Math.PI) % (2 * Math.PI);
+        if (angle < 0) {
+            angle += 2 * Math.PI;
+        }
+        return angle - Math.PI;
+    }
+}
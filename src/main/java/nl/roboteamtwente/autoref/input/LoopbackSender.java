@@ -0,0 +1,136 @@
+package nl.roboteamtwente.autoref.input;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the tracker, referee and vision messages of an SSL log file to the standard multicast groups on the
+ * loopback interface, paced by the time they were logged at. Together with {@code --input=tracker} this makes it
+ * possible to test the AutoRef without a tracker, GameController or vision running.
+ */
+public class LoopbackSender implements AutoCloseable {
+    private final DatagramChannel channel;
+    private final double speed;
+
+    private final InetSocketAddress trackerGroup = new InetSocketAddress(TrackerMulticastConnection.DEFAULT_TRACKER_ADDRESS, TrackerMulticastConnection.DEFAULT_TRACKER_PORT);
+    private final InetSocketAddress refereeGroup = new InetSocketAddress(TrackerMulticastConnection.DEFAULT_REFEREE_ADDRESS, TrackerMulticastConnection.DEFAULT_REFEREE_PORT);
+    private final InetSocketAddress visionGroup = new InetSocketAddress(TrackerMulticastConnection.DEFAULT_VISION_ADDRESS, TrackerMulticastConnection.DEFAULT_VISION_PORT);
+
+    private long messages;
+
+    /**
+     * @param networkInterface the name of the interface to send on
+     * @param speed            the replay speed relative to real time, or 0 to send as fast as possible
+     * @throws IOException if the interface does not exist or the channel could not be opened
+     */
+    public LoopbackSender(String networkInterface, double speed) throws IOException {
+        NetworkInterface found = NetworkInterface.getByName(networkInterface);
+        if (found == null) {
+            throw new IOException("Unknown network interface " + networkInterface);
+        }
+
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.IP_MULTICAST_IF, found)
+                .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        this.speed = speed;
+    }
+
+    /**
+     * Send all remaining messages of a log file.
+     *
+     * @param reader the log file
+     * @throws IOException if the log file could not be read or a message could not be sent
+     */
+    public void send(SslLogReader reader) throws IOException {
+        long startNanos = System.nanoTime();
+        long startTimestamp = -1;
+
+        SslLogReader.LogMessage message;
+        while ((message = reader.next()) != null && !Thread.currentThread().isInterrupted()) {
+            InetSocketAddress group = switch (message.type()) {
+                case SSL_VISION_TRACKER_2020 -> trackerGroup;
+                case SSL_REFBOX_2013 -> refereeGroup;
+                case SSL_VISION_2014 -> visionGroup;
+                default -> null;
+            };
+            if (group == null) {
+                continue;
+            }
+
+            if (speed > 0) {
+                if (startTimestamp < 0) {
+                    startTimestamp = message.timestamp();
+                }
+
+                long deadline = startNanos + (long) ((message.timestamp() - startTimestamp) / speed);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            }
+
+            channel.send(ByteBuffer.wrap(message.data()), group);
+            messages++;
+        }
+    }
+
+    /**
+     * @return the amount of messages sent
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) {
+        Path logFile = null;
+        String networkInterface = "lo";
+        double speed = 1;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--speed=")) {
+                    speed = Double.parseDouble(arg.substring("--speed=".length()));
+                } else if (arg.startsWith("--interface=")) {
+                    networkInterface = arg.substring("--interface=".length());
+                } else if (!arg.startsWith("--") && logFile == null) {
+                    logFile = Path.of(arg);
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse speed program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (logFile == null) {
+            System.err.println("Usage: <.log(.gz) file> [--speed=N] [--interface=name]");
+            System.exit(1);
+            return;
+        }
+
+        try (SslLogReader reader = new SslLogReader(logFile); LoopbackSender sender = new LoopbackSender(networkInterface, speed)) {
+            sender.send(reader);
+            System.out.println("Sent " + sender.getMessages() + " messages");
+        } catch (IOException e) {
+            System.err.println("Failed to send log file " + logFile);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package nl.roboteamtwente.autoref.input;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the messages of an SSL game log file, as written by the ssl-logtools and the ssl-game-controller, one
+ * message at a time. Both plain {@code .log} files and gzip compressed {@code .log.gz} files are supported.
+ * <p>
+ * A log file starts with the header {@code SSL_LOG_FILE} and a version, followed by messages which each consist of
+ * a receive timestamp in nanoseconds, a message type and the size of the serialized protobuf message. All numbers
+ * are big endian.
+ */
+public class SslLogReader implements AutoCloseable {
+    private static final byte[] HEADER = "SSL_LOG_FILE".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // messages larger than this are considered a corrupt file, rather than allocating the size
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final DataInputStream input;
+
+    /**
+     * @param file the log file, gzip compressed if the name ends with {@code .gz}
+     * @throws IOException if the file could not be opened or is not a log file of a supported version
+     */
+    public SslLogReader(Path file) throws IOException {
+        this.file = file;
+
+        InputStream stream = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            stream = new GZIPInputStream(stream, BUFFER_SIZE);
+        }
+        this.input = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+
+        try {
+            byte[] header = new byte[HEADER.length];
+            input.readFully(header);
+            if (!Arrays.equals(header, HEADER)) {
+                throw new IOException(file + " is not an SSL log file");
+            }
+
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file looks like an SSL log file by its name
+     */
+    public static boolean isLogFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".log") || name.endsWith(".log.gz");
+    }
+
+    /**
+     * Read the next message of the log.
+     *
+     * @return the next message, or null if the end of the log is reached
+     * @throws IOException if the log could not be read
+     */
+    public LogMessage next() throws IOException {
+        long timestamp;
+        try {
+            timestamp = input.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        try {
+            int type = input.readInt();
+            int size = input.readInt();
+            if (size < 0 || size > MAX_MESSAGE_SIZE) {
+                throw new IOException("Invalid message size " + size + " in " + file);
+            }
+
+            byte[] data = new byte[size];
+            input.readFully(data);
+            return new LogMessage(timestamp, MessageType.of(type), data);
+        } catch (EOFException e) {
+            // logs of a crashed or still running logger end in the middle of a message
+            System.err.println("Log file " + file + " ends with an incomplete message");
+            return null;
+        }
+    }
+
+    /**
+     * @return the log file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * The types of messages in a log file.
+     */
+    public enum MessageType {
+        BLANK,
+        UNKNOWN,
+        SSL_VISION_2010,
+        SSL_REFBOX_2013,
+        SSL_VISION_2014,
+        SSL_VISION_TRACKER_2020,
+        SSL_INDEX_2021;
+
+        private static final MessageType[] VALUES = values();
+
+        /**
+         * @param id the id of the type in the log file
+         * @return the type, or UNKNOWN if the id is not known
+         */
+        public static MessageType of(int id) {
+            return id >= 0 && id < VALUES.length ? VALUES[id] : UNKNOWN;
+        }
+    }
+
+    /**
+     * A message of a log file.
+     *
+     * @param timestamp the time the message was received at, in nanoseconds since the epoch
+     * @param type      the type of the message
+     * @param data      the serialized protobuf message
+     */
+    public record LogMessage(long timestamp, MessageType type, byte[] data) {
+    }
+}
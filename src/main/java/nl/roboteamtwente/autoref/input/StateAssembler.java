@@ -0,0 +1,209 @@
+package nl.roboteamtwente.autoref.input;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.proto.RobotParametersOuterClass;
+import nl.roboteamtwente.proto.StateOuterClass;
+import nl.roboteamtwente.proto.Vector2FOuterClass;
+import nl.roboteamtwente.proto.WorldBallOuterClass;
+import nl.roboteamtwente.proto.WorldOuterClass;
+import nl.roboteamtwente.proto.WorldRobotOuterClass;
+import org.robocup.ssl.proto.SslGcCommon;
+import org.robocup.ssl.proto.SslGcRefereeMessage;
+import org.robocup.ssl.proto.SslVisionDetectionTracked;
+import org.robocup.ssl.proto.SslVisionGeometry;
+import org.robocup.ssl.proto.SslVisionWrapper;
+import org.robocup.ssl.proto.SslVisionWrapperTracked;
+
+/**
+ * Assembles the State packets the AutoRef consumes from the standard SSL messages: tracker frames, referee
+ * messages and the geometry sent along with vision.
+ * <p>
+ * Every tracker frame results in a State, with the last referee message and geometry received before it. The
+ * robot parameters are not part of the standard messages, so all robots get the same default radius and height.
+ * <p>
+ * Often more than one tracker sends frames at the same time, for example the trackers of both AutoRefs. Only the
+ * frames of one tracker are used: the one with the configured source name, or otherwise the first one seen.
+ * <p>
+ * With a {@link VisionTracker} set, the tracker frames are ignored and the robots and the ball are tracked from
+ * the raw vision detections instead.
+ */
+public class StateAssembler {
+    /**
+     * Radius of a robot in m, the maximum allowed by the rules.
+     */
+    public static final float DEFAULT_ROBOT_RADIUS = 0.09f;
+
+    /**
+     * Height of a robot in m, the maximum allowed by the rules.
+     */
+    public static final float DEFAULT_ROBOT_HEIGHT = 0.15f;
+
+    private final StateOuterClass.State.Builder state = StateOuterClass.State.newBuilder();
+
+    private String trackerSource;
+    private String trackerUuid;
+
+    // when set, the worlds come from this tracker instead of the tracker frames
+    private VisionTracker visionTracker;
+
+    public StateAssembler() {
+        RobotParametersOuterClass.TeamParameters parameters = RobotParametersOuterClass.TeamParameters.newBuilder()
+                .setParameters(RobotParametersOuterClass.RobotParameters.newBuilder()
+                        .setRadius(DEFAULT_ROBOT_RADIUS)
+                        .setHeight(DEFAULT_ROBOT_HEIGHT))
+                .build();
+
+        state.setBlueRobotParameters(parameters);
+        state.setYellowRobotParameters(parameters);
+    }
+
+    /**
+     * Handle a message of a log file.
+     *
+     * @param message the message
+     * @return the State if the message completed a frame, null otherwise
+     * @throws InvalidProtocolBufferException if the message could not be decoded
+     */
+    public StateOuterClass.State accept(SslLogReader.LogMessage message) throws InvalidProtocolBufferException {
+        switch (message.type()) {
+            case SSL_REFBOX_2013 -> onReferee(SslGcRefereeMessage.SSL_Referee.parseFrom(message.data()));
+            case SSL_VISION_2014 -> {
+                return onVision(SslVisionWrapper.SSL_WrapperPacket.parseFrom(message.data()));
+            }
+            case SSL_VISION_TRACKER_2020 -> {
+                return onTracker(SslVisionWrapperTracked.TrackerWrapperPacket.parseFrom(message.data()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param referee a referee message, used for the following States
+     */
+    public void onReferee(SslGcRefereeMessage.SSL_Referee referee) {
+        state.setReferee(referee);
+    }
+
+    /**
+     * Handle a vision packet, of which the geometry is used for the following States. With a vision tracker set,
+     * the detections are tracked as well.
+     *
+     * @param wrapper the vision packet
+     * @return the State if the vision tracker has a new world, null otherwise
+     */
+    public StateOuterClass.State onVision(SslVisionWrapper.SSL_WrapperPacket wrapper) {
+        if (wrapper.hasGeometry()) {
+            onGeometry(wrapper.getGeometry());
+        }
+
+        if (visionTracker != null && wrapper.hasDetection() && visionTracker.update(wrapper.getDetection())) {
+            return onWorld(visionTracker.getWorld());
+        }
+        return null;
+    }
+
+    /**
+     * @param geometry the geometry of the field, used for the following States
+     */
+    public void onGeometry(SslVisionGeometry.SSL_GeometryData geometry) {
+        state.setField(geometry);
+    }
+
+    /**
+     * Assemble a State from a tracker frame.
+     *
+     * @param wrapper the tracker packet
+     * @return the State, or null if the packet has no frame, is from another tracker than the one in use or the
+     * vision tracker is used instead
+     */
+    public StateOuterClass.State onTracker(SslVisionWrapperTracked.TrackerWrapperPacket wrapper) {
+        if (visionTracker != null || !wrapper.hasTrackedFrame() || !isTrackerInUse(wrapper)) {
+            return null;
+        }
+
+        WorldOuterClass.World world = deriveWorld(wrapper.getTrackedFrame());
+        return state.setLastSeenWorld(world)
+                .setCommandExtrapolatedWorld(world)
+                .build();
+    }
+
+    /**
+     * Assemble a State from a World, for example one derived from vision by the AutoRef itself.
+     *
+     * @param world the world
+     * @return the State
+     */
+    public StateOuterClass.State onWorld(WorldOuterClass.World world) {
+        return state.setLastSeenWorld(world)
+                .setCommandExtrapolatedWorld(world)
+                .build();
+    }
+
+    private boolean isTrackerInUse(SslVisionWrapperTracked.TrackerWrapperPacket wrapper) {
+        if (trackerUuid == null) {
+            if (trackerSource != null && !trackerSource.equals(wrapper.getSourceName())) {
+                return false;
+            }
+
+            trackerUuid = wrapper.getUuid();
+            System.out.println("Using tracker " + wrapper.getSourceName() + " (" + trackerUuid + ")");
+        }
+
+        return trackerUuid.equals(wrapper.getUuid());
+    }
+
+    private static WorldOuterClass.World deriveWorld(SslVisionDetectionTracked.TrackedFrame frame) {
+        WorldOuterClass.World.Builder world = WorldOuterClass.World.newBuilder()
+                .setTime((long) (frame.getTimestamp() * 1_000_000_000L))
+                .setId(frame.getFrameNumber());
+
+        // tracker positions are already in m, like the World packets of RoboTeam World
+        if (frame.getBallsCount() > 0) {
+            SslVisionDetectionTracked.TrackedBall ball = frame.getBalls(0);
+            world.setBall(WorldBallOuterClass.WorldBall.newBuilder()
+                    .setPos(vector(ball.getPos().getX(), ball.getPos().getY()))
+                    .setZ(ball.getPos().getZ())
+                    .setVel(vector(ball.getVel().getX(), ball.getVel().getY()))
+                    .setZVel(ball.getVel().getZ())
+                    .setVisible(!ball.hasVisibility() || ball.getVisibility() > 0));
+        }
+
+        for (SslVisionDetectionTracked.TrackedRobot robot : frame.getRobotsList()) {
+            WorldRobotOuterClass.WorldRobot worldRobot = WorldRobotOuterClass.WorldRobot.newBuilder()
+                    .setId(robot.getRobotId().getId())
+                    .setPos(vector(robot.getPos().getX(), robot.getPos().getY()))
+                    .setAngle(robot.getOrientation())
+                    .setVel(vector(robot.getVel().getX(), robot.getVel().getY()))
+                    .setW(robot.getVelAngular())
+                    .build();
+
+            if (robot.getRobotId().getTeam() == SslGcCommon.Team.BLUE) {
+                world.addBlue(worldRobot);
+            } else if (robot.getRobotId().getTeam() == SslGcCommon.Team.YELLOW) {
+                world.addYellow(worldRobot);
+            }
+        }
+
+        return world.build();
+    }
+
+    private static Vector2FOuterClass.Vector2f vector(float x, float y) {
+        return Vector2FOuterClass.Vector2f.newBuilder().setX(x).setY(y).build();
+    }
+
+    /**
+     * @param visionTracker the tracker to track the raw vision detections with instead of using the tracker frames,
+     *                      or null to use the tracker frames
+     */
+    public void setVisionTracker(VisionTracker visionTracker) {
+        this.visionTracker = visionTracker;
+    }
+
+    /**
+     * @param trackerSource the source name of the tracker to use, or null to use the first tracker seen
+     */
+    public void setTrackerSource(String trackerSource) {
+        this.trackerSource = trackerSource;
+        this.trackerUuid = null;
+    }
+}
@@ -0,0 +1,397 @@
+package nl.roboteamtwente.autoref.input;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.LatestFrameHolder;
+import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.recording.MatchRecorder;
+import nl.roboteamtwente.autoref.recording.RecordingFormat;
+import nl.roboteamtwente.proto.StateOuterClass;
+import org.robocup.ssl.proto.SslGcRefereeMessage;
+import org.robocup.ssl.proto.SslVisionWrapper;
+import org.robocup.ssl.proto.SslVisionWrapperTracked;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives the standard SSL multicast traffic directly, instead of the State packets of RoboTeam World: the frames
+ * of a tracker, the referee messages of the GameController and the geometry sent by vision.
+ * <p>
+ * All groups are read on one thread with non-blocking channels and a selector, every channel receives into its own
+ * reusable direct buffer. The packets are assembled into States by a {@link StateAssembler} and handed to the
+ * referee thread in the same way as in {@link nl.roboteamtwente.autoref.WorldConnection}, so a slow frame never
+ * backs up the sockets.
+ * <p>
+ * With a {@link VisionTracker} set, the tracker group is not joined and the robots and the ball are tracked from the
+ * vision detections instead.
+ */
+public class TrackerMulticastConnection implements Runnable {
+    public static final String DEFAULT_TRACKER_ADDRESS = "224.5.23.2";
+    public static final int DEFAULT_TRACKER_PORT = 10010;
+    public static final String DEFAULT_REFEREE_ADDRESS = "224.5.23.1";
+    public static final int DEFAULT_REFEREE_PORT = 10003;
+    public static final String DEFAULT_VISION_ADDRESS = "224.5.23.2";
+    public static final int DEFAULT_VISION_PORT = 10006;
+
+    // the largest UDP payload
+    private static final int BUFFER_SIZE = 65536;
+
+    // time the selector waits for packets before checking if the connection is closed (in ms)
+    private static final int SELECT_TIMEOUT = 100;
+
+    private final SSLAutoRef ref;
+    private final StateAssembler assembler = new StateAssembler();
+
+    private InetSocketAddress trackerGroup = new InetSocketAddress(DEFAULT_TRACKER_ADDRESS, DEFAULT_TRACKER_PORT);
+    private InetSocketAddress refereeGroup = new InetSocketAddress(DEFAULT_REFEREE_ADDRESS, DEFAULT_REFEREE_PORT);
+    private InetSocketAddress visionGroup = new InetSocketAddress(DEFAULT_VISION_ADDRESS, DEFAULT_VISION_PORT);
+    private String networkInterface;
+    private boolean useVisionTracker = false;
+
+    private Selector selector;
+    private volatile boolean closed = false;
+
+    // the receiving thread only stores the newest State, the referee thread processes it
+    private final LatestFrameHolder<ReceivedState> frames = new LatestFrameHolder<>();
+    private Thread refereeThread;
+
+    // when set, every State handed to the referee is recorded
+    private MatchRecorder recorder;
+
+    private final AtomicLong trackerPackets = new AtomicLong();
+    private final AtomicLong refereePackets = new AtomicLong();
+    private final AtomicLong visionPackets = new AtomicLong();
+    private final AtomicLong invalidPackets = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    public TrackerMulticastConnection(SSLAutoRef ref) {
+        this.ref = ref;
+    }
+
+    /**
+     * Join the multicast groups and receive packets until the connection is closed.
+     */
+    public void connect() {
+        refereeThread = new Thread(this::referee, "AutoRef referee");
+        refereeThread.start();
+
+        List<DatagramChannel> channels = new ArrayList<>();
+        try {
+            selector = Selector.open();
+            List<NetworkInterface> interfaces = multicastInterfaces();
+
+            if (!useVisionTracker) {
+                channels.add(open(Source.TRACKER, trackerGroup, interfaces));
+            }
+            channels.add(open(Source.REFEREE, refereeGroup, interfaces));
+            channels.add(open(Source.VISION, visionGroup, interfaces));
+
+            listener();
+        } catch (IOException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        } catch (ClosedSelectorException e) {
+            //empty, closed by hand
+        } finally {
+            for (DatagramChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            refereeThread.interrupt();
+        }
+    }
+
+    private DatagramChannel open(Source source, InetSocketAddress group, List<NetworkInterface> interfaces) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .bind(new InetSocketAddress(group.getPort()));
+
+        int joined = 0;
+        for (NetworkInterface networkInterface : interfaces) {
+            try {
+                channel.join(group.getAddress(), networkInterface);
+                joined++;
+            } catch (IOException e) {
+                System.err.println("Failed to join " + group + " on " + networkInterface.getName() + ": " + e.getMessage());
+            }
+        }
+        if (joined == 0) {
+            channel.close();
+            throw new IOException("Could not join " + group + " on any network interface");
+        }
+
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Receiver(source, ByteBuffer.allocateDirect(BUFFER_SIZE)));
+        return channel;
+    }
+
+    private List<NetworkInterface> multicastInterfaces() throws IOException {
+        if (networkInterface != null) {
+            NetworkInterface found = NetworkInterface.getByName(networkInterface);
+            if (found == null) {
+                throw new IOException("Unknown network interface " + networkInterface);
+            }
+            return List.of(found);
+        }
+
+        // the loopback interface often does not advertise multicast, but is needed to receive local senders
+        List<NetworkInterface> interfaces = new ArrayList<>();
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (candidate.isUp() && (candidate.supportsMulticast() || candidate.isLoopback())) {
+                interfaces.add(candidate);
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Receive packets from all groups and hand the assembled States over to the referee thread.
+     * Nothing else happens on this thread, so a slow frame never backs up the sockets.
+     */
+    private void listener() throws IOException {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            if (selector.select(SELECT_TIMEOUT) == 0) {
+                continue;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                Receiver receiver = (Receiver) key.attachment();
+
+                // read every packet that is waiting, the channel is non-blocking so receive returns null when empty
+                ByteBuffer buffer = receiver.buffer();
+                while (true) {
+                    buffer.clear();
+                    if (channel.receive(buffer) == null) {
+                        break;
+                    }
+                    buffer.flip();
+                    handle(receiver.source(), buffer);
+                }
+            }
+        }
+    }
+
+    private void handle(Source source, ByteBuffer packet) {
+        try {
+            switch (source) {
+                case TRACKER -> {
+                    trackerPackets.incrementAndGet();
+                    StateOuterClass.State state = assembler.onTracker(SslVisionWrapperTracked.TrackerWrapperPacket.parseFrom(packet));
+                    if (state != null) {
+                        frames.offer(new ReceivedState(state, RecordingFormat.currentTimeMicros()));
+                    }
+                }
+                case REFEREE -> {
+                    refereePackets.incrementAndGet();
+                    assembler.onReferee(SslGcRefereeMessage.SSL_Referee.parseFrom(packet));
+                }
+                case VISION -> {
+                    visionPackets.incrementAndGet();
+                    StateOuterClass.State state = assembler.onVision(SslVisionWrapper.SSL_WrapperPacket.parseFrom(packet));
+                    if (state != null) {
+                        frames.offer(new ReceivedState(state, RecordingFormat.currentTimeMicros()));
+                    }
+                }
+            }
+        } catch (InvalidProtocolBufferException e) {
+            invalidPackets.incrementAndGet();
+        } catch (RuntimeException e) {
+            // one bad packet should not stop receiving
+            invalidPackets.incrementAndGet();
+            System.err.println("Failed to handle a " + source.name().toLowerCase() + " packet");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Process the newest State, skipping any States that arrived while the previous one was being processed.
+     */
+    private void referee() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                ReceivedState received = frames.take();
+                if (recorder != null) {
+                    recorder.record(received.state().toByteArray(), received.receiveTimeMicros());
+                }
+
+                try {
+                    ref.checkViolations(received.state());
+                } catch (RuntimeException e) {
+                    // one bad State should not stop the referee thread
+                    droppedFrames.incrementAndGet();
+                    System.err.println("Failed to process a State");
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            //empty
+        }
+    }
+
+    /**
+     * Leave the multicast groups and stop processing.
+     */
+    public void close() {
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (refereeThread != null) {
+            refereeThread.interrupt();
+        }
+    }
+
+    /**
+     * @param address the multicast address of the tracker
+     * @param port    the port of the tracker
+     */
+    public void setTrackerGroup(String address, int port) {
+        this.trackerGroup = new InetSocketAddress(address, port);
+    }
+
+    /**
+     * @param address the multicast address of the GameController referee messages
+     * @param port    the port of the referee messages
+     */
+    public void setRefereeGroup(String address, int port) {
+        this.refereeGroup = new InetSocketAddress(address, port);
+    }
+
+    /**
+     * @param address the multicast address of vision, which is only used for the geometry unless the vision tracker is used
+     * @param port    the port of vision
+     */
+    public void setVisionGroup(String address, int port) {
+        this.visionGroup = new InetSocketAddress(address, port);
+    }
+
+    /**
+     * @param networkInterface the name of the network interface to join the groups on, or null for all interfaces
+     */
+    public void setNetworkInterface(String networkInterface) {
+        this.networkInterface = networkInterface;
+    }
+
+    /**
+     * @param trackerSource the source name of the tracker to use, or null to use the first tracker seen
+     */
+    public void setTrackerSource(String trackerSource) {
+        assembler.setTrackerSource(trackerSource);
+    }
+
+    /**
+     * Track the robots and the ball from the raw vision detections instead of using the frames of a tracker.
+     * Must be set before connecting.
+     *
+     * @param visionTracker the tracker to use, or null to use the frames of a tracker
+     */
+    public void setVisionTracker(VisionTracker visionTracker) {
+        this.useVisionTracker = visionTracker != null;
+        assembler.setVisionTracker(visionTracker);
+    }
+
+    /**
+     * @param recorder the recorder to write every State handed to the referee to, or null to not record
+     */
+    public void setRecorder(MatchRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @return the amount of tracker packets received, from any tracker
+     */
+    public long getTrackerPackets() {
+        return trackerPackets.get();
+    }
+
+    /**
+     * @return the amount of referee messages received
+     */
+    public long getRefereePackets() {
+        return refereePackets.get();
+    }
+
+    /**
+     * @return the amount of vision packets received
+     */
+    public long getVisionPackets() {
+        return visionPackets.get();
+    }
+
+    /**
+     * @return the amount of packets that could not be decoded or handled
+     */
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    /**
+     * @return the amount of States that were dropped because they could not be processed
+     */
+    public long getFramesDropped() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return the amount of States that were skipped because a newer one arrived before they were processed
+     */
+    public long getFramesConflated() {
+        return frames.getConflated();
+    }
+
+    /**
+     * @return the amount of States that were handed to the referee
+     */
+    public long getFramesProcessed() {
+        return frames.getTaken();
+    }
+
+    @Override
+    public void run() {
+        connect();
+    }
+
+    private enum Source {
+        TRACKER,
+        REFEREE,
+        VISION
+    }
+
+    private record Receiver(Source source, ByteBuffer buffer) {
+    }
+
+    /**
+     * A State as assembled from the received packets.
+     *
+     * @param state             the State
+     * @param receiveTimeMicros the wall clock time the tracker frame was received at, in microseconds since the epoch
+     */
+    private record ReceivedState(StateOuterClass.State state, long receiveTimeMicros) {
+    }
+}
@@ -0,0 +1,295 @@
+package nl.roboteamtwente.autoref.input;
+
+import nl.roboteamtwente.proto.Vector2FOuterClass;
+import nl.roboteamtwente.proto.WorldBallOuterClass;
+import nl.roboteamtwente.proto.WorldOuterClass;
+import nl.roboteamtwente.proto.WorldRobotOuterClass;
+import org.robocup.ssl.proto.SslVisionDetection;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the robots and the ball from the raw detections of SSL-Vision, so the AutoRef can run without an external
+ * tracker.
+ * <p>
+ * The detections of all cameras are fused by applying them one after another, each at its own capture time, to a
+ * constant velocity Kalman filter per axis of every robot and the ball. Cameras are not synchronized, so frames of
+ * different cameras arrive interleaved; a frame older than the newest one of the same camera is ignored. All state
+ * is kept in primitive arrays, handling a detection never allocates.
+ * <p>
+ * Positions and velocities are in m and m/s, like the World packets of RoboTeam World, vision itself uses mm.
+ */
+public class VisionTracker {
+    public static final int MAX_ROBOTS_PER_TEAM = 16;
+    public static final int MAX_CAMERAS = 16;
+
+    // minimum time between two worlds, in seconds
+    private static final double DEFAULT_OUTPUT_INTERVAL = 0.01;
+
+    // time after which a robot or ball that is not seen is removed, in seconds
+    private static final double ROBOT_TIMEOUT = 1.0;
+    private static final double BALL_TIMEOUT = 0.5;
+
+    // time a ball is still reported as visible after it was last seen, in seconds
+    private static final double BALL_VISIBLE_TIMEOUT = 0.1;
+
+    // a detection further away from the prediction than this starts the filter over, in m
+    private static final double ROBOT_GATE = 0.5;
+    private static final double BALL_GATE = 1.0;
+
+    private static final double MIN_ROBOT_CONFIDENCE = 0.1;
+    private static final double MIN_BALL_CONFIDENCE = 0.1;
+
+    // noise of the measurements and the accelerations, as variances in m, m/s^2, rad and rad/s^2
+    private static final double ROBOT_POSITION_VARIANCE = 0.003 * 0.003;
+    private static final double ROBOT_ACCELERATION_VARIANCE = 4.0 * 4.0;
+    private static final double ROBOT_ANGLE_VARIANCE = 0.02 * 0.02;
+    private static final double ROBOT_ANGULAR_ACCELERATION_VARIANCE = 30.0 * 30.0;
+    private static final double ROBOT_INITIAL_VELOCITY_VARIANCE = 2.0 * 2.0;
+    private static final double ROBOT_INITIAL_ANGULAR_VELOCITY_VARIANCE = 10.0 * 10.0;
+    private static final double BALL_POSITION_VARIANCE = 0.005 * 0.005;
+    private static final double BALL_ACCELERATION_VARIANCE = 20.0 * 20.0;
+    private static final double BALL_INITIAL_VELOCITY_VARIANCE = 6.0 * 6.0;
+
+    private static final int ROBOT_SLOTS = 2 * MAX_ROBOTS_PER_TEAM;
+
+    // robot slot i uses filters 3i (x), 3i + 1 (y) and 3i + 2 (orientation), the ball uses the two after them
+    private static final int BALL_X = 3 * ROBOT_SLOTS;
+    private static final int BALL_Y = BALL_X + 1;
+
+    private final ConstantVelocityFilters filters = new ConstantVelocityFilters(3 * ROBOT_SLOTS + 2);
+
+    // robot slots are the robot id for yellow and MAX_ROBOTS_PER_TEAM + robot id for blue
+    private final boolean[] robotActive = new boolean[ROBOT_SLOTS];
+    private final double[] robotLastSeen = new double[ROBOT_SLOTS];
+
+    private boolean ballActive;
+    private double ballLastSeen;
+
+    private final double[] cameraLastCapture = new double[MAX_CAMERAS];
+
+    private double outputInterval = DEFAULT_OUTPUT_INTERVAL;
+    private double time = Double.NEGATIVE_INFINITY;
+    private double lastOutput = Double.NEGATIVE_INFINITY;
+    private int worldId;
+
+    private long frames;
+    private long skippedFrames;
+
+    public VisionTracker() {
+        Arrays.fill(cameraLastCapture, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Apply the detections of one camera frame.
+     *
+     * @param frame the detection frame
+     * @return true if a new world is due, see {@link #getWorld()}
+     */
+    public boolean update(SslVisionDetection.SSL_DetectionFrame frame) {
+        int camera = frame.getCameraId();
+        double t = frame.getTCapture();
+        if (camera >= MAX_CAMERAS || t <= cameraLastCapture[camera]) {
+            skippedFrames++;
+            return false;
+        }
+        cameraLastCapture[camera] = t;
+        frames++;
+
+        for (int i = 0; i < frame.getRobotsYellowCount(); i++) {
+            updateRobot(0, frame.getRobotsYellow(i), t);
+        }
+        for (int i = 0; i < frame.getRobotsBlueCount(); i++) {
+            updateRobot(MAX_ROBOTS_PER_TEAM, frame.getRobotsBlue(i), t);
+        }
+        updateBall(frame, t);
+
+        if (t > time) {
+            time = t;
+        }
+        removeLost();
+
+        if (time - lastOutput >= outputInterval) {
+            lastOutput = time;
+            return true;
+        }
+        return false;
+    }
+
+    private void updateRobot(int slotOffset, SslVisionDetection.SSL_DetectionRobot detection, double t) {
+        if (detection.getConfidence() < MIN_ROBOT_CONFIDENCE || detection.getRobotId() >= MAX_ROBOTS_PER_TEAM) {
+            return;
+        }
+
+        int slot = slotOffset + detection.getRobotId();
+        int x = 3 * slot;
+        int y = x + 1;
+        int angle = x + 2;
+        double measuredX = detection.getX() / 1000.0;
+        double measuredY = detection.getY() / 1000.0;
+
+        if (robotActive[slot]) {
+            filters.predict(x, t, ROBOT_ACCELERATION_VARIANCE);
+            filters.predict(y, t, ROBOT_ACCELERATION_VARIANCE);
+            filters.predict(angle, t, ROBOT_ANGULAR_ACCELERATION_VARIANCE);
+
+            double dx = measuredX - filters.positionAt(x, t);
+            double dy = measuredY - filters.positionAt(y, t);
+            if (dx * dx + dy * dy <= ROBOT_GATE * ROBOT_GATE) {
+                filters.update(x, measuredX, ROBOT_POSITION_VARIANCE, false);
+                filters.update(y, measuredY, ROBOT_POSITION_VARIANCE, false);
+                if (detection.hasOrientation()) {
+                    filters.update(angle, detection.getOrientation(), ROBOT_ANGLE_VARIANCE, true);
+                }
+                robotLastSeen[slot] = Math.max(robotLastSeen[slot], t);
+                return;
+            }
+        }
+
+        // a new robot, or one that moved further than possible, for example because it was placed by hand
+        filters.reset(x, measuredX, t, ROBOT_POSITION_VARIANCE, ROBOT_INITIAL_VELOCITY_VARIANCE);
+        filters.reset(y, measuredY, t, ROBOT_POSITION_VARIANCE, ROBOT_INITIAL_VELOCITY_VARIANCE);
+        filters.reset(angle, detection.getOrientation(), t, ROBOT_ANGLE_VARIANCE, ROBOT_INITIAL_ANGULAR_VELOCITY_VARIANCE);
+        robotActive[slot] = true;
+        robotLastSeen[slot] = t;
+    }
+
+    private void updateBall(SslVisionDetection.SSL_DetectionFrame frame, double t) {
+        if (ballActive) {
+            filters.predict(BALL_X, t, BALL_ACCELERATION_VARIANCE);
+            filters.predict(BALL_Y, t, BALL_ACCELERATION_VARIANCE);
+        }
+
+        // the detection closest to the prediction, or the most confident one if there is no ball yet
+        int best = -1;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < frame.getBallsCount(); i++) {
+            SslVisionDetection.SSL_DetectionBall detection = frame.getBalls(i);
+            if (detection.getConfidence() < MIN_BALL_CONFIDENCE) {
+                continue;
+            }
+
+            double score;
+            if (ballActive) {
+                double dx = detection.getX() / 1000.0 - filters.positionAt(BALL_X, t);
+                double dy = detection.getY() / 1000.0 - filters.positionAt(BALL_Y, t);
+                score = dx * dx + dy * dy;
+            } else {
+                score = -detection.getConfidence();
+            }
+
+            if (score < bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        if (best < 0) {
+            return;
+        }
+
+        SslVisionDetection.SSL_DetectionBall detection = frame.getBalls(best);
+        double measuredX = detection.getX() / 1000.0;
+        double measuredY = detection.getY() / 1000.0;
+
+        if (ballActive && bestScore <= BALL_GATE * BALL_GATE) {
+            filters.update(BALL_X, measuredX, BALL_POSITION_VARIANCE, false);
+            filters.update(BALL_Y, measuredY, BALL_POSITION_VARIANCE, false);
+            ballLastSeen = Math.max(ballLastSeen, t);
+        } else if (!ballActive || t - ballLastSeen > BALL_TIMEOUT) {
+            // only jump to a far away ball when the tracked one has not been seen for a while, to ignore false detections
+            filters.reset(BALL_X, measuredX, t, BALL_POSITION_VARIANCE, BALL_INITIAL_VELOCITY_VARIANCE);
+            filters.reset(BALL_Y, measuredY, t, BALL_POSITION_VARIANCE, BALL_INITIAL_VELOCITY_VARIANCE);
+            ballActive = true;
+            ballLastSeen = t;
+        }
+    }
+
+    private void removeLost() {
+        for (int slot = 0; slot < ROBOT_SLOTS; slot++) {
+            if (robotActive[slot] && time - robotLastSeen[slot] > ROBOT_TIMEOUT) {
+                robotActive[slot] = false;
+            }
+        }
+    }
+
+    /**
+     * @return the tracked world at the capture time of the newest frame
+     */
+    public WorldOuterClass.World getWorld() {
+        return getWorld(time);
+    }
+
+    /**
+     * Build a world with the robots and the ball extrapolated to a time.
+     *
+     * @param t the time, in seconds in the clock of vision
+     * @return the world
+     */
+    public WorldOuterClass.World getWorld(double t) {
+        WorldOuterClass.World.Builder world = WorldOuterClass.World.newBuilder()
+                .setTime((long) (t * 1_000_000_000L))
+                .setId(worldId++);
+
+        if (ballActive) {
+            world.setBall(WorldBallOuterClass.WorldBall.newBuilder()
+                    .setPos(vector(filters.positionAt(BALL_X, t), filters.positionAt(BALL_Y, t)))
+                    .setVel(vector(filters.velocity(BALL_X), filters.velocity(BALL_Y)))
+                    .setVisible(t - ballLastSeen <= BALL_VISIBLE_TIMEOUT));
+        }
+
+        for (int slot = 0; slot < ROBOT_SLOTS; slot++) {
+            if (!robotActive[slot]) {
+                continue;
+            }
+
+            int x = 3 * slot;
+            WorldRobotOuterClass.WorldRobot robot = WorldRobotOuterClass.WorldRobot.newBuilder()
+                    .setId(slot % MAX_ROBOTS_PER_TEAM)
+                    .setPos(vector(filters.positionAt(x, t), filters.positionAt(x + 1, t)))
+                    .setAngle((float) ConstantVelocityFilters.normalizeAngle(filters.positionAt(x + 2, t)))
+                    .setVel(vector(filters.velocity(x), filters.velocity(x + 1)))
+                    .setW((float) filters.velocity(x + 2))
+                    .build();
+
+            if (slot < MAX_ROBOTS_PER_TEAM) {
+                world.addYellow(robot);
+            } else {
+                world.addBlue(robot);
+            }
+        }
+
+        return world.build();
+    }
+
+    private static Vector2FOuterClass.Vector2f vector(double x, double y) {
+        return Vector2FOuterClass.Vector2f.newBuilder().setX((float) x).setY((float) y).build();
+    }
+
+    /**
+     * @param outputInterval the minimum time between two worlds, in seconds
+     */
+    public void setOutputInterval(double outputInterval) {
+        this.outputInterval = outputInterval;
+    }
+
+    /**
+     * @return the capture time of the newest frame, in seconds in the clock of vision
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the amount of camera frames applied
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the amount of camera frames ignored because they were older than the newest frame of their camera
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+}
@@ -0,0 +1,203 @@
+package nl.roboteamtwente.autoref.input;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.proto.WorldOuterClass;
+import nl.roboteamtwente.proto.WorldRobotOuterClass;
+import org.robocup.ssl.proto.SslGcCommon;
+import org.robocup.ssl.proto.SslVisionDetectionTracked;
+import org.robocup.ssl.proto.SslVisionWrapper;
+import org.robocup.ssl.proto.SslVisionWrapperTracked;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures the accuracy and the processing time of the {@link VisionTracker} on an SSL log file that contains both
+ * vision detections and the frames of an external tracker.
+ * <p>
+ * The detections are fed to the vision tracker as they appear in the log. At every frame of the external tracker,
+ * the world of the vision tracker is extrapolated to the timestamp of that frame and compared to it, robot by robot.
+ * This assumes the tracker uses the capture time of vision as timestamp, which the common trackers do.
+ */
+public class VisionTrackerBenchmark {
+    private final VisionTracker tracker = new VisionTracker();
+    private String trackerSource;
+    private String trackerUuid;
+
+    private final Samples updateNanos = new Samples();
+    private final Samples robotPositionErrors = new Samples();
+    private final Samples robotVelocityErrors = new Samples();
+    private final Samples robotAngleErrors = new Samples();
+    private final Samples ballPositionErrors = new Samples();
+    private long missingRobots;
+    private long extraRobots;
+    private long referenceFrames;
+
+    /**
+     * @param trackerSource the source name of the tracker to compare with, or null to use the first tracker seen
+     */
+    public void setTrackerSource(String trackerSource) {
+        this.trackerSource = trackerSource;
+    }
+
+    /**
+     * Run the vision tracker over all remaining messages of a log file.
+     *
+     * @param reader the log file
+     * @throws IOException if the log file could not be read
+     */
+    public void run(SslLogReader reader) throws IOException {
+        SslLogReader.LogMessage message;
+        while ((message = reader.next()) != null) {
+            try {
+                if (message.type() == SslLogReader.MessageType.SSL_VISION_2014) {
+                    SslVisionWrapper.SSL_WrapperPacket wrapper = SslVisionWrapper.SSL_WrapperPacket.parseFrom(message.data());
+                    if (wrapper.hasDetection()) {
+                        long start = System.nanoTime();
+                        tracker.update(wrapper.getDetection());
+                        updateNanos.add(System.nanoTime() - start);
+                    }
+                } else if (message.type() == SslLogReader.MessageType.SSL_VISION_TRACKER_2020) {
+                    SslVisionWrapperTracked.TrackerWrapperPacket wrapper = SslVisionWrapperTracked.TrackerWrapperPacket.parseFrom(message.data());
+                    if (wrapper.hasTrackedFrame() && isReference(wrapper) && tracker.getFrames() > 0) {
+                        compare(wrapper.getTrackedFrame());
+                    }
+                }
+            } catch (InvalidProtocolBufferException e) {
+                //empty, skip invalid messages
+            }
+        }
+    }
+
+    private boolean isReference(SslVisionWrapperTracked.TrackerWrapperPacket wrapper) {
+        if (trackerUuid == null && (trackerSource == null || trackerSource.equals(wrapper.getSourceName()))) {
+            trackerUuid = wrapper.getUuid();
+            System.out.println("Comparing with tracker " + wrapper.getSourceName() + " (" + trackerUuid + ")");
+        }
+        return wrapper.getUuid().equals(trackerUuid);
+    }
+
+    private void compare(SslVisionDetectionTracked.TrackedFrame reference) {
+        referenceFrames++;
+        WorldOuterClass.World world = tracker.getWorld(reference.getTimestamp());
+
+        int matched = 0;
+        for (SslVisionDetectionTracked.TrackedRobot expected : reference.getRobotsList()) {
+            WorldRobotOuterClass.WorldRobot actual = find(world, expected.getRobotId());
+            if (actual == null) {
+                missingRobots++;
+                continue;
+            }
+            matched++;
+
+            robotPositionErrors.add(distance(actual.getPos().getX() - expected.getPos().getX(), actual.getPos().getY() - expected.getPos().getY()));
+            robotVelocityErrors.add(distance(actual.getVel().getX() - expected.getVel().getX(), actual.getVel().getY() - expected.getVel().getY()));
+            robotAngleErrors.add(Math.abs(ConstantVelocityFilters.normalizeAngle(actual.getAngle() - expected.getOrientation())));
+        }
+        extraRobots += world.getYellowCount() + world.getBlueCount() - matched;
+
+        if (reference.getBallsCount() > 0 && world.hasBall() && world.getBall().getVisible()) {
+            SslVisionDetectionTracked.TrackedBall ball = reference.getBalls(0);
+            ballPositionErrors.add(distance(world.getBall().getPos().getX() - ball.getPos().getX(), world.getBall().getPos().getY() - ball.getPos().getY()));
+        }
+    }
+
+    private static WorldRobotOuterClass.WorldRobot find(WorldOuterClass.World world, SslGcCommon.RobotId id) {
+        for (WorldRobotOuterClass.WorldRobot robot : id.getTeam() == SslGcCommon.Team.BLUE ? world.getBlueList() : world.getYellowList()) {
+            if (robot.getId() == id.getId()) {
+                return robot;
+            }
+        }
+        return null;
+    }
+
+    private static double distance(double dx, double dy) {
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Print the results.
+     */
+    public void print() {
+        System.out.println("Camera frames: " + tracker.getFrames() + " (" + tracker.getSkippedFrames() + " out of order), reference frames: " + referenceFrames);
+        System.out.println("Robots missing: " + missingRobots + ", extra: " + extraRobots);
+        robotPositionErrors.print("Robot position error", 1000, "mm");
+        robotVelocityErrors.print("Robot velocity error", 1000, "mm/s");
+        robotAngleErrors.print("Robot angle error", Math.toDegrees(1), "deg");
+        ballPositionErrors.print("Ball position error", 1000, "mm");
+        updateNanos.print("Time per camera frame", 0.001, "us");
+    }
+
+    /**
+     * A growing list of measurements.
+     */
+    private static class Samples {
+        private double[] values = new double[1 << 16];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void print(String name, double scale, String unit) {
+            if (size == 0) {
+                System.out.println(name + ": no samples");
+                return;
+            }
+
+            double[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double value : sorted) {
+                sum += value;
+            }
+
+            System.out.printf("%s: mean %.2f, p50 %.2f, p95 %.2f, p99 %.2f, max %.2f %s (%d samples)%n", name,
+                    sum / size * scale, percentile(sorted, 0.5) * scale, percentile(sorted, 0.95) * scale,
+                    percentile(sorted, 0.99) * scale, sorted[size - 1] * scale, unit, size);
+        }
+
+        private static double percentile(double[] sorted, double percentile) {
+            return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+
+    public static void main(String[] args) {
+        Path logFile = null;
+        String trackerSource = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--tracker=")) {
+                trackerSource = arg.substring("--tracker=".length());
+            } else if (!arg.startsWith("--") && logFile == null) {
+                logFile = Path.of(arg);
+            } else {
+                System.err.println("Unknown argument " + arg);
+                System.exit(1);
+                return;
+            }
+        }
+
+        if (logFile == null) {
+            System.err.println("Usage: <.log(.gz) file with vision and tracker messages> [--tracker=source name]");
+            System.exit(1);
+            return;
+        }
+
+        VisionTrackerBenchmark benchmark = new VisionTrackerBenchmark();
+        benchmark.setTrackerSource(trackerSource);
+        try (SslLogReader reader = new SslLogReader(logFile)) {
+            benchmark.run(reader);
+        } catch (IOException e) {
+            System.err.println("Failed to read log file " + logFile);
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+        benchmark.print();
+    }
+}
@@ -0,0 +1,143 @@
+package nl.roboteamtwente.autoref.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision, like an HDR histogram.
+ * <p>
+ * Values below 32 ns get a bucket each, above that every power of two is split into 32 buckets, so a value is
+ * never off by more than about 3%. Values above {@link #MAX_VALUE} are counted as that value. Recording a value
+ * is a few atomic increments and never allocates, so it can be used on the hot path from any thread.
+ */
+public class LatencyHistogram {
+    /**
+     * The largest value that can be recorded, a little over 18 minutes.
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - Long.numberOfLeadingZeros(MAX_VALUE) - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values (for example from clocks that are not in sync) count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //empty, try again
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long highestValue(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestValue(bucket + 1) - 1 : MAX_VALUE;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency at the percentile in nanoseconds, which is at most about 3% too high, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @param nanos a latency in nanoseconds
+     * @return the amount of recorded latencies that are certainly above the given latency
+     */
+    public long getCountAbove(long nanos) {
+        long above = 0;
+        for (int i = BUCKETS - 1; i >= 0 && lowestValue(i) > nanos; i--) {
+            above += counts.get(i);
+        }
+        return above;
+    }
+
+    /**
+     * @return the amount of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the recorded latencies in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the mean of the recorded latencies in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * @return the highest recorded latency in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Forget all recorded latencies. Latencies recorded while resetting may be partially forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,114 @@
+package nl.roboteamtwente.autoref.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The latency histograms of one AutoRef: one for every stage a frame goes through, from the World timestamp to the
+ * acknowledgement of a game event by the GameController, and one for every validator.
+ */
+public class LatencyMetrics {
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LatencyHistogram> validators = new ConcurrentSkipListMap<>();
+
+    public LatencyMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @param stage the stage
+     * @return the histogram of the stage
+     */
+    public LatencyHistogram getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Record the latency of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Get the histogram of a validator, creating it if it does not exist. Look the histogram up once and keep it,
+     * rather than looking it up for every frame.
+     *
+     * @param name the name of the validator
+     * @return the histogram of the validator
+     */
+    public LatencyHistogram getValidator(String name) {
+        return validators.computeIfAbsent(name, (key) -> new LatencyHistogram());
+    }
+
+    /**
+     * @return the histograms of all validators by name
+     */
+    public Map<String, LatencyHistogram> getValidators() {
+        return Collections.unmodifiableMap(validators);
+    }
+
+    /**
+     * Forget all recorded latencies.
+     */
+    public void reset() {
+        stages.values().forEach(LatencyHistogram::reset);
+        validators.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * @return a table with the count and percentiles of every stage and validator that recorded anything, in microseconds
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(String.format("%-45s %10s %10s %10s %10s %10s %10s%n", "latency (us)", "count", "p50", "p90", "p99", "p99.9", "max"));
+        for (Stage stage : Stage.values()) {
+            appendRow(summary, stage.getDescription(), stages.get(stage));
+        }
+        for (Map.Entry<String, LatencyHistogram> validator : validators.entrySet()) {
+            appendRow(summary, "  " + validator.getKey(), validator.getValue());
+        }
+        return summary.toString();
+    }
+
+    private static void appendRow(StringBuilder summary, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+
+        summary.append(String.format("%-45s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                histogram.getPercentile(50) / 1000.0, histogram.getPercentile(90) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                histogram.getPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0));
+    }
+
+    /**
+     * The stages a frame and the game events raised for it go through.
+     */
+    public enum Stage {
+        FRAME_AGE("World timestamp to received"),
+        DECODE("decode State packet"),
+        PROCESS_WORLD_STATE("processWorldState"),
+        VALIDATE("all validators"),
+        ENQUEUE("add game event to queue"),
+        QUEUE("game event waiting in queue"),
+        SEND("send game event"),
+        REPLY("sent to GameController reply"),
+        END_TO_END("World timestamp to GameController reply");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
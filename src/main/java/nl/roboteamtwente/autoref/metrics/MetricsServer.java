@@ -0,0 +1,217 @@
+package nl.roboteamtwente.autoref.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import nl.roboteamtwente.autoref.GameControllerConnection;
+import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.input.TrackerMulticastConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Serves the counters of one or more AutoRefs on {@code /metrics} in the Prometheus text format, so a dashboard can
+ * show how the referee is doing during a match.
+ * <p>
+ * The metrics are read from the AutoRefs on every request, nothing is kept in between. Every sample has a
+ * {@code field} label with the name the AutoRef was added with.
+ */
+public class MetricsServer {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final int port;
+    private final Map<String, SSLAutoRef> autoRefs = new LinkedHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param port the port to serve the metrics on, 0 for any free port
+     */
+    public MetricsServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Serve the metrics of an AutoRef. Must be called before starting.
+     *
+     * @param field the name of the field the AutoRef referees, used as label
+     * @param autoRef the AutoRef
+     */
+    public void addAutoRef(String field, SSLAutoRef autoRef) {
+        autoRefs.put(field, autoRef);
+    }
+
+    /**
+     * Start serving the metrics on a background thread.
+     *
+     * @throws IOException if the port could not be opened
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "AutoRef metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Serving metrics on http://localhost:" + getPort() + "/metrics");
+    }
+
+    /**
+     * Stop serving the metrics.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the port the metrics are served on
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return the current metrics of all AutoRefs in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+
+        gauge(out, "autoref_frames_per_second", "Frames checked in the last whole second.", SSLAutoRef::getFramesPerSecond);
+        gauge(out, "autoref_active", "1 if game events are sent to the GameController.", (autoRef) -> autoRef.isActive() ? 1 : 0);
+
+        counter(out, "autoref_frames_received_total", "Frames received from World, or tracker and vision packets received from the multicast groups.", (autoRef) -> {
+            if (autoRef.getWorldConnection() != null) {
+                return autoRef.getWorldConnection().getFramesReceived();
+            }
+            TrackerMulticastConnection tracker = autoRef.getTrackerConnection();
+            return tracker != null ? tracker.getTrackerPackets() + tracker.getVisionPackets() : 0;
+        });
+        counter(out, "autoref_frames_processed_total", "Frames handed to the referee.", (autoRef) -> {
+            if (autoRef.getWorldConnection() != null) {
+                return autoRef.getWorldConnection().getFramesProcessed();
+            }
+            return autoRef.getTrackerConnection() != null ? autoRef.getTrackerConnection().getFramesProcessed() : 0;
+        });
+        counter(out, "autoref_frames_conflated_total", "Frames skipped because a newer frame arrived before they were processed.", (autoRef) -> {
+            if (autoRef.getWorldConnection() != null) {
+                return autoRef.getWorldConnection().getFramesConflated();
+            }
+            return autoRef.getTrackerConnection() != null ? autoRef.getTrackerConnection().getFramesConflated() : 0;
+        });
+        counter(out, "autoref_frames_dropped_total", "Frames or packets dropped because they could not be decoded or processed.", (autoRef) -> {
+            if (autoRef.getWorldConnection() != null) {
+                return autoRef.getWorldConnection().getFramesDropped();
+            }
+            TrackerMulticastConnection tracker = autoRef.getTrackerConnection();
+            return tracker != null ? tracker.getInvalidPackets() + tracker.getFramesDropped() : 0;
+        });
+
+        gauge(out, "autoref_validators_disabled", "Validators disabled because they threw an exception.", (autoRef) -> autoRef.getReferee().getDisabledValidatorCount());
+        counter(out, "autoref_validator_exceptions_total", "Times a validator was disabled because it threw an exception.", (autoRef) -> autoRef.getReferee().getValidatorsDisabled());
+
+        header(out, "autoref_validator_seconds_total", "counter", "Time spent running every validator.");
+        for (Map.Entry<String, SSLAutoRef> autoRef : autoRefs.entrySet()) {
+            for (Map.Entry<String, LatencyHistogram> validator : autoRef.getValue().getLatencyMetrics().getValidators().entrySet()) {
+                sample(out, "autoref_validator_seconds_total", autoRef.getKey(), "validator", validator.getKey(), validator.getValue().getSum() / 1e9);
+            }
+        }
+
+        gauge(out, "autoref_gc_connected", "1 if connected to the GameController.", (autoRef) -> gc(autoRef) != null && gc(autoRef).isConnected() ? 1 : 0);
+        gauge(out, "autoref_gc_queue_depth", "Game events waiting to be sent to the GameController.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getQueueDepth() : 0);
+        gauge(out, "autoref_gc_in_flight", "Game events sent to the GameController without a reply yet.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getInFlightEvents() : 0);
+        counter(out, "autoref_gc_reconnects_total", "Times the connection to the GameController was set up again.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getReconnects() : 0);
+        counter(out, "autoref_gc_events_sent_total", "Game events the GameController replied to.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getSentEvents() : 0);
+        counter(out, "autoref_gc_events_rejected_total", "Game events the GameController rejected.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getRejectedEvents() : 0);
+        counter(out, "autoref_gc_events_dropped_total", "Game events dropped because the queue was full.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getDroppedEvents() : 0);
+        counter(out, "autoref_gc_events_expired_total", "Game events skipped because they waited too long to be sent.", (autoRef) -> gc(autoRef) != null ? gc(autoRef).getExpiredEvents() : 0);
+
+        header(out, "autoref_latency_seconds", "summary", "Latency of every stage from the World timestamp to the GameController reply.");
+        for (Map.Entry<String, SSLAutoRef> autoRef : autoRefs.entrySet()) {
+            for (LatencyMetrics.Stage stage : LatencyMetrics.Stage.values()) {
+                LatencyHistogram histogram = autoRef.getValue().getLatencyMetrics().getStage(stage);
+                String stageName = stage.name().toLowerCase();
+                for (double quantile : QUANTILES) {
+                    out.append("autoref_latency_seconds{field=\"").append(escape(autoRef.getKey()))
+                            .append("\",stage=\"").append(stageName)
+                            .append("\",quantile=\"").append(quantile).append("\"} ")
+                            .append(format(histogram.getPercentile(quantile * 100) / 1e9)).append('\n');
+                }
+                sample(out, "autoref_latency_seconds_sum", autoRef.getKey(), "stage", stageName, histogram.getSum() / 1e9);
+                sample(out, "autoref_latency_seconds_count", autoRef.getKey(), "stage", stageName, histogram.getCount());
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static GameControllerConnection gc(SSLAutoRef autoRef) {
+        return autoRef.getGameControllerConnection();
+    }
+
+    private void gauge(StringBuilder out, String name, String help, ToDoubleFunction<SSLAutoRef> value) {
+        metric(out, name, "gauge", help, value);
+    }
+
+    private void counter(StringBuilder out, String name, String help, ToDoubleFunction<SSLAutoRef> value) {
+        metric(out, name, "counter", help, value);
+    }
+
+    private void metric(StringBuilder out, String name, String type, String help, ToDoubleFunction<SSLAutoRef> value) {
+        header(out, name, type, help);
+        for (Map.Entry<String, SSLAutoRef> autoRef : autoRefs.entrySet()) {
+            out.append(name).append("{field=\"").append(escape(autoRef.getKey())).append("\"} ")
+                    .append(format(value.applyAsDouble(autoRef.getValue()))).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String field, String label, String labelValue, double value) {
+        out.append(name).append("{field=\"").append(escape(field)).append("\",")
+                .append(label).append("=\"").append(escape(labelValue)).append("\"} ")
+                .append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -43,6 +43,16 @@ public class Ball extends Entity {
         this.visible = vis;
     }
 
+    /**
+     * Reset the ball to its initial state, so it can be reused for another frame.
+     */
+    public void reset() {
+        resetMotion();
+        robotsTouching.clear();
+        lastTouchStarted = null;
+        visible = false;
+    }
+
 
     /**
      *
@@ -31,4 +31,16 @@ public abstract class Entity {
     public Vector3 getVelocity() {
         return velocity;
     }
+
+    /**
+     * Set the position and velocity back to zero, so the entity can be reused for another frame.
+     */
+    protected void resetMotion() {
+        position.setX(0);
+        position.setY(0);
+        position.setZ(0);
+        velocity.setX(0);
+        velocity.setY(0);
+        velocity.setZ(0);
+    }
 }
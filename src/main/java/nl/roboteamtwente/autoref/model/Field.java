@@ -1,87 +1,108 @@
 package nl.roboteamtwente.autoref.model;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 
 /**
- * A class which is used to create the Field object of the game
+ * A class which is used to create the Field object of the game.
+ * <p>
+ * A field is immutable once created, since the same field is shared by all games
+ * until the geometry changes. The position and size are returned as copies, the
+ * vectors of the lines are shared and should not be modified.
  */
 public class Field {
     private final Vector2 position;
     private final Vector2 size;
 
-    private float boundaryWidth;
+    private final float boundaryWidth;
+    private final float goalWidth;
+    private final float goalDepth;
 
     private final Map<String, FieldLine> lines;
+    private final FieldZones zones;
 //    private Map<String, FieldArc> arcs;
 
     /**
-     * The constructor of the Field class which is made up of
+     * Create an empty field, used until the geometry is known.
      */
     public Field() {
-        this.position = new Vector2(0, 0);
-        this.size = new Vector2(0, 0);
-        this.boundaryWidth = 0.0f;
+        this(new Vector2(0, 0), new Vector2(0, 0), 0.0f, 0.0f, 0.0f, Collections.emptyList());
+    }
+
+    /**
+     * The constructor of the Field class which is made up of
+     *
+     * @param position      the position of the bottom left corner of the field
+     * @param size          the length and width of the field
+     * @param boundaryWidth the width of the area between the field lines and the walls
+     * @param goalWidth     the distance between the goal posts
+     * @param goalDepth     the depth of the goals
+     * @param lines         all lines on the field
+     */
+    public Field(Vector2 position, Vector2 size, float boundaryWidth, float goalWidth, float goalDepth, Collection<FieldLine> lines) {
+        this.position = position.copy();
+        this.size = size.copy();
+        this.boundaryWidth = boundaryWidth;
+        this.goalWidth = goalWidth;
+        this.goalDepth = goalDepth;
 
         this.lines = new HashMap<>();
+        for (FieldLine line : lines) {
+            this.lines.put(line.name(), line);
+        }
+
+        this.zones = new FieldZones(this);
     }
 
+    /**
+     * @return a copy of the position of the bottom left corner of the field
+     */
     public Vector2 getPosition() {
-        return position;
+        return position.copy();
     }
 
+    /**
+     * @return a copy of the length and width of the field
+     */
     public Vector2 getSize() {
-        return size;
+        return size.copy();
     }
 
     public float getBoundaryWidth() {
         return boundaryWidth;
     }
 
-    public void setBoundaryWidth(float boundaryWidth) {
-        this.boundaryWidth = boundaryWidth;
+    public float getGoalWidth() {
+        return goalWidth;
+    }
+
+    public float getGoalDepth() {
+        return goalDepth;
     }
 
     public Collection<FieldLine> getLines() {
-        return lines.values();
+        return Collections.unmodifiableCollection(lines.values());
     }
 
     public FieldLine getLineByName(String name) {
         return lines.get(name);
     }
 
-    public void addLine(FieldLine line) {
-        this.lines.put(line.name(), line);
+    /**
+     * @return the precomputed zones of this field.
+     */
+    public FieldZones getZones() {
+        return zones;
     }
 
     public boolean isInDefenseArea(Side side, Vector2 location) {
-        // FIXME: This doesn't work for non-straight lines
-
-        String sideString = side == Side.LEFT ? "Left" : "Right";
-
-        FieldLine penaltyStretch = getLineByName(sideString + "PenaltyStretch");
-        if (location.getX() * side.getCardinality() < penaltyStretch.p1().getX() * side.getCardinality()) {
-            return false;
-        }
-
-        FieldLine rightPenaltyStretch = getLineByName(sideString + "FieldRightPenaltyStretch");
-        FieldLine leftPenaltyStretch = getLineByName(sideString + "FieldLeftPenaltyStretch");
-
-        FieldLine topPenaltyStretch = rightPenaltyStretch.p1().getY() > leftPenaltyStretch.p1().getY() ? rightPenaltyStretch : leftPenaltyStretch;
-        FieldLine bottomPenaltyStretch = topPenaltyStretch == rightPenaltyStretch ? leftPenaltyStretch : rightPenaltyStretch;
-
-        return (location.getY() > bottomPenaltyStretch.p1().getY() && location.getY() < topPenaltyStretch.p1().getY());
-
+        return zones.isInDefenseArea(side, location.getX(), location.getY(), 0);
     }
 
-    public boolean isInOwnHalf(Side side, Vector2 location){
-        FieldLine halfway = getLineByName("HalfwayLine");
-//        if (location.getX()  * side.getCardinality() > halfway.p1().getX() * side.getCardinality()){
-//            return true;
-//        }
-
-        return side == Side.LEFT && location.getX() < halfway.p1().getX() || side == Side.RIGHT && location.getX() > halfway.p1().getX();
+    public boolean isInOwnHalf(Side side, Vector2 location) {
+        return zones.isInOwnHalf(side, location.getX());
     }
 }
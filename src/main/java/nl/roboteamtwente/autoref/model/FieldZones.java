@@ -0,0 +1,185 @@
+package nl.roboteamtwente.autoref.model;
+
+/**
+ * Precomputed bounds of the regions of a field, so classifying a point is a few comparisons
+ * instead of looking up and comparing field lines on every call.
+ * <p>
+ * The zones are compiled once for a field, all queries take plain coordinates so they do not
+ * need any vectors to be allocated. Per side arrays are indexed by {@link Side#ordinal()}.
+ */
+public class FieldZones {
+    // a side without all lines of its defense area has no defense area, the other side can still have one
+    private final boolean[] hasDefenseArea = new boolean[2];
+
+    // x of the front line of the defense area and the y of its bottom and top sides
+    private final float[] defenseAreaFrontX = new float[2];
+    private final float[] defenseAreaBottomY = new float[2];
+    private final float[] defenseAreaTopY = new float[2];
+
+    private final float halfwayX;
+    private final float[] goalLineX = new float[2];
+
+    private final float fieldMinX;
+    private final float fieldMaxX;
+    private final float fieldMinY;
+    private final float fieldMaxY;
+    private final float boundaryWidth;
+
+    private final float goalHalfWidth;
+    private final float goalDepth;
+
+    /**
+     * Compile the zones of the given field.
+     *
+     * @param field the field to compile the zones for.
+     */
+    public FieldZones(Field field) {
+        this.fieldMinX = field.getPosition().getX();
+        this.fieldMinY = field.getPosition().getY();
+        this.fieldMaxX = fieldMinX + field.getSize().getX();
+        this.fieldMaxY = fieldMinY + field.getSize().getY();
+        this.boundaryWidth = field.getBoundaryWidth();
+
+        this.goalHalfWidth = field.getGoalWidth() / 2;
+        this.goalDepth = field.getGoalDepth();
+
+        FieldLine halfway = field.getLineByName("HalfwayLine");
+        this.halfwayX = halfway != null ? halfway.p1().getX() : (fieldMinX + fieldMaxX) / 2;
+
+        for (Side side : Side.values()) {
+            String sideString = side == Side.LEFT ? "Left" : "Right";
+
+            FieldLine goalLine = field.getLineByName(sideString + "GoalLine");
+            goalLineX[side.ordinal()] = goalLine != null ? goalLine.p1().getX() : (side == Side.LEFT ? fieldMinX : fieldMaxX);
+
+            FieldLine penaltyStretch = field.getLineByName(sideString + "PenaltyStretch");
+            FieldLine rightPenaltyStretch = field.getLineByName(sideString + "FieldRightPenaltyStretch");
+            FieldLine leftPenaltyStretch = field.getLineByName(sideString + "FieldLeftPenaltyStretch");
+            if (penaltyStretch == null || rightPenaltyStretch == null || leftPenaltyStretch == null) {
+                continue;
+            }
+
+            hasDefenseArea[side.ordinal()] = true;
+            defenseAreaFrontX[side.ordinal()] = penaltyStretch.p1().getX();
+            defenseAreaBottomY[side.ordinal()] = Math.min(rightPenaltyStretch.p1().getY(), leftPenaltyStretch.p1().getY());
+            defenseAreaTopY[side.ordinal()] = Math.max(rightPenaltyStretch.p1().getY(), leftPenaltyStretch.p1().getY());
+        }
+    }
+
+    /**
+     * Check if a point is in the defense area of a side. The area is open towards the goal,
+     * so points behind the goal line between the sides of the area count as inside.
+     *
+     * @param side   the side of the defense area.
+     * @param x      x-coordinate of the point.
+     * @param y      y-coordinate of the point.
+     * @param margin distance by which the area is grown towards the field.
+     * @return true if the point is in the (grown) defense area.
+     */
+    public boolean isInDefenseArea(Side side, float x, float y, float margin) {
+        int i = side.ordinal();
+        if (!hasDefenseArea[i]) {
+            return false;
+        }
+
+        if (x * side.getCardinality() < defenseAreaFrontX[i] * side.getCardinality() - margin) {
+            return false;
+        }
+
+        return y > defenseAreaBottomY[i] - margin && y < defenseAreaTopY[i] + margin;
+    }
+
+    /**
+     * Calculate the distance from a point to the defense area of a side.
+     *
+     * @param side the side of the defense area.
+     * @param x    x-coordinate of the point.
+     * @param y    y-coordinate of the point.
+     * @return 0 if the point is inside the defense area, otherwise the distance to the closest point of the area.
+     */
+    public float distanceToDefenseArea(Side side, float x, float y) {
+        int i = side.ordinal();
+        if (!hasDefenseArea[i]) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float dx = Math.max(0, (defenseAreaFrontX[i] - x) * side.getCardinality());
+        float dy = Math.max(0, Math.max(defenseAreaBottomY[i] - y, y - defenseAreaTopY[i]));
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Check if a point is in the half of a side.
+     *
+     * @param side the side of the half.
+     * @param x    x-coordinate of the point.
+     * @return true if the point is in that half.
+     */
+    public boolean isInOwnHalf(Side side, float x) {
+        return side == Side.LEFT && x < halfwayX || side == Side.RIGHT && x > halfwayX;
+    }
+
+    /**
+     * @param x x-coordinate of the point.
+     * @param y y-coordinate of the point.
+     * @return true if the point is within the field lines.
+     */
+    public boolean isInField(float x, float y) {
+        return x >= fieldMinX && x <= fieldMaxX && y >= fieldMinY && y <= fieldMaxY;
+    }
+
+    /**
+     * @param x x-coordinate of the point.
+     * @param y y-coordinate of the point.
+     * @return true if the point is within the field lines or the boundary around them.
+     */
+    public boolean isInBoundary(float x, float y) {
+        return x >= fieldMinX - boundaryWidth && x <= fieldMaxX + boundaryWidth
+                && y >= fieldMinY - boundaryWidth && y <= fieldMaxY + boundaryWidth;
+    }
+
+    /**
+     * Check if a point is inside the goal of a side, behind the goal line and between the posts.
+     *
+     * @param side the side of the goal.
+     * @param x    x-coordinate of the point.
+     * @param y    y-coordinate of the point.
+     * @return true if the point is inside the goal.
+     */
+    public boolean isInGoal(Side side, float x, float y) {
+        float behindGoalLine = (x - goalLineX[side.ordinal()]) * side.getCardinality();
+        return behindGoalLine >= 0 && behindGoalLine <= goalDepth && Math.abs(y) <= goalHalfWidth;
+    }
+
+    /**
+     * @param side the side of the defense area.
+     * @return x-coordinate of the front line of the defense area.
+     */
+    public float getDefenseAreaFrontX(Side side) {
+        return defenseAreaFrontX[side.ordinal()];
+    }
+
+    /**
+     * @param side the side of the defense area.
+     * @return y-coordinate of the bottom side of the defense area.
+     */
+    public float getDefenseAreaBottomY(Side side) {
+        return defenseAreaBottomY[side.ordinal()];
+    }
+
+    /**
+     * @param side the side of the defense area.
+     * @return y-coordinate of the top side of the defense area.
+     */
+    public float getDefenseAreaTopY(Side side) {
+        return defenseAreaTopY[side.ordinal()];
+    }
+
+    /**
+     * @param side the side of the defense area.
+     * @return true if the field lines of the defense area of the side were present when the zones were compiled.
+     */
+    public boolean hasDefenseArea(Side side) {
+        return hasDefenseArea[side.ordinal()];
+    }
+}
@@ -0,0 +1,186 @@
+package nl.roboteamtwente.autoref.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quantities derived from a single frame that several validators need, such as the speed of every robot and
+ * its distance to the ball.
+ * <p>
+ * Every quantity is computed the first time it is asked for and kept for the rest of the frame, in primitive
+ * arrays indexed by {@link Robot#getIndex()}, so it is computed at most once per frame no matter how many
+ * validators use it. The validators can run in parallel, so every quantity is computed under a lock and
+ * published with a volatile flag; reading it afterwards takes no lock.
+ * <p>
+ * The context belongs to a {@link Game} and is only valid once the game is fully derived, it is cleared when
+ * the game is reset.
+ */
+public class FrameContext {
+    private final Game game;
+
+    private float[] robotSpeeds = new float[0];
+    private float[] robotBallDistances = new float[0];
+    private float[] robotDesignatedPositionDistances = new float[0];
+    private float ballSpeed;
+
+    // index of the robot of every team closest to the ball, by team color ordinal, or -1 if the team has no robots
+    private final int[] nearestToBall = new int[TeamColor.values().length];
+
+    private volatile boolean robotSpeedsReady;
+    private volatile boolean robotBallDistancesReady;
+    private volatile boolean robotDesignatedPositionDistancesReady;
+    private volatile boolean ballSpeedReady;
+    private volatile boolean nearestToBallReady;
+
+    FrameContext(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Forget everything computed, for the next frame.
+     */
+    void reset() {
+        robotSpeedsReady = false;
+        robotBallDistancesReady = false;
+        robotDesignatedPositionDistancesReady = false;
+        ballSpeedReady = false;
+        nearestToBallReady = false;
+    }
+
+    /**
+     * @return the speed of the ball over the ground, in m/s
+     */
+    public float getBallSpeed() {
+        if (!ballSpeedReady) {
+            synchronized (this) {
+                if (!ballSpeedReady) {
+                    ballSpeed = game.getBall().getVelocity().magnitude2d();
+                    ballSpeedReady = true;
+                }
+            }
+        }
+        return ballSpeed;
+    }
+
+    /**
+     * @param robot a robot of the game
+     * @return the speed of the robot, in m/s
+     */
+    public float getRobotSpeed(Robot robot) {
+        if (!robotSpeedsReady) {
+            computeRobotSpeeds();
+        }
+        return robotSpeeds[robot.getIndex()];
+    }
+
+    /**
+     * @param robot a robot of the game
+     * @return the distance between the center of the robot and the ball over the ground, in m
+     */
+    public float getDistanceToBall(Robot robot) {
+        if (!robotBallDistancesReady) {
+            computeRobotBallDistances();
+        }
+        return robotBallDistances[robot.getIndex()];
+    }
+
+    /**
+     * @param robot a robot of the game
+     * @return the distance between the center of the robot and the ball placement position, in m
+     */
+    public float getDistanceToDesignatedPosition(Robot robot) {
+        if (!robotDesignatedPositionDistancesReady) {
+            computeRobotDesignatedPositionDistances();
+        }
+        return robotDesignatedPositionDistances[robot.getIndex()];
+    }
+
+    /**
+     * @param color the team
+     * @return the robot of the team closest to the ball, or null if the team has no robots on the field
+     */
+    public Robot getNearestRobotToBall(TeamColor color) {
+        if (!nearestToBallReady) {
+            computeNearestToBall();
+        }
+        int index = nearestToBall[color.ordinal()];
+        return index < 0 ? null : game.getRobots().get(index);
+    }
+
+    /**
+     * @param color the team
+     * @return the distance between the ball and the robot of the team closest to it, or infinity if the team has no robots on the field
+     */
+    public float getNearestDistanceToBall(TeamColor color) {
+        if (!nearestToBallReady) {
+            computeNearestToBall();
+        }
+        int index = nearestToBall[color.ordinal()];
+        return index < 0 ? Float.POSITIVE_INFINITY : robotBallDistances[index];
+    }
+
+    private synchronized void computeRobotSpeeds() {
+        if (robotSpeedsReady) {
+            return;
+        }
+
+        List<Robot> robots = game.getRobots();
+        robotSpeeds = ensureCapacity(robotSpeeds, robots.size());
+        for (int i = 0; i < robots.size(); i++) {
+            robotSpeeds[i] = robots.get(i).getVelocity().magnitude2d();
+        }
+        robotSpeedsReady = true;
+    }
+
+    private synchronized void computeRobotBallDistances() {
+        if (robotBallDistancesReady) {
+            return;
+        }
+
+        Vector3 ball = game.getBall().getPosition();
+        computeDistances(robotBallDistances = ensureCapacity(robotBallDistances, game.getRobots().size()), ball.getX(), ball.getY());
+        robotBallDistancesReady = true;
+    }
+
+    private synchronized void computeRobotDesignatedPositionDistances() {
+        if (robotDesignatedPositionDistancesReady) {
+            return;
+        }
+
+        Vector2 designatedPosition = game.getDesignatedPosition();
+        computeDistances(robotDesignatedPositionDistances = ensureCapacity(robotDesignatedPositionDistances, game.getRobots().size()),
+                designatedPosition.getX(), designatedPosition.getY());
+        robotDesignatedPositionDistancesReady = true;
+    }
+
+    private synchronized void computeNearestToBall() {
+        if (nearestToBallReady) {
+            return;
+        }
+
+        if (!robotBallDistancesReady) {
+            computeRobotBallDistances();
+        }
+
+        Arrays.fill(nearestToBall, -1);
+        List<Robot> robots = game.getRobots();
+        for (int i = 0; i < robots.size(); i++) {
+            int team = robots.get(i).getTeam().getColor().ordinal();
+            if (nearestToBall[team] < 0 || robotBallDistances[i] < robotBallDistances[nearestToBall[team]]) {
+                nearestToBall[team] = i;
+            }
+        }
+        nearestToBallReady = true;
+    }
+
+    private void computeDistances(float[] distances, float x, float y) {
+        List<Robot> robots = game.getRobots();
+        for (int i = 0; i < robots.size(); i++) {
+            distances[i] = (float) Math.sqrt(robots.get(i).getPosition().distanceSquared2d(x, y));
+        }
+    }
+
+    private static float[] ensureCapacity(float[] array, int size) {
+        return array.length >= size ? array : new float[Math.max(size, array.length * 2)];
+    }
+}
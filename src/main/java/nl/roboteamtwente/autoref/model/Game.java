@@ -3,20 +3,36 @@ package nl.roboteamtwente.autoref.model;
 import org.robocup.ssl.proto.SslGcRefereeMessage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 
 /**
  * This is the game object which controls different aspects of a RoboCup game.
  */
 public class Game {
+    private static final Field EMPTY_FIELD = new Field();
 
     /**
      * List of robot objects that are in the game and are part of the playing field.
      */
     private final List<Robot> robots;
 
+    /**
+     * Spatial index over the robots, rebuilt once per frame after all robots are added.
+     */
+    private final RobotGrid robotGrid;
+
+    /**
+     * The robots by {@link RobotIdentifier#slot()}, for looking them up without searching the list.
+     */
+    private final Robot[] robotsBySlot;
+
+    /**
+     * Quantities derived from this frame that are shared by the validators.
+     */
+    private final FrameContext frameContext;
+
     /**
      * The game keeps track of the ball object at all times
      */
@@ -51,8 +67,9 @@ public class Game {
 
     /**
      * The game consists of 2 teams playing on a field.
+     * The field is shared between games until the geometry changes.
      */
-    private final Field field;
+    private Field field;
 
     private double timeLastGameStateChange;
 
@@ -63,7 +80,18 @@ public class Game {
 
     private Touch kickIntoPlay;
     private KickType kickType;
-    private final List<Touch> touches;
+
+    /**
+     * The finished touches of all games, this game has those from firstTouch up to touchEnd.
+     */
+    private TouchTimeline touchTimeline;
+    private long firstTouch;
+    private long touchEnd;
+
+    /**
+     * The touches that are still in progress at the end of this frame.
+     */
+    private final List<Touch> currentTouches;
 
     private boolean forceStarted;
 
@@ -71,8 +99,11 @@ public class Game {
 
     public Game() {
         this.robots = new ArrayList<>();
+        this.robotGrid = new RobotGrid();
+        this.robotsBySlot = new Robot[RobotIdentifier.SLOTS];
+        this.frameContext = new FrameContext(this);
         this.ball = new Ball();
-        this.field = new Field();
+        this.field = EMPTY_FIELD;
 
         this.designatedPosition = new Vector2(0, 0);
         this.stateForTeam = null;
@@ -84,7 +115,7 @@ public class Game {
         this.time = 0.0;
         this.previous = this;
 
-        this.touches = new ArrayList<>();
+        this.currentTouches = new ArrayList<>();
 
         this.forceStarted = false;
         this.division = Division.B;
@@ -132,20 +163,51 @@ public class Game {
     }
 
     /**
-     * @param robot is added to the list of robots on the playing field.
+     * @return the spatial index over the robots of this frame.
+     */
+    public RobotGrid getRobotGrid() {
+        return robotGrid;
+    }
+
+    /**
+     * @return the quantities derived from this frame, which are computed once and shared by all validators.
+     */
+    public FrameContext getFrameContext() {
+        return frameContext;
+    }
+
+    /**
+     * @param robot is added to the list of robots on the playing field, it must already be part of its team.
      */
     public void addRobot(Robot robot) {
+        robot.setIndex(this.robots.size());
         this.robots.add(robot);
+
+        int slot = robot.getIdentifier().slot();
+        if (slot >= 0) {
+            this.robotsBySlot[slot] = robot;
+        }
     }
 
     /**
      * Get the robot corresponding to the identifier.
      *
      * @param identifier the identifier to search.
-     * @return the matching robot.
+     * @return the matching robot, or null if it is not on the field.
      */
     public Robot getRobot(RobotIdentifier identifier) {
-        return this.robots.stream().filter((robot) -> robot.getIdentifier().equals(identifier)).findAny().orElse(null);
+        int slot = identifier.slot();
+        if (slot >= 0) {
+            return this.robotsBySlot[slot];
+        }
+
+        // ids without a slot are not in the rules, but search for them anyway
+        for (Robot robot : this.robots) {
+            if (robot.getIdentifier().equals(identifier)) {
+                return robot;
+            }
+        }
+        return null;
     }
 
     /**
@@ -184,6 +246,13 @@ public class Game {
         return field;
     }
 
+    /**
+     * @param field the field the game is played at, which may be shared with other games.
+     */
+    public void setField(Field field) {
+        this.field = field;
+    }
+
     public double getTime() {
         return time;
     }
@@ -208,24 +277,75 @@ public class Game {
         return previous;
     }
 
-    public List<Touch> getTouches() {
-        return touches;
+    /**
+     * Take over the finished touches of the previous game, so touches can be added to this game.
+     *
+     * @param timeline the timeline the touches of all games are added to.
+     */
+    public void continueTouches(TouchTimeline timeline) {
+        this.touchTimeline = timeline;
+        if (previous != this && previous.touchTimeline == timeline) {
+            this.firstTouch = previous.firstTouch;
+            this.touchEnd = previous.touchEnd;
+        } else {
+            this.firstTouch = timeline.size();
+            this.touchEnd = timeline.size();
+        }
+    }
+
+    /**
+     * Add a touch of this frame, a finished touch is added to the timeline and becomes part of the next games too.
+     *
+     * @param touch the touch that is in progress or finished in this frame.
+     */
+    public void addTouch(Touch touch) {
+        if (touch.isFinished()) {
+            touchTimeline.add(touch);
+            this.touchEnd = touchTimeline.size();
+        } else {
+            this.currentTouches.add(touch);
+        }
+    }
+
+    /**
+     * Forget all touches, they stay in the timeline but are no longer part of this game and the next games.
+     */
+    public void clearTouches() {
+        this.firstTouch = this.touchEnd;
+        this.currentTouches.clear();
     }
 
+    /**
+     * @return the touches that are still in progress.
+     */
     public List<Touch> getCurrentTouches() {
-        return touches.stream().filter((it) -> !it.isFinished()).collect(Collectors.toList());
+        return currentTouches;
     }
 
+    /**
+     * @return the finished touches since the last stoppage, in the order they finished, without copying them.
+     */
     public List<Touch> getFinishedTouches() {
-        return touches.stream().filter(Touch::isFinished).collect(Collectors.toList());
+        return touchTimeline != null ? touchTimeline.view(firstTouch, touchEnd) : List.of();
     }
 
+    /**
+     * @return the last touch that is in progress, or the last finished touch if no touch is in progress.
+     */
     public Touch getLastStartedTouch() {
-        return touches.isEmpty() ? null : touches.get(touches.size() - 1);
+        return !currentTouches.isEmpty() ? currentTouches.get(currentTouches.size() - 1) : getLastFinishedTouch();
     }
 
     public Touch getLastFinishedTouch() {
-        return touches.stream().filter(Touch::isFinished).reduce((first, second) -> second).orElse(null);
+        return touchTimeline != null ? touchTimeline.getLast(firstTouch, touchEnd) : null;
+    }
+
+    /**
+     * @param robot the robot.
+     * @return the last finished touch of the robot since the last stoppage, or null if there is none.
+     */
+    public Touch getLastFinishedTouch(RobotIdentifier robot) {
+        return touchTimeline != null ? touchTimeline.getLastBy(robot, firstTouch, touchEnd) : null;
     }
 
     public Touch getKickIntoPlay() {
@@ -260,6 +380,42 @@ public class Game {
         return timeLastGameStateChange;
     }
 
+    /**
+     * Reset the game to the state of a newly created game, reusing all objects it holds.
+     */
+    public void reset() {
+        this.robots.clear();
+        Arrays.fill(this.robotsBySlot, null);
+        this.robotGrid.clear();
+        this.frameContext.reset();
+        this.ball.reset();
+        this.field = EMPTY_FIELD;
+
+        this.designatedPosition.setX(0);
+        this.designatedPosition.setY(0);
+        this.stateForTeam = null;
+        this.command = null;
+        this.nextCommand = null;
+
+        this.blue.reset();
+        this.yellow.reset();
+
+        this.timeLastGameStateChange = 0.0;
+        this.state = GameState.HALT;
+        this.time = 0.0;
+        this.previous = this;
+
+        this.kickIntoPlay = null;
+        this.kickType = null;
+        this.touchTimeline = null;
+        this.firstTouch = 0;
+        this.touchEnd = 0;
+        this.currentTouches.clear();
+
+        this.forceStarted = false;
+        this.division = Division.B;
+    }
+
     public boolean isBallInPlay() {
         return getState() == GameState.RUN || (getState() == GameState.PENALTY && getKickIntoPlay() != null);
     }
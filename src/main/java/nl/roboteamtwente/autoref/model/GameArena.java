@@ -0,0 +1,54 @@
+package nl.roboteamtwente.autoref.model;
+
+/**
+ * A fixed set of Game objects that take turns being the current game.
+ * <p>
+ * Instead of allocating a new Game with all of its robots, teams and vectors for every frame, the
+ * oldest game in the arena is reset in place and handed out again. A game stays untouched while it is
+ * the current or the previous game, so validators can keep relying on {@link Game#getPrevious()}.
+ * <p>
+ * A reader on another thread, such as the UI, that gets the current game can use it while the arena
+ * hands out {@code size - 1} more games, the game after those resets it. Every slot beyond two gives
+ * such a reader one more frame of slack, so size the arena for the longest time a reader holds on to a
+ * game. Readers should get the current game once and keep using that game, rather
+ * than asking for it again halfway.
+ */
+public class GameArena {
+    private final Game[] slots;
+    private int index;
+
+    /**
+     * @param size the amount of games in the arena, at least two.
+     */
+    public GameArena(int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("A game arena needs at least two slots, got " + size);
+        }
+
+        this.slots = new Game[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Game();
+        }
+        this.index = 0;
+    }
+
+    /**
+     * Reset the oldest game in the arena and return it.
+     *
+     * @return a game in the same state as a newly created one.
+     */
+    public Game next() {
+        index = (index + 1) % slots.length;
+
+        Game game = slots[index];
+        game.reset();
+        return game;
+    }
+
+    /**
+     * @return the amount of games in the arena.
+     */
+    public int size() {
+        return slots.length;
+    }
+}
@@ -21,8 +21,18 @@ public class Robot extends Entity {
      */
     private Team team;
 
+    /**
+     * The identifier of the robot, kept so it is not created on every lookup. Set together with the team.
+     */
+    private RobotIdentifier identifier;
+
     private Touch touch;
 
+    /**
+     * The position of the robot in the list of robots of its game, used to look up per-frame values.
+     */
+    private int index = -1;
+
     /**
      * This variable keeps track of whether a robot has touched the ball in the previous frame.
      */
@@ -59,6 +69,7 @@ public class Robot extends Entity {
      */
     public void setTeam(Team team) {
         this.team = team;
+        this.identifier = team != null ? RobotIdentifier.of(team.getColor(), id) : null;
     }
 
 
@@ -119,8 +130,35 @@ public class Robot extends Entity {
         this.justTouchedBall = justTouchedBall;
     }
 
+    /**
+     * Reset the robot to its initial state, so it can be reused for another frame.
+     * The robot stays part of its team.
+     */
+    public void reset() {
+        resetMotion();
+        angle = 0;
+        touch = null;
+        justTouchedBall = false;
+    }
+
+    /**
+     *
+     * @return the position of the robot in {@link Game#getRobots()}.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     *
+     * @return the identifier of the robot, or null if it is not part of a team yet.
+     */
     public RobotIdentifier getIdentifier() {
-        return new RobotIdentifier(team.getColor(), id);
+        return identifier;
     }
 
 
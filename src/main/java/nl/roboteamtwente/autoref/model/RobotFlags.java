@@ -0,0 +1,86 @@
+package nl.roboteamtwente.autoref.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of robots, such as the robots that are inside some area, kept as one bit for every
+ * {@link RobotIdentifier#slot()}.
+ * <p>
+ * Robots without a slot, with an id outside the rules, are kept in a hash set instead, which is only created once
+ * such a robot is added. Not thread-safe, it is meant to be owned by a single validator.
+ */
+public class RobotFlags {
+    private long flags;
+    private Set<RobotIdentifier> overflow;
+
+    static {
+        // every slot needs its own bit
+        assert RobotIdentifier.SLOTS <= Long.SIZE;
+    }
+
+    /**
+     * @param robot the robot
+     * @return true if the robot is in the set
+     */
+    public boolean contains(RobotIdentifier robot) {
+        int slot = robot.slot();
+        if (slot >= 0) {
+            return containsSlot(slot);
+        }
+        return overflow != null && overflow.contains(robot);
+    }
+
+    boolean containsSlot(int slot) {
+        return slot >= 0 && (flags & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param robot the robot to add
+     * @return true if the robot was not in the set yet
+     */
+    public boolean add(RobotIdentifier robot) {
+        int slot = robot.slot();
+        if (slot < 0) {
+            if (overflow == null) {
+                overflow = new HashSet<>();
+            }
+            return overflow.add(robot);
+        }
+
+        if (containsSlot(slot)) {
+            return false;
+        }
+        flags |= 1L << slot;
+        return true;
+    }
+
+    /**
+     * @param robot the robot to remove
+     */
+    public void remove(RobotIdentifier robot) {
+        int slot = robot.slot();
+        if (slot >= 0) {
+            flags &= ~(1L << slot);
+        } else if (overflow != null) {
+            overflow.remove(robot);
+        }
+    }
+
+    /**
+     * @return true if no robot is in the set
+     */
+    public boolean isEmpty() {
+        return flags == 0 && (overflow == null || overflow.isEmpty());
+    }
+
+    /**
+     * Remove all robots from the set.
+     */
+    public void clear() {
+        flags = 0;
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package nl.roboteamtwente.autoref.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the positions of all robots in a game, built once per frame so validators
+ * can find robots near a point or a line segment without scanning every robot.
+ * <p>
+ * The grid covers the bounding box of the robots, so it works for any field size and any amount
+ * of robots. The arrays are kept between rebuilds and only grow, so rebuilding the grid of a
+ * recycled game does not allocate once it has seen the largest amount of robots.
+ */
+public class RobotGrid {
+    /**
+     * Width and height of a cell in meters, roughly the distances the validators look at.
+     */
+    private static final float CELL_SIZE = 0.5f;
+
+    /**
+     * Maximum amount of cells along one axis, the cells get larger if the robots are spread out further.
+     */
+    private static final int MAX_CELLS_PER_AXIS = 256;
+
+    private Robot[] robots = new Robot[0];
+    private float[] xs = new float[0];
+    private float[] ys = new float[0];
+    private int robotCount;
+
+    private int[] cellStart = new int[1];
+    private int[] cellRobots = new int[0];
+    private int[] cellOf = new int[0];
+
+    private float minX;
+    private float minY;
+    private float cellSize = CELL_SIZE;
+    private int columns;
+    private int rows;
+
+    /**
+     * Rebuild the grid for the current positions of the given robots.
+     *
+     * @param robots all robots of the game.
+     */
+    public void rebuild(List<Robot> robots) {
+        robotCount = robots.size();
+        if (this.robots.length < robotCount) {
+            int capacity = Math.max(robotCount, this.robots.length * 2);
+            this.robots = new Robot[capacity];
+            this.xs = new float[capacity];
+            this.ys = new float[capacity];
+            this.cellRobots = new int[capacity];
+            this.cellOf = new int[capacity];
+        }
+
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        minX = Float.POSITIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < robotCount; i++) {
+            Robot robot = robots.get(i);
+            this.robots[i] = robot;
+            xs[i] = robot.getPosition().getX();
+            ys[i] = robot.getPosition().getY();
+
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        Arrays.fill(this.robots, robotCount, this.robots.length, null);
+
+        if (robotCount == 0) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+
+        float extent = Math.max(maxX - minX, maxY - minY);
+        cellSize = Math.max(CELL_SIZE, extent / (MAX_CELLS_PER_AXIS - 1));
+        columns = (int) ((maxX - minX) / cellSize) + 1;
+        rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+
+        // counting sort of the robots by cell
+        for (int i = 0; i < robotCount; i++) {
+            cellOf[i] = column(xs[i]) + row(ys[i]) * columns;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        for (int i = 0; i < robotCount; i++) {
+            int cell = cellOf[i];
+            // cellStart[cell] is used as insertion pointer and ends up at the start of the next cell
+            cellRobots[cellStart[cell]++] = i;
+        }
+        for (int cell = cells; cell > 0; cell--) {
+            cellStart[cell] = cellStart[cell - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    /**
+     * Remove all robots from the grid.
+     */
+    public void clear() {
+        Arrays.fill(robots, 0, robotCount, null);
+        robotCount = 0;
+        columns = 0;
+        rows = 0;
+    }
+
+    /**
+     * Find all robots within a distance of a point.
+     *
+     * @param x      x-coordinate of the point.
+     * @param y      y-coordinate of the point.
+     * @param radius the maximum distance, inclusive.
+     * @param result the list the robots are added to.
+     * @return the result list.
+     */
+    public List<Robot> getRobotsInRadius(float x, float y, float radius, List<Robot> result) {
+        if (robotCount == 0) {
+            return result;
+        }
+
+        float radiusSquared = radius * radius;
+        int minColumn = column(x - radius);
+        int maxColumn = column(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = column + row * columns;
+                for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                    int i = cellRobots[j];
+                    float dx = xs[i] - x;
+                    float dy = ys[i] - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        result.add(robots[i]);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find all robots within a distance of a point.
+     *
+     * @param center the point.
+     * @param radius the maximum distance, inclusive.
+     * @return a new list with the robots.
+     */
+    public List<Robot> getRobotsInRadius(Vector2 center, float radius) {
+        return getRobotsInRadius(center.getX(), center.getY(), radius, new ArrayList<>());
+    }
+
+    /**
+     * Find all robots within a distance of a line segment, so in the corridor around the segment
+     * including the half circles around both ends.
+     *
+     * @param x1     x-coordinate of the start of the segment.
+     * @param y1     y-coordinate of the start of the segment.
+     * @param x2     x-coordinate of the end of the segment.
+     * @param y2     y-coordinate of the end of the segment.
+     * @param radius the maximum distance to the segment, inclusive.
+     * @param result the list the robots are added to.
+     * @return the result list.
+     */
+    public List<Robot> getRobotsNearSegment(float x1, float y1, float x2, float y2, float radius, List<Robot> result) {
+        if (robotCount == 0) {
+            return result;
+        }
+
+        float radiusSquared = radius * radius;
+        float segmentX = x2 - x1;
+        float segmentY = y2 - y1;
+        float lengthSquared = segmentX * segmentX + segmentY * segmentY;
+
+        int minColumn = column(Math.min(x1, x2) - radius);
+        int maxColumn = column(Math.max(x1, x2) + radius);
+        int minRow = row(Math.min(y1, y2) - radius);
+        int maxRow = row(Math.max(y1, y2) + radius);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = column + row * columns;
+                for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                    int i = cellRobots[j];
+
+                    // project the robot onto the segment and clamp it to the end points
+                    float t = lengthSquared == 0 ? 0 : ((xs[i] - x1) * segmentX + (ys[i] - y1) * segmentY) / lengthSquared;
+                    t = Math.max(0, Math.min(1, t));
+
+                    float dx = xs[i] - (x1 + t * segmentX);
+                    float dy = ys[i] - (y1 + t * segmentY);
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        result.add(robots[i]);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find all robots in an axis aligned rectangle.
+     *
+     * @param minX   smallest x-coordinate of the rectangle.
+     * @param minY   smallest y-coordinate of the rectangle.
+     * @param maxX   largest x-coordinate of the rectangle.
+     * @param maxY   largest y-coordinate of the rectangle.
+     * @param result the list the robots are added to.
+     * @return the result list.
+     */
+    public List<Robot> getRobotsInRectangle(float minX, float minY, float maxX, float maxY, List<Robot> result) {
+        if (robotCount == 0) {
+            return result;
+        }
+
+        for (int row = row(minY); row <= row(maxY); row++) {
+            for (int column = column(minX); column <= column(maxX); column++) {
+                int cell = column + row * columns;
+                for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                    int i = cellRobots[j];
+                    if (xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY) {
+                        result.add(robots[i]);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the amount of robots in the grid.
+     */
+    public int size() {
+        return robotCount;
+    }
+
+    private int column(float x) {
+        if (!(x > minX)) {
+            return 0;
+        }
+        return (int) Math.min(columns - 1, (x - minX) / cellSize);
+    }
+
+    private int row(float y) {
+        if (!(y > minY)) {
+            return 0;
+        }
+        return (int) Math.min(rows - 1, (y - minY) / cellSize);
+    }
+}
@@ -1,4 +1,57 @@
 package nl.roboteamtwente.autoref.model;
 
+/**
+ * Identifies a robot by the color of its team and its id.
+ * <p>
+ * Every robot with an id below {@link #MAX_ROBOT_ID} has a dense slot number, so per-robot values can be kept in a
+ * plain array of {@link #SLOTS} elements instead of a map. The identifiers of those robots are created once and
+ * shared, get them with {@link #of(TeamColor, int)}. Robots with other ids, such as in large simulated fleets,
+ * have no slot and fall back to a map or a list wherever per-robot values are kept.
+ */
 public record RobotIdentifier(TeamColor teamColor, int id) {
+    /**
+     * One more than the highest robot id with a slot, the rules allow ids 0 to 15.
+     */
+    public static final int MAX_ROBOT_ID = 16;
+
+    /**
+     * The amount of slots, one for every robot id of every team.
+     */
+    public static final int SLOTS = TeamColor.values().length * MAX_ROBOT_ID;
+
+    private static final RobotIdentifier[] IDENTIFIERS = new RobotIdentifier[SLOTS];
+
+    static {
+        for (TeamColor teamColor : TeamColor.values()) {
+            for (int id = 0; id < MAX_ROBOT_ID; id++) {
+                IDENTIFIERS[slot(teamColor, id)] = new RobotIdentifier(teamColor, id);
+            }
+        }
+    }
+
+    /**
+     * @param teamColor the color of the team of the robot
+     * @param id        the id of the robot
+     * @return the shared identifier of the robot, or a new one if the robot has no slot
+     */
+    public static RobotIdentifier of(TeamColor teamColor, int id) {
+        int slot = slot(teamColor, id);
+        return slot < 0 ? new RobotIdentifier(teamColor, id) : IDENTIFIERS[slot];
+    }
+
+    /**
+     * @param teamColor the color of the team of the robot
+     * @param id        the id of the robot
+     * @return the slot of the robot, between 0 and {@link #SLOTS}, or -1 if the id is out of range
+     */
+    public static int slot(TeamColor teamColor, int id) {
+        return id >= 0 && id < MAX_ROBOT_ID ? teamColor.ordinal() * MAX_ROBOT_ID + id : -1;
+    }
+
+    /**
+     * @return the slot of the robot, between 0 and {@link #SLOTS}, or -1 if the id is out of range
+     */
+    public int slot() {
+        return slot(teamColor, id);
+    }
 }
@@ -0,0 +1,103 @@
+package nl.roboteamtwente.autoref.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A time for every robot, such as when it last committed a violation, kept in a primitive array indexed by
+ * {@link RobotIdentifier#slot()}.
+ * <p>
+ * Robots without a slot, with an id outside the rules, are kept in a map instead, which is only created once such
+ * a robot gets a time. Not thread-safe, it is meant to be owned by a single validator.
+ */
+public class RobotTimes {
+    private final double[] times = new double[RobotIdentifier.SLOTS];
+    private Map<RobotIdentifier, Double> overflow;
+
+    public RobotTimes() {
+        clear();
+    }
+
+    /**
+     * @param robot the robot
+     * @return the time of the robot, or NaN if it has none
+     */
+    public double get(RobotIdentifier robot) {
+        int slot = robot.slot();
+        if (slot >= 0) {
+            return times[slot];
+        }
+        return overflow == null ? Double.NaN : overflow.getOrDefault(robot, Double.NaN);
+    }
+
+    /**
+     * @param robot the robot
+     * @return true if the robot has a time
+     */
+    public boolean contains(RobotIdentifier robot) {
+        return !Double.isNaN(get(robot));
+    }
+
+    /**
+     * @param robot the robot
+     * @param time  the time of the robot, or NaN to forget it
+     */
+    public void put(RobotIdentifier robot, double time) {
+        int slot = robot.slot();
+        if (slot >= 0) {
+            times[slot] = time;
+        } else if (!Double.isNaN(time)) {
+            if (overflow == null) {
+                overflow = new HashMap<>();
+            }
+            overflow.put(robot, time);
+        } else if (overflow != null) {
+            overflow.remove(robot);
+        }
+    }
+
+    /**
+     * @param robot the robot to forget the time of
+     */
+    public void remove(RobotIdentifier robot) {
+        put(robot, Double.NaN);
+    }
+
+    /**
+     * @param robot  the robot
+     * @param time   the current time
+     * @param period the length of the period
+     * @return true if the robot has a time and the current time is at most the period after it
+     */
+    public boolean isWithin(RobotIdentifier robot, double time, double period) {
+        // false if the robot has no time, since comparing with NaN is always false
+        return time <= get(robot) + period;
+    }
+
+    /**
+     * Forget the times of all robots that are not in the set.
+     *
+     * @param robots the robots to keep the times of
+     */
+    public void retainAll(RobotFlags robots) {
+        for (int slot = 0; slot < times.length; slot++) {
+            if (!robots.containsSlot(slot)) {
+                times[slot] = Double.NaN;
+            }
+        }
+        if (overflow != null) {
+            overflow.keySet().removeIf((robot) -> !robots.contains(robot));
+        }
+    }
+
+    /**
+     * Forget the times of all robots.
+     */
+    public void clear() {
+        Arrays.fill(times, Double.NaN);
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+}
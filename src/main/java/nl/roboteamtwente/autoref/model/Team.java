@@ -16,6 +16,11 @@ public class Team {
      */
     private final Map<Integer, Robot> robots;
 
+    /**
+     * Robots that were part of this team in a previous frame, kept around so they can be reused.
+     */
+    private final Map<Integer, Robot> spareRobots;
+
     /**
      * A team must have a distinct goalkeeper value, this is represented by the goalkeeper variable.
      */
@@ -42,6 +47,7 @@ public class Team {
     public Team(TeamColor color) {
         this.color = color;
         this.robots = new HashMap<>();
+        this.spareRobots = new HashMap<>();
     }
 
     /**
@@ -81,6 +87,32 @@ public class Team {
         return this.robots.get(id);
     }
 
+    /**
+     * Take a robot that was part of this team before the last reset, so it can be reused.
+     * @param id the id of the robot.
+     * @return the reset robot object, or null if there is none with that ID.
+     */
+    public Robot takeSpareRobot(int id) {
+        return this.spareRobots.remove(id);
+    }
+
+    /**
+     * Reset the team to its initial state, so it can be reused for another frame.
+     * All robots are removed from the team, but kept as spare robots.
+     */
+    public void reset() {
+        for (Robot robot : robots.values()) {
+            robot.reset();
+            spareRobots.put(robot.getId(), robot);
+        }
+        robots.clear();
+
+        goalkeeper = 0;
+        side = null;
+        robotRadius = 0;
+        robotHeight = 0;
+    }
+
     /**
      * Sets the goalkeeper ID.
      * @param id the id to set to the goalkeeper.
@@ -0,0 +1,180 @@
+package nl.roboteamtwente.autoref.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * All finished touches of a match in the order they finished, shared by the games of every frame.
+ * <p>
+ * Touches are only ever appended. Every touch gets a position, which is the amount of touches added before it, and
+ * a game looks at the range of positions that belong to it instead of keeping its own copy of the touches. The
+ * timeline keeps the last {@link #getCapacity()} touches in a ring buffer, older touches are released when new
+ * ones are added and are no longer part of any range.
+ * <p>
+ * Every touch links to the previous touch of the same robot, so the last touch of a robot is found without going
+ * through the touches of the other robots. Touches are added by the thread that derives the games only, reading
+ * them from other threads is safe as long as that is ordered after adding them, like the validators are.
+ */
+public class TouchTimeline {
+    /**
+     * The amount of touches kept by default, far more than happen between two stoppages.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Touch[] touches;
+    private final long[] previousByRobot;
+    private final long[] lastByRobot = new long[RobotIdentifier.SLOTS];
+    private final int mask;
+    private long size;
+
+    public TouchTimeline() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the amount of touches to keep, rounded up to a power of two
+     */
+    public TouchTimeline(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A touch timeline needs a capacity of at least one, got " + capacity);
+        }
+
+        int length = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.touches = new Touch[length];
+        this.previousByRobot = new long[length];
+        this.mask = length - 1;
+        Arrays.fill(lastByRobot, -1);
+    }
+
+    /**
+     * Add a touch that just finished.
+     *
+     * @param touch the finished touch
+     * @return the position of the touch
+     */
+    public long add(Touch touch) {
+        if (!touch.isFinished()) {
+            throw new IllegalArgumentException("Only finished touches can be added, touch #" + touch.id() + " is still in progress");
+        }
+
+        int index = (int) (size & mask);
+        touches[index] = touch;
+
+        int slot = touch.by().slot();
+        previousByRobot[index] = slot >= 0 ? lastByRobot[slot] : -1;
+        if (slot >= 0) {
+            lastByRobot[slot] = size;
+        }
+        return size++;
+    }
+
+    /**
+     * @return the amount of touches ever added, which is the position of the next touch
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the amount of touches that are kept
+     */
+    public int getCapacity() {
+        return touches.length;
+    }
+
+    /**
+     * @return the position of the oldest touch that is still kept
+     */
+    public long getOldest() {
+        return Math.max(0, size - touches.length);
+    }
+
+    /**
+     * @param position the position of the touch
+     * @return the touch at the position
+     * @throws IndexOutOfBoundsException if there is no touch at the position or it was released
+     */
+    public Touch get(long position) {
+        if (position < getOldest() || position >= size) {
+            throw new IndexOutOfBoundsException("No touch at position " + position + ", kept are " + getOldest() + " to " + size);
+        }
+        return touches[(int) (position & mask)];
+    }
+
+    /**
+     * @param from the first position of the range
+     * @param to   the position after the last position of the range
+     * @return the last touch in the range, or null if the range is empty
+     */
+    public Touch getLast(long from, long to) {
+        long end = Math.min(to, size);
+        return end - 1 >= Math.max(from, getOldest()) ? get(end - 1) : null;
+    }
+
+    /**
+     * @param robot the robot
+     * @param from  the first position of the range
+     * @param to    the position after the last position of the range
+     * @return the last touch of the robot in the range, or null if the robot has no touches in it
+     */
+    public Touch getLastBy(RobotIdentifier robot, long from, long to) {
+        long start = Math.max(from, getOldest());
+
+        int slot = robot.slot();
+        if (slot < 0) {
+            // robots without a slot are not linked, but look for them anyway
+            for (long position = Math.min(to, size) - 1; position >= start; position--) {
+                Touch touch = get(position);
+                if (touch.by().equals(robot)) {
+                    return touch;
+                }
+            }
+            return null;
+        }
+
+        long position = lastByRobot[slot];
+        while (position >= start && position >= to) {
+            position = previousByRobot[(int) (position & mask)];
+        }
+        return position >= start ? get(position) : null;
+    }
+
+    /**
+     * Get the touches in a range without copying them. The list is only valid until {@link #getCapacity()} more
+     * touches are added.
+     *
+     * @param from the first position of the range
+     * @param to   the position after the last position of the range
+     * @return the touches in the range that are still kept, from old to new
+     */
+    public List<Touch> view(long from, long to) {
+        long start = Math.max(from, getOldest());
+        int length = (int) Math.max(0, Math.min(to, size) - start);
+        return length == 0 ? List.of() : new View(start, length);
+    }
+
+    private class View extends AbstractList<Touch> implements RandomAccess {
+        private final long start;
+        private final int length;
+
+        View(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public Touch get(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+            }
+            return touches[(int) ((start + index) & mask)];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package nl.roboteamtwente.autoref.model;
 
 /**
  * A Vector2 class is used to define a 2D object on the playing field.
+ * <p>
+ * The methods that return a vector create a new one, unless they take a destination vector to write the
+ * result to. The destination may be this vector or the other operand, so results can be computed in place.
  */
 public class Vector2 {
 
@@ -63,13 +66,42 @@ public class Vector2 {
         this.y = y;
     }
 
+    /**
+     * Sets both coordinates of an object.
+     * @return this vector.
+     */
+    public Vector2 set(float x, float y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    /**
+     * Sets both coordinates to those of another vector.
+     * @param other the vector to copy.
+     * @return this vector.
+     */
+    public Vector2 set(Vector2 other) {
+        return set(other.x, other.y);
+    }
+
     /**
      * Adds the dimensions of another vector to the one in the current object.
      * @param other the vector to add.
      * @return the new Vector object.
      */
     public Vector2 add(Vector2 other) {
-        return new Vector2(this.getX() + other.getX(), this.getY() + other.getY());
+        return add(other, new Vector2(0, 0));
+    }
+
+    /**
+     * Adds the dimensions of another vector to the one in the current object.
+     * @param other the vector to add.
+     * @param dest the vector to write the result to.
+     * @return the destination vector.
+     */
+    public Vector2 add(Vector2 other, Vector2 dest) {
+        return dest.set(this.x + other.x, this.y + other.y);
     }
 
     /**
@@ -78,7 +110,17 @@ public class Vector2 {
      * @return the new Vector object.
      */
     public Vector2 subtract(Vector2 other) {
-        return new Vector2(this.getX() - other.getX(), this.getY() - other.getY());
+        return subtract(other, new Vector2(0, 0));
+    }
+
+    /**
+     * Subtract the dimensions of another vector to the one in the current object.
+     * @param other the vector to subtract.
+     * @param dest the vector to write the result to.
+     * @return the destination vector.
+     */
+    public Vector2 subtract(Vector2 other, Vector2 dest) {
+        return dest.set(this.x - other.x, this.y - other.y);
     }
 
     /**
@@ -98,15 +140,33 @@ public class Vector2 {
         return ((float) Math.sqrt(this.getX()*this.getX() + this.getY()* this.getY()));
     }
 
+    /**
+     * Calculate the squared length of the current vector, which is cheaper to compare than the length.
+     * @return the squared length of vector.
+     */
+    public float magnitudeSquared() {
+        return x * x + y * y;
+    }
+
     /**
      * Method used to change the orientation of the robot.
      * @param angle which the orientation should be made in.
      * @return the updated rotated value.
      */
     public Vector2 rotate(float angle) {
+        return rotate(angle, new Vector2(0, 0));
+    }
+
+    /**
+     * Method used to change the orientation of the robot.
+     * @param angle which the orientation should be made in.
+     * @param dest the vector to write the result to.
+     * @return the destination vector.
+     */
+    public Vector2 rotate(float angle, Vector2 dest) {
         float sin = (float) Math.sin(angle);
         float cos = (float) Math.cos(angle);
-        return new Vector2(cos * x - sin * y, sin * x - cos * y);
+        return dest.set(cos * x - sin * y, sin * x + cos * y);
     }
 
     /**
@@ -115,7 +175,38 @@ public class Vector2 {
      * @return the distance between two vectors.
      */
     public float distance(Vector2 other) {
-        return (float) Math.sqrt(Math.pow(x - other.x, 2) + Math.pow(y - other.y, 2));
+        return distance(other.x, other.y);
+    }
+
+    /**
+     * Method used to detect the distance to a point.
+     * @param x, X-coordinate of the point.
+     * @param y, Y-coordinate of the point.
+     * @return the distance between this vector and the point.
+     */
+    public float distance(float x, float y) {
+        return (float) Math.sqrt(distanceSquared(x, y));
+    }
+
+    /**
+     * Method used to compare distances without taking the square root.
+     * @param other, the other vector to find the distance to.
+     * @return the squared distance between two vectors.
+     */
+    public float distanceSquared(Vector2 other) {
+        return distanceSquared(other.x, other.y);
+    }
+
+    /**
+     * Method used to compare distances without taking the square root.
+     * @param x, X-coordinate of the point.
+     * @param y, Y-coordinate of the point.
+     * @return the squared distance between this vector and the point.
+     */
+    public float distanceSquared(float x, float y) {
+        float dx = this.x - x;
+        float dy = this.y - y;
+        return dx * dx + dy * dy;
     }
 
     /**
@@ -2,6 +2,9 @@ package nl.roboteamtwente.autoref.model;
 
 /**
  * A Vector3 class is used to define a 3D object on the playing field.
+ * <p>
+ * Next to the 3D methods, there are methods that work on the xy coordinates only, so the distance over
+ * the ground can be computed without creating a Vector2 with {@link #xy()}.
  */
 public class Vector3 {
     /**
@@ -87,6 +90,26 @@ public class Vector3 {
         this.z = z;
     }
 
+    /**
+     * Sets all coordinates of an object.
+     * @return this vector.
+     */
+    public Vector3 set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    /**
+     * Sets all coordinates to those of another vector.
+     * @param other the vector to copy.
+     * @return this vector.
+     */
+    public Vector3 set(Vector3 other) {
+        return set(other.x, other.y, other.z);
+    }
+
 
     /**
      *
@@ -96,13 +119,70 @@ public class Vector3 {
         return new Vector2(getX(), getY());
     }
 
+    /**
+     * @param dest the vector to write the xy coordinates to.
+     * @return the destination vector.
+     */
+    public Vector2 xy(Vector2 dest) {
+        return dest.set(x, y);
+    }
+
+    /**
+     * @return the length of the xy coordinates, for example the speed over the ground of a velocity.
+     */
+    public float magnitude2d() {
+        return (float) Math.sqrt(x * x + y * y);
+    }
+
     /**
      * Method used to detect the distance between two vectors.
      * @param other, the other vector to find the distance to.
      * @return the distance between two vectors.
      */
     public float distance(Vector3 other) {
-        return (float) Math.sqrt(Math.pow(x - other.x, 2) + Math.pow(y - other.y, 2) + Math.pow(z - other.z, 2));
+        float dx = x - other.x;
+        float dy = y - other.y;
+        float dz = z - other.z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Method used to detect the distance over the ground between two vectors, ignoring the z coordinates.
+     * @param other, the other vector to find the distance to.
+     * @return the distance between the xy coordinates of two vectors.
+     */
+    public float distance2d(Vector3 other) {
+        return (float) Math.sqrt(distanceSquared2d(other.x, other.y));
+    }
+
+    /**
+     * Method used to detect the distance over the ground to a 2D point, ignoring the z coordinate.
+     * @param other, the point to find the distance to.
+     * @return the distance between the xy coordinates of this vector and the point.
+     */
+    public float distance2d(Vector2 other) {
+        return (float) Math.sqrt(distanceSquared2d(other.getX(), other.getY()));
+    }
+
+    /**
+     * Method used to compare distances over the ground without taking the square root.
+     * @param other, the other vector to find the distance to.
+     * @return the squared distance between the xy coordinates of two vectors.
+     */
+    public float distanceSquared2d(Vector3 other) {
+        return distanceSquared2d(other.x, other.y);
+    }
+
+    /**
+     * Method used to compare distances over the ground without taking the square root.
+     * @param x, X-coordinate of the point.
+     * @param y, Y-coordinate of the point.
+     * @return the squared distance between the xy coordinates of this vector and the point.
+     */
+    public float distanceSquared2d(float x, float y) {
+        float dx = this.x - x;
+        float dy = this.y - y;
+        return dx * dx + dy * dy;
     }
 
 
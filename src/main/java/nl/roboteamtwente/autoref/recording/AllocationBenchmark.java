@@ -0,0 +1,274 @@
+package nl.roboteamtwente.autoref.recording;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.StateDecoder;
+import nl.roboteamtwente.autoref.input.SslLogReader;
+import nl.roboteamtwente.autoref.input.StateAssembler;
+import nl.roboteamtwente.autoref.metrics.LatencyHistogram;
+import nl.roboteamtwente.autoref.model.Division;
+import nl.roboteamtwente.proto.StateOuterClass;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how much memory the referee allocates per frame, split into deriving the game and running the
+ * validators, by replaying a recording or an SSL log file.
+ * <p>
+ * All frames are decoded before measuring, so decoding does not count. The frames are replayed several times with
+ * a new AutoRef every pass, the first pass only warms up the JIT. Run it on two builds to compare them.
+ * <p>
+ * With --compare-recycling the frames are replayed with and without recycling games, and the benchmark exits with
+ * status 1 if deriving recycled games does not allocate less than deriving new games, so it can be used as a
+ * regression check for the recycled path.
+ * <p>
+ * Every pass also reports percentiles of the time it took to validate a frame. With --compare-parallel-validators
+ * the frames are replayed with the validators running one after another and on the fork-join pool, to see if
+ * running them in parallel pays off. Memory allocated on the pool is not counted, so validating in parallel
+ * seems to allocate less than it does.
+ */
+public class AllocationBenchmark {
+    private final List<StateOuterClass.State> states;
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Division division = Division.B;
+    private boolean recycleGames = false;
+    private boolean parallelValidators = false;
+
+    /**
+     * @param states the frames to replay
+     */
+    public AllocationBenchmark(List<StateOuterClass.State> states) {
+        this.states = states;
+    }
+
+    /**
+     * @param division the division the frames are refereed in
+     */
+    public void setDivision(Division division) {
+        this.division = division;
+    }
+
+    /**
+     * @param recycleGames if games should be recycled instead of allocated for every frame
+     */
+    public void setRecycleGames(boolean recycleGames) {
+        this.recycleGames = recycleGames;
+    }
+
+    /**
+     * @param parallelValidators if the validators of a frame should run in parallel instead of one after another
+     */
+    public void setParallelValidators(boolean parallelValidators) {
+        this.parallelValidators = parallelValidators;
+    }
+
+    /**
+     * Replay all frames once through a new AutoRef.
+     *
+     * @return the bytes allocated and the time spent
+     */
+    public Result run() {
+        SSLAutoRef autoRef = new SSLAutoRef();
+        autoRef.setDivision(division);
+        autoRef.setRecycleGames(recycleGames);
+        autoRef.setParallelValidators(parallelValidators);
+
+        LatencyHistogram validateLatency = new LatencyHistogram();
+        long deriveBytes = 0;
+        long validateBytes = 0;
+        long start = System.nanoTime();
+        for (StateOuterClass.State state : states) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            autoRef.processWorldState(state);
+            long derived = threads.getCurrentThreadAllocatedBytes();
+            long validateStart = System.nanoTime();
+            autoRef.getReferee().validate();
+            validateLatency.record(System.nanoTime() - validateStart);
+            long validated = threads.getCurrentThreadAllocatedBytes();
+
+            deriveBytes += derived - before;
+            validateBytes += validated - derived;
+        }
+        return new Result(states.size(), deriveBytes, validateBytes, System.nanoTime() - start,
+                validateLatency.getPercentile(50), validateLatency.getPercentile(99));
+    }
+
+    /**
+     * The outcome of one pass over the frames.
+     *
+     * @param frames        the amount of frames replayed
+     * @param deriveBytes   the bytes allocated while deriving the games
+     * @param validateBytes the bytes allocated while validating
+     * @param nanos         the time the pass took
+     * @param validateP50   the median time it took to validate a frame
+     * @param validateP99   the 99th percentile of the time it took to validate a frame
+     */
+    public record Result(int frames, long deriveBytes, long validateBytes, long nanos, long validateP50, long validateP99) {
+        void print(String name) {
+            System.out.printf("%s: %.0f B/frame deriving, %.0f B/frame validating, %.1f us/frame, validating p50 %.1f us p99 %.1f us%n", name,
+                    (double) deriveBytes / frames, (double) validateBytes / frames, nanos / 1000.0 / frames,
+                    validateP50 / 1000.0, validateP99 / 1000.0);
+        }
+
+        /**
+         * @return the bytes allocated per frame while deriving the games
+         */
+        public double deriveBytesPerFrame() {
+            return (double) deriveBytes / frames;
+        }
+    }
+
+    /**
+     * Replay the frames a few times, the first time only to warm up the JIT.
+     *
+     * @param passes the amount of passes, including the warm-up
+     * @param prefix the text to print before the name of every pass
+     * @return the result of the last pass
+     */
+    public Result measure(int passes, String prefix) {
+        Result result = run();
+        result.print(prefix + "warm-up");
+        for (int i = 1; i < passes; i++) {
+            result = run();
+            result.print(prefix + "pass " + i);
+        }
+        return result;
+    }
+
+    private static List<StateOuterClass.State> load(Path recording) throws IOException {
+        List<StateOuterClass.State> states = new ArrayList<>();
+        if (SslLogReader.isLogFile(recording)) {
+            StateAssembler assembler = new StateAssembler();
+            try (SslLogReader reader = new SslLogReader(recording)) {
+                SslLogReader.LogMessage message;
+                while ((message = reader.next()) != null) {
+                    try {
+                        StateOuterClass.State state = assembler.accept(message);
+                        if (state != null) {
+                            states.add(state);
+                        }
+                    } catch (InvalidProtocolBufferException e) {
+                        //empty, skip invalid messages
+                    }
+                }
+            }
+        } else {
+            try (RecordingReader reader = new RecordingReader(recording)) {
+                RecordingReader.RecordedFrame frame;
+                while ((frame = reader.next()) != null) {
+                    try {
+                        states.add(StateDecoder.decode(frame.data()));
+                    } catch (InvalidProtocolBufferException e) {
+                        //empty, skip invalid frames
+                    }
+                }
+            }
+        }
+        return states;
+    }
+
+    public static void main(String[] args) {
+        Path recording = null;
+        int passes = 3;
+        Division division = Division.B;
+        boolean recycleGames = false;
+        boolean compareRecycling = false;
+        boolean parallelValidators = false;
+        boolean compareParallelValidators = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--passes=")) {
+                    passes = Integer.parseInt(arg.substring("--passes=".length()));
+                } else if (arg.startsWith("--division=")) {
+                    division = arg.substring("--division=".length()).equalsIgnoreCase("a") ? Division.A : Division.B;
+                } else if (arg.equals("--recycle-games")) {
+                    recycleGames = true;
+                } else if (arg.equals("--compare-recycling")) {
+                    compareRecycling = true;
+                } else if (arg.equals("--parallel-validators")) {
+                    parallelValidators = true;
+                } else if (arg.equals("--compare-parallel-validators")) {
+                    compareParallelValidators = true;
+                } else if (!arg.startsWith("--") && recording == null) {
+                    recording = Path.of(arg);
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse passes program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (recording == null) {
+            System.err.println("Usage: <recording directory | .log(.gz) file> [--passes=N] [--division=A|B] [--recycle-games | --compare-recycling] [--parallel-validators | --compare-parallel-validators]");
+            System.exit(1);
+            return;
+        }
+
+        List<StateOuterClass.State> states;
+        try {
+            states = load(recording);
+        } catch (IOException e) {
+            System.err.println("Failed to read " + recording);
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        if (states.isEmpty()) {
+            System.err.println("No frames in " + recording);
+            System.exit(1);
+            return;
+        }
+
+        AllocationBenchmark benchmark = new AllocationBenchmark(states);
+        benchmark.setDivision(division);
+        benchmark.setRecycleGames(recycleGames);
+        benchmark.setParallelValidators(parallelValidators);
+
+        if (compareParallelValidators) {
+            System.out.println("Replaying " + states.size() + " frames " + passes + " times with serial and parallel validators");
+            benchmark.setParallelValidators(false);
+            Result serial = benchmark.measure(passes, "serial ");
+            benchmark.setParallelValidators(true);
+            Result parallel = benchmark.measure(passes, "parallel ");
+
+            System.out.printf("validating a frame in parallel: p50 %.1f us instead of %.1f us, p99 %.1f us instead of %.1f us%n",
+                    parallel.validateP50() / 1000.0, serial.validateP50() / 1000.0, parallel.validateP99() / 1000.0, serial.validateP99() / 1000.0);
+            benchmark.setParallelValidators(parallelValidators);
+            if (!compareRecycling) {
+                return;
+            }
+        }
+
+        if (compareRecycling) {
+            System.out.println("Replaying " + states.size() + " frames " + passes + " times with and without recycling games");
+            benchmark.setRecycleGames(false);
+            Result allocated = benchmark.measure(passes, "new games ");
+            benchmark.setRecycleGames(true);
+            Result recycled = benchmark.measure(passes, "recycled games ");
+
+            // only deriving depends on recycling, the validators allocate the same either way
+            System.out.printf("deriving recycled games allocates %.0f%% of what deriving new games allocates%n",
+                    recycled.deriveBytesPerFrame() / allocated.deriveBytesPerFrame() * 100);
+            if (recycled.deriveBytesPerFrame() >= allocated.deriveBytesPerFrame()) {
+                System.err.println("Deriving recycled games no longer allocates less than deriving new games.");
+                System.exit(1);
+            }
+            return;
+        }
+
+        System.out.println("Replaying " + states.size() + " frames " + passes + " times");
+        benchmark.measure(passes, "");
+    }
+}
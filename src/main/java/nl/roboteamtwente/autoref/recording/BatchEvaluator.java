@@ -0,0 +1,295 @@
+package nl.roboteamtwente.autoref.recording;
+
+import nl.roboteamtwente.autoref.RuleViolation;
+import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.input.SslLogReader;
+import nl.roboteamtwente.autoref.input.StateAssembler;
+import nl.roboteamtwente.autoref.model.Division;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Runs every recording in a directory through its own AutoRef, in parallel, and combines the results into one report.
+ * <p>
+ * This makes it possible to see what a change to a validator does over a whole tournament of recordings: how often
+ * every validator raised a violation, how long frames took to process and which validators threw exceptions.
+ */
+public class BatchEvaluator {
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ForkJoinPool pool;
+    private Division division = Division.B;
+
+    /**
+     * @param pool the pool to evaluate the recordings on, one task per recording
+     */
+    public BatchEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param division the division the matches were played in
+     */
+    public void setDivision(Division division) {
+        this.division = division;
+    }
+
+    /**
+     * Find all recordings and SSL log files in a directory and its subdirectories.
+     *
+     * @param directory the directory to search
+     * @return the directories of the recordings and the log files, sorted by name
+     * @throws IOException if the directory could not be searched
+     */
+    public static List<Path> findRecordings(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter((path) -> Files.isRegularFile(RecordingFormat.segmentPath(path, 0))
+                    || Files.isRegularFile(path) && SslLogReader.isLogFile(path)).sorted().toList();
+        }
+    }
+
+    /**
+     * Evaluate the recordings in parallel and wait for all of them.
+     *
+     * @param recordings the directories of the recordings and the log files
+     * @return the combined report
+     */
+    public Report evaluate(List<Path> recordings) {
+        List<Callable<MatchResult>> tasks = new ArrayList<>();
+        for (Path recording : recordings) {
+            tasks.add(() -> evaluate(recording));
+        }
+
+        Report report = new Report();
+        for (Future<MatchResult> future : pool.invokeAll(tasks)) {
+            try {
+                report.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Run a single recording through a new AutoRef.
+     *
+     * @param recording the directory of the recording, or an SSL log file
+     * @return the result of the match
+     */
+    public MatchResult evaluate(Path recording) {
+        MatchResult result = new MatchResult(recording);
+
+        SSLAutoRef autoRef = new SSLAutoRef();
+        autoRef.setDivision(division);
+        autoRef.getReferee().setOnValidatorException((validator, exception) ->
+                result.exceptions.merge(validator.getClass().getSimpleName() + ": " + exception, 1, Integer::sum));
+
+        ReplayDriver driver = new ReplayDriver(autoRef, 0);
+        driver.setOnViolation((replayed) -> result.violations.merge(validatorName(replayed.violation()), 1L, Long::sum));
+        driver.setOnFrameProcessed(result::addFrameTime);
+
+        if (SslLogReader.isLogFile(recording)) {
+            try (SslLogReader reader = new SslLogReader(recording)) {
+                driver.run(reader, new StateAssembler());
+            } catch (IOException e) {
+                result.error = e;
+            }
+        } else {
+            try (RecordingReader reader = new RecordingReader(recording)) {
+                driver.run(reader);
+            } catch (IOException e) {
+                result.error = e;
+            }
+        }
+
+        result.invalidFrames = driver.getInvalidFrames();
+        return result;
+    }
+
+    /**
+     * @return the simple name of the validator a violation is declared in, or of the violation itself
+     */
+    private static String validatorName(RuleViolation violation) {
+        Class<?> validator = violation.getClass().getEnclosingClass();
+        return validator != null ? validator.getSimpleName() : violation.getClass().getSimpleName();
+    }
+
+    /**
+     * The result of evaluating one recording.
+     */
+    public static class MatchResult {
+        private final Path recording;
+        private final Map<String, Long> violations = new TreeMap<>();
+        private final Map<String, Integer> exceptions = new TreeMap<>();
+        private long[] frameTimes = new long[1 << 16];
+        private int frames;
+        private long invalidFrames;
+        private IOException error;
+
+        private MatchResult(Path recording) {
+            this.recording = recording;
+        }
+
+        private void addFrameTime(long nanos) {
+            if (frames == frameTimes.length) {
+                frameTimes = Arrays.copyOf(frameTimes, frames * 2);
+            }
+            frameTimes[frames++] = nanos;
+        }
+
+        public Path getRecording() {
+            return recording;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+    }
+
+    /**
+     * The combined results of all evaluated recordings.
+     */
+    public static class Report {
+        private final List<MatchResult> matches = new ArrayList<>();
+        private final Map<String, Long> violations = new TreeMap<>();
+        private final Map<String, Integer> exceptions = new TreeMap<>();
+        private long frames;
+        private long invalidFrames;
+
+        private void add(MatchResult match) {
+            matches.add(match);
+            match.violations.forEach((validator, count) -> violations.merge(validator, count, Long::sum));
+            match.exceptions.forEach((exception, count) -> exceptions.merge(exception, count, Integer::sum));
+            frames += match.frames;
+            invalidFrames += match.invalidFrames;
+        }
+
+        /**
+         * @return the amount of violations per validator over all recordings
+         */
+        public Map<String, Long> getViolations() {
+            return Collections.unmodifiableMap(violations);
+        }
+
+        /**
+         * @return how often every validator exception occurred over all recordings
+         */
+        public Map<String, Integer> getExceptions() {
+            return Collections.unmodifiableMap(exceptions);
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 1
+         * @return the time it took to process a frame at the percentile over all recordings, in nanoseconds
+         */
+        public long getFrameTimePercentile(double percentile) {
+            return percentile(sortedFrameTimes(), percentile);
+        }
+
+        private static long percentile(long[] sortedTimes, double percentile) {
+            if (sortedTimes.length == 0) {
+                return 0;
+            }
+            return sortedTimes[Math.max(0, (int) Math.ceil(percentile * sortedTimes.length) - 1)];
+        }
+
+        private long[] sortedFrameTimes() {
+            long[] times = new long[(int) frames];
+            int i = 0;
+            for (MatchResult match : matches) {
+                System.arraycopy(match.frameTimes, 0, times, i, match.frames);
+                i += match.frames;
+            }
+            Arrays.sort(times);
+            return times;
+        }
+
+        /**
+         * Print the report.
+         */
+        public void print() {
+            System.out.println("Evaluated " + matches.size() + " recordings, " + frames + " frames (" + invalidFrames + " invalid)");
+            for (MatchResult match : matches) {
+                System.out.println("  " + match.recording + ": " + match.frames + " frames" + (match.error != null ? ", failed: " + match.error.getMessage() : ""));
+            }
+
+            System.out.println("Violations per validator:");
+            violations.forEach((validator, count) -> System.out.printf("  %-45s %8d%n", validator, count));
+
+            long[] times = sortedFrameTimes();
+            System.out.println("Frame processing time:");
+            for (double percentile : PERCENTILES) {
+                System.out.printf("  p%-6s %10.1f us%n", percentile * 100, percentile(times, percentile) / 1000.0);
+            }
+            System.out.printf("  max     %10.1f us%n", percentile(times, 1) / 1000.0);
+
+            System.out.println("Validator exceptions:");
+            if (exceptions.isEmpty()) {
+                System.out.println("  none");
+            }
+            exceptions.forEach((exception, count) -> System.out.printf("  %6dx %s%n", count, exception));
+        }
+    }
+
+    public static void main(String[] args) {
+        Path directory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Division division = Division.B;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--division=")) {
+                    division = arg.substring("--division=".length()).equalsIgnoreCase("a") ? Division.A : Division.B;
+                } else if (!arg.startsWith("--") && directory == null) {
+                    directory = Path.of(arg);
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse threads program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (directory == null) {
+            System.err.println("Usage: <directory with recordings or log files> [--threads=N] [--division=A|B]");
+            System.exit(1);
+            return;
+        }
+
+        List<Path> recordings;
+        try {
+            recordings = findRecordings(directory);
+        } catch (IOException e) {
+            System.err.println("Failed to search " + directory + " for recordings");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        BatchEvaluator evaluator = new BatchEvaluator(new ForkJoinPool(threads));
+        evaluator.setDivision(division);
+
+        long start = System.nanoTime();
+        Report report = evaluator.evaluate(recordings);
+        report.print();
+        System.out.printf("Done in %.2f s%n", (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,161 @@
+package nl.roboteamtwente.autoref.recording;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.StateDecoder;
+import nl.roboteamtwente.autoref.input.SslLogReader;
+import nl.roboteamtwente.autoref.input.StateAssembler;
+import nl.roboteamtwente.proto.StateOuterClass;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares decoding State packets with {@link StateDecoder#decode(byte[])}, which only decodes the fields the
+ * referee uses, to a full {@link StateOuterClass.State#parseFrom(byte[])}, in time and memory allocated per frame.
+ * <p>
+ * The packets of a recording are decoded as they were received from World. An SSL log file has no State packets,
+ * so the States are assembled from it and serialized again, which leaves out the fields the referee does not use
+ * and makes the difference smaller than it is for World.
+ */
+public class DecodeBenchmark {
+    private final List<byte[]> packets;
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // keeps the decoded packets from being optimized away
+    private long sink;
+
+    /**
+     * @param packets the serialized State packets to decode
+     */
+    public DecodeBenchmark(List<byte[]> packets) {
+        this.packets = packets;
+    }
+
+    /**
+     * Decode all packets once.
+     *
+     * @param full true to use {@link StateOuterClass.State#parseFrom(byte[])}, false to use {@link StateDecoder}
+     * @return the bytes allocated and the time spent
+     * @throws InvalidProtocolBufferException if a packet is malformed
+     */
+    public Result run(boolean full) throws InvalidProtocolBufferException {
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (byte[] packet : packets) {
+            StateOuterClass.State state = full ? StateOuterClass.State.parseFrom(packet) : StateDecoder.decode(packet);
+            sink += state.getCommandExtrapolatedWorld().getTime();
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(packets.size(), threads.getCurrentThreadAllocatedBytes() - before, nanos);
+    }
+
+    /**
+     * The outcome of one pass over the packets.
+     *
+     * @param frames the amount of packets decoded
+     * @param bytes  the bytes allocated while decoding
+     * @param nanos  the time the pass took
+     */
+    public record Result(int frames, long bytes, long nanos) {
+        void print(String name) {
+            System.out.printf("%s: %.0f B/frame, %.2f us/frame%n", name, (double) bytes / frames, nanos / 1000.0 / frames);
+        }
+    }
+
+    private static List<byte[]> load(Path recording) throws IOException {
+        List<byte[]> packets = new ArrayList<>();
+        if (SslLogReader.isLogFile(recording)) {
+            StateAssembler assembler = new StateAssembler();
+            try (SslLogReader reader = new SslLogReader(recording)) {
+                SslLogReader.LogMessage message;
+                while ((message = reader.next()) != null) {
+                    try {
+                        StateOuterClass.State state = assembler.accept(message);
+                        if (state != null) {
+                            packets.add(state.toByteArray());
+                        }
+                    } catch (InvalidProtocolBufferException e) {
+                        //empty, skip invalid messages
+                    }
+                }
+            }
+        } else {
+            try (RecordingReader reader = new RecordingReader(recording)) {
+                RecordingReader.RecordedFrame frame;
+                while ((frame = reader.next()) != null) {
+                    try {
+                        // only keep packets both decoders accept
+                        StateOuterClass.State.parseFrom(frame.data());
+                        packets.add(frame.data());
+                    } catch (InvalidProtocolBufferException e) {
+                        //empty, skip invalid frames
+                    }
+                }
+            }
+        }
+        return packets;
+    }
+
+    public static void main(String[] args) {
+        Path recording = null;
+        int passes = 5;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--passes=")) {
+                    passes = Integer.parseInt(arg.substring("--passes=".length()));
+                } else if (!arg.startsWith("--") && recording == null) {
+                    recording = Path.of(arg);
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse passes program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (recording == null) {
+            System.err.println("Usage: <recording directory | .log(.gz) file> [--passes=N]");
+            System.exit(1);
+            return;
+        }
+
+        List<byte[]> packets;
+        try {
+            packets = load(recording);
+        } catch (IOException e) {
+            System.err.println("Failed to read " + recording);
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        if (packets.isEmpty()) {
+            System.err.println("No frames in " + recording);
+            System.exit(1);
+            return;
+        }
+
+        DecodeBenchmark benchmark = new DecodeBenchmark(packets);
+        System.out.println("Decoding " + packets.size() + " packets " + passes + " times");
+        try {
+            benchmark.run(true).print("warm-up parseFrom");
+            benchmark.run(false).print("warm-up StateDecoder");
+            for (int i = 1; i < passes; i++) {
+                benchmark.run(true).print("pass " + i + " parseFrom");
+                benchmark.run(false).print("pass " + i + " StateDecoder");
+            }
+        } catch (InvalidProtocolBufferException e) {
+            System.err.println("Failed to decode a packet of " + recording);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
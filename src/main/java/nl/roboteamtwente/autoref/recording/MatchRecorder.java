@@ -0,0 +1,258 @@
+package nl.roboteamtwente.autoref.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the State packets handed to the referee, so a match can be replayed afterwards.
+ * <p>
+ * Recording a frame only puts it in a queue, a separate writer thread writes the frames to the
+ * segments of the recording through a direct buffer. The referee never waits for the disk, if the
+ * writer can not keep up the queue fills up and frames are dropped from the recording instead.
+ * See {@link RecordingFormat} for the layout on disk.
+ */
+public class MatchRecorder implements AutoCloseable {
+    /**
+     * Default size after which a new segment is started, in bytes.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final DateTimeFormatter DIRECTORY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+    // around 10 seconds of frames at 100 Hz
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // time the writer waits for new frames before checking if the recorder is closed (in ms)
+    private static final int POLL_TIMEOUT = 100;
+
+    private final Path directory;
+    private final long segmentSize;
+
+    private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(RecordingFormat.BYTE_ORDER);
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    // only used by the writer thread
+    private FileChannel channel;
+    private int segment = -1;
+    private long segmentBytes;
+
+    private final AtomicLong recordedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * Create a recorder that writes to a new directory named after the current time in the given directory.
+     *
+     * @param baseDirectory the directory to create the recording directory in
+     * @return the recorder, which still has to be started
+     * @throws IOException if the directory could not be created
+     */
+    public static MatchRecorder inNewDirectory(Path baseDirectory) throws IOException {
+        return new MatchRecorder(baseDirectory.resolve(LocalDateTime.now().format(DIRECTORY_FORMAT)), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory   the directory to write the segments to, created if it does not exist
+     * @param segmentSize the size after which a new segment is started, in bytes
+     * @throws IOException if the directory or the first segment could not be created
+     */
+    public MatchRecorder(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        startSegment();
+
+        this.writerThread = new Thread(this::write, "AutoRef recorder");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start() {
+        System.out.println("Recording to " + directory.toAbsolutePath());
+        writerThread.start();
+    }
+
+    /**
+     * Add a frame to the recording without waiting for it to be written.
+     *
+     * @param frame             the serialized State packet, which should not be modified afterwards
+     * @param receiveTimeMicros the time the frame was received at, in microseconds since the epoch
+     * @return false if the frame was dropped because the writer could not keep up or the recorder is closed
+     */
+    public boolean record(byte[] frame, long receiveTimeMicros) {
+        if (closed || !queue.offer(new Frame(frame, receiveTimeMicros))) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write all frames that were recorded so far and close the recording, also if it was never started.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // the writer thread closes the segment itself, unless it was never started
+        closeSegment();
+    }
+
+    private void write() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Frame first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                // write everything that is waiting with as few writes as possible
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Frame frame : batch) {
+                    append(frame);
+                }
+                flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write recording, recording stopped.");
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            //empty
+        } finally {
+            closed = true;
+            closeSegment();
+        }
+    }
+
+    /**
+     * Write what is left in the buffer and close the current segment, if it is still open.
+     */
+    private void closeSegment() {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        try {
+            flush();
+            channel.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void append(Frame frame) throws IOException {
+        int size = RecordingFormat.RECORD_HEADER_SIZE + frame.data().length;
+        if (segmentBytes + size > segmentSize && segmentBytes > RecordingFormat.SEGMENT_HEADER_SIZE) {
+            startSegment();
+        }
+
+        if (buffer.remaining() < size) {
+            flush();
+        }
+
+        buffer.putInt(frame.data().length);
+        buffer.putLong(frame.receiveTimeMicros());
+        if (size <= buffer.capacity()) {
+            buffer.put(frame.data());
+        } else {
+            // too large for the buffer, write it directly
+            flush();
+            ByteBuffer data = ByteBuffer.wrap(frame.data());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        segmentBytes += size;
+        bytesWritten.addAndGet(size);
+        recordedFrames.incrementAndGet();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void startSegment() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.force(false);
+            channel.close();
+        }
+
+        segment++;
+        channel = FileChannel.open(RecordingFormat.segmentPath(directory, segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        buffer.putInt(RecordingFormat.MAGIC);
+        buffer.putInt(RecordingFormat.VERSION);
+        buffer.putInt(segment);
+        segmentBytes = RecordingFormat.SEGMENT_HEADER_SIZE;
+    }
+
+    /**
+     * @return the directory the recording is written to
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the amount of frames written to the recording
+     */
+    public long getRecordedFrames() {
+        return recordedFrames.get();
+    }
+
+    /**
+     * @return the amount of frames that were not recorded because the writer could not keep up
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return the amount of bytes of records written, excluding segment headers
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    private record Frame(byte[] data, long receiveTimeMicros) {
+    }
+}
@@ -0,0 +1,52 @@
+package nl.roboteamtwente.autoref.recording;
+
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * The layout of a match recording.
+ * <p>
+ * A recording is a directory with numbered segment files, {@code 00000.arlog}, {@code 00001.arlog} and so on.
+ * Every segment starts with a header of the magic number, the format version and the number of the segment,
+ * followed by records of the length of the frame, the time it was received at in microseconds since the epoch
+ * and the serialized State packet itself. All numbers are big endian.
+ */
+public final class RecordingFormat {
+    public static final int MAGIC = 0x41524C47; // "ARLG"
+    public static final int VERSION = 1;
+
+    public static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+
+    /**
+     * Size of the segment header: magic, version and segment number.
+     */
+    public static final int SEGMENT_HEADER_SIZE = 3 * Integer.BYTES;
+
+    /**
+     * Size of the header of a record: frame length and receive time.
+     */
+    public static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    public static final String SEGMENT_EXTENSION = ".arlog";
+
+    private RecordingFormat() {
+    }
+
+    /**
+     * @param directory the directory of the recording
+     * @param segment   the number of the segment
+     * @return the path of the segment file
+     */
+    public static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(String.format("%05d", segment) + SEGMENT_EXTENSION);
+    }
+
+    /**
+     * @return the current wall clock time in microseconds since the epoch, as precise as the clock allows
+     */
+    public static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+}
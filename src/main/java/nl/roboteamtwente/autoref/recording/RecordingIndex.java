@@ -0,0 +1,306 @@
+package nl.roboteamtwente.autoref.recording;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.StateDecoder;
+import nl.roboteamtwente.proto.StateOuterClass;
+import org.robocup.ssl.proto.SslGcRefereeMessage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of a recording, so a replay can start at a point in time or at a referee command without
+ * reading everything before it.
+ * <p>
+ * The index has an entry for every change of the referee command and an entry every second in between.
+ * It is stored next to the segments in {@code index.aridx}, and built when a recording without an up to date
+ * index is opened.
+ * <p>
+ * The AutoRef derives its state from previous frames, so a replay can not simply start at any frame. Entries
+ * where the command changes to HALT are marked as checkpoints. No validator is active during HALT, and a
+ * validator is reset when it becomes active again, so none of them carries state such as the time of its last
+ * violation past a checkpoint. The touches of the ball are reset when play continues after HALT as well. STOP is
+ * no checkpoint, since some validators are active during STOP and keep their state.
+ * <p>
+ * A replay starts at the last checkpoint before the entry it seeks to and rolls forward from there, which gives
+ * the same violations as processing the whole recording. What is not restored is the time the game state last
+ * changed before the checkpoint and validators that were disabled after throwing an exception.
+ */
+public class RecordingIndex {
+    public static final String FILE_NAME = "index.aridx";
+
+    private static final int MAGIC = 0x41524958; // "ARIX"
+    private static final int VERSION = 2;
+
+    // time between entries when the command does not change, in microseconds
+    private static final long TIME_INTERVAL = 1_000_000;
+
+    private final List<Entry> entries;
+    private final long[] segmentSizes;
+
+    private RecordingIndex(List<Entry> entries, long[] segmentSizes) {
+        this.entries = entries;
+        this.segmentSizes = segmentSizes;
+    }
+
+    /**
+     * Open the index of a recording, building and storing it if there is none or the recording changed since.
+     *
+     * @param directory the directory of the recording
+     * @return the index
+     * @throws IOException if the recording could not be read
+     */
+    public static RecordingIndex open(Path directory) throws IOException {
+        long[] segmentSizes = segmentSizes(directory);
+        Path file = directory.resolve(FILE_NAME);
+
+        if (Files.exists(file)) {
+            try {
+                RecordingIndex index = read(file);
+                if (Arrays.equals(index.segmentSizes, segmentSizes)) {
+                    return index;
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring invalid index " + file + ": " + e.getMessage());
+            }
+        }
+
+        System.out.println("Building index of " + directory);
+        RecordingIndex index = build(directory, segmentSizes);
+        try {
+            index.write(file);
+        } catch (IOException e) {
+            // an index that can not be stored can still be used
+            System.err.println("Failed to store index " + file + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    private static RecordingIndex build(Path directory, long[] segmentSizes) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (RecordingReader reader = new RecordingReader(directory)) {
+            int lastCommandCounter = -1;
+            long lastEntryTime = Long.MIN_VALUE;
+
+            RecordingReader.RecordedFrame frame;
+            while ((frame = reader.next()) != null) {
+                StateOuterClass.State state;
+                try {
+                    state = StateDecoder.decode(frame.data());
+                } catch (InvalidProtocolBufferException e) {
+                    continue;
+                }
+
+                SslGcRefereeMessage.SSL_Referee referee = state.getReferee();
+                boolean commandChanged = referee.getCommandCounter() != lastCommandCounter;
+                if (!commandChanged && frame.receiveTimeMicros() - lastEntryTime < TIME_INTERVAL) {
+                    continue;
+                }
+
+                boolean checkpoint = commandChanged && referee.getCommand() == SslGcRefereeMessage.SSL_Referee.Command.HALT;
+
+                entries.add(new Entry(frame.segment(), frame.offset(), frame.receiveTimeMicros(), state.getCommandExtrapolatedWorld().getTime(),
+                        referee.getCommandCounter(), referee.getCommandValue(), referee.getStageValue(), commandChanged, checkpoint));
+
+                lastCommandCounter = referee.getCommandCounter();
+                lastEntryTime = frame.receiveTimeMicros();
+            }
+        }
+
+        return new RecordingIndex(entries, segmentSizes);
+    }
+
+    private static long[] segmentSizes(Path directory) throws IOException {
+        List<Long> sizes = new ArrayList<>();
+        Path segment;
+        while (Files.exists(segment = RecordingFormat.segmentPath(directory, sizes.size()))) {
+            sizes.add(Files.size(segment));
+        }
+        return sizes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static RecordingIndex read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("not an index of a supported version");
+            }
+
+            long[] segmentSizes = new long[input.readInt()];
+            for (int i = 0; i < segmentSizes.length; i++) {
+                segmentSizes[i] = input.readLong();
+            }
+
+            int count = input.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(input.readInt(), input.readLong(), input.readLong(), input.readLong(),
+                        input.readInt(), input.readInt(), input.readInt(), input.readBoolean(), input.readBoolean()));
+            }
+
+            return new RecordingIndex(entries, segmentSizes);
+        }
+    }
+
+    private void write(Path file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(segmentSizes.length);
+            for (long size : segmentSizes) {
+                output.writeLong(size);
+            }
+
+            output.writeInt(entries.size());
+            for (Entry entry : entries) {
+                output.writeInt(entry.segment());
+                output.writeLong(entry.offset());
+                output.writeLong(entry.receiveTimeMicros());
+                output.writeLong(entry.worldTime());
+                output.writeInt(entry.commandCounter());
+                output.writeInt(entry.commandValue());
+                output.writeInt(entry.stageValue());
+                output.writeBoolean(entry.commandChanged());
+                output.writeBoolean(entry.checkpoint());
+            }
+        }
+    }
+
+    /**
+     * @return all entries, in the order of the recording
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the receive time of the first frame of the recording in microseconds since the epoch, or -1 if it is empty
+     */
+    public long getStartTimeMicros() {
+        return entries.isEmpty() ? -1 : entries.get(0).receiveTimeMicros();
+    }
+
+    /**
+     * Find the last entry at or before a time in the recording.
+     *
+     * @param seconds the time since the start of the recording
+     * @return the entry, or null if the recording is empty
+     */
+    public Entry findTime(double seconds) {
+        long time = getStartTimeMicros() + (long) (seconds * 1_000_000);
+
+        Entry found = null;
+        for (Entry entry : entries) {
+            if (entry.receiveTimeMicros() > time) {
+                break;
+            }
+            found = entry;
+        }
+        return found == null && !entries.isEmpty() ? entries.get(0) : found;
+    }
+
+    /**
+     * Find the first frame with a command counter.
+     *
+     * @param commandCounter the command counter of the referee
+     * @return the entry, or null if the command counter does not occur
+     */
+    public Entry findCommandCounter(int commandCounter) {
+        for (Entry entry : entries) {
+            if (entry.commandChanged() && entry.commandCounter() == commandCounter) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find an occurrence of a command, for example the second free kick for blue in the second half.
+     *
+     * @param command    the command
+     * @param stage      the stage the command should be given in, or null for any stage
+     * @param occurrence which occurrence of the command to find, starting at 1
+     * @return the entry, or null if the command does not occur that often
+     */
+    public Entry findCommand(SslGcRefereeMessage.SSL_Referee.Command command, SslGcRefereeMessage.SSL_Referee.Stage stage, int occurrence) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.commandChanged() && entry.commandValue() == command.getNumber()
+                    && (stage == null || entry.stageValue() == stage.getNumber()) && ++count == occurrence) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the checkpoint to start replaying from to get to an entry.
+     *
+     * @param target the entry to get to
+     * @return the last checkpoint at or before the entry, or null if the replay has to start at the beginning
+     */
+    public Entry findCheckpoint(Entry target) {
+        Entry found = null;
+        for (Entry entry : entries) {
+            if (entry.isAfter(target)) {
+                break;
+            }
+            if (entry.checkpoint()) {
+                found = entry;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * An entry of the index, pointing at a frame of the recording.
+     *
+     * @param segment           the segment of the frame
+     * @param offset            the offset of the frame within the segment
+     * @param receiveTimeMicros the time the frame was received at, in microseconds since the epoch
+     * @param worldTime         the time of the world in the frame, in nanoseconds
+     * @param commandCounter    the command counter of the referee message in the frame
+     * @param commandValue      the number of the referee command in the frame
+     * @param stageValue        the number of the stage in the frame
+     * @param commandChanged    whether the command changed at this frame
+     * @param checkpoint        whether the replay can start at this frame
+     */
+    public record Entry(int segment, long offset, long receiveTimeMicros, long worldTime, int commandCounter,
+                        int commandValue, int stageValue, boolean commandChanged, boolean checkpoint) {
+        /**
+         * @return the referee command in the frame, or null if it is unknown
+         */
+        public SslGcRefereeMessage.SSL_Referee.Command getCommand() {
+            return SslGcRefereeMessage.SSL_Referee.Command.forNumber(commandValue);
+        }
+
+        /**
+         * @return the stage in the frame, or null if it is unknown
+         */
+        public SslGcRefereeMessage.SSL_Referee.Stage getStage() {
+            return SslGcRefereeMessage.SSL_Referee.Stage.forNumber(stageValue);
+        }
+
+        /**
+         * @param other another entry of the same recording
+         * @return true if this entry comes after the other entry in the recording
+         */
+        public boolean isAfter(Entry other) {
+            return segment > other.segment || segment == other.segment && offset > other.offset;
+        }
+
+        /**
+         * @param frame a frame of the same recording
+         * @return true if the entry points at the frame
+         */
+        public boolean pointsAt(RecordingReader.RecordedFrame frame) {
+            return segment == frame.segment() && offset == frame.offset();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package nl.roboteamtwente.autoref.recording;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the frames of a recording made by {@link MatchRecorder} in order, across all of its segments.
+ */
+public class RecordingReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path directory;
+
+    private int segment = -1;
+    private FileChannel channel;
+    private DataInputStream input;
+    private long position;
+
+    /**
+     * @param directory the directory of the recording
+     * @throws IOException if the recording has no first segment or it is not a valid segment
+     */
+    public RecordingReader(Path directory) throws IOException {
+        this.directory = directory;
+        if (!openSegment(0, RecordingFormat.SEGMENT_HEADER_SIZE)) {
+            throw new IOException("No recording found in " + directory);
+        }
+    }
+
+    /**
+     * Read the next frame of the recording.
+     *
+     * @return the next frame, or null if the end of the recording is reached
+     * @throws IOException if the recording could not be read
+     */
+    public RecordedFrame next() throws IOException {
+        while (channel != null) {
+            long offset = position;
+
+            int length;
+            try {
+                length = input.readInt();
+            } catch (EOFException e) {
+                // end of this segment, continue with the next one
+                if (!openSegment(segment + 1, RecordingFormat.SEGMENT_HEADER_SIZE)) {
+                    return null;
+                }
+                continue;
+            }
+
+            try {
+                long receiveTimeMicros = input.readLong();
+                byte[] data = new byte[length];
+                input.readFully(data);
+
+                position += RecordingFormat.RECORD_HEADER_SIZE + length;
+                return new RecordedFrame(segment, offset, receiveTimeMicros, data);
+            } catch (EOFException e) {
+                // the recording was cut off in the middle of a frame, for example because the AutoRef crashed
+                System.err.println("Recording ends with an incomplete frame in segment " + segment + " at offset " + offset);
+                closeSegment();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Continue reading at the given position, which must be the start of a frame as returned in {@link RecordedFrame}.
+     *
+     * @param segment the segment of the frame
+     * @param offset  the offset of the frame within the segment
+     * @throws IOException if the segment could not be opened
+     */
+    public void seek(int segment, long offset) throws IOException {
+        if (!openSegment(segment, offset)) {
+            throw new IOException("Segment " + segment + " does not exist in " + directory);
+        }
+    }
+
+    /**
+     * @return the directory of the recording
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    private boolean openSegment(int segment, long offset) throws IOException {
+        closeSegment();
+
+        Path path = RecordingFormat.segmentPath(directory, segment);
+        if (!Files.exists(path)) {
+            return false;
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        this.segment = segment;
+
+        int magic = input.readInt();
+        int version = input.readInt();
+        int number = input.readInt();
+        if (magic != RecordingFormat.MAGIC) {
+            throw new IOException(path + " is not a recording segment");
+        }
+        if (version != RecordingFormat.VERSION) {
+            throw new IOException(path + " has unsupported version " + version);
+        }
+        if (number != segment) {
+            throw new IOException(path + " contains segment " + number);
+        }
+
+        if (offset != RecordingFormat.SEGMENT_HEADER_SIZE) {
+            channel.position(offset);
+            this.input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        }
+        this.position = offset;
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            input = null;
+        }
+    }
+
+    /**
+     * A frame of a recording.
+     *
+     * @param segment           the segment the frame is in
+     * @param offset            the offset of the frame within the segment
+     * @param receiveTimeMicros the time the frame was received at, in microseconds since the epoch
+     * @param data              the serialized State packet
+     */
+    public record RecordedFrame(int segment, long offset, long receiveTimeMicros, byte[] data) {
+    }
+}
@@ -0,0 +1,422 @@
+package nl.roboteamtwente.autoref.recording;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.roboteamtwente.autoref.RuleViolation;
+import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.StateDecoder;
+import nl.roboteamtwente.autoref.input.SslLogReader;
+import nl.roboteamtwente.autoref.input.StateAssembler;
+import nl.roboteamtwente.autoref.input.VisionTracker;
+import nl.roboteamtwente.autoref.model.Division;
+import nl.roboteamtwente.proto.StateOuterClass;
+import org.robocup.ssl.proto.SslGcRefereeMessage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Feeds the frames of a recording straight into an AutoRef, without World, the GameController or any sockets.
+ * <p>
+ * By default the frames are processed as fast as possible, which makes it possible to run a whole match through
+ * the validators in seconds. With a speed set, the frames are paced by the time they were received at, so a
+ * speed of 1 replays the match in real time.
+ * <p>
+ * Besides recordings made by {@link MatchRecorder}, standard SSL log files can be replayed, see
+ * {@link #run(SslLogReader, StateAssembler)}.
+ */
+public class ReplayDriver {
+    private final SSLAutoRef autoRef;
+    private final double speed;
+
+    private Consumer<ReplayedViolation> onViolation;
+    private LongConsumer onFrameProcessed;
+
+    private long frames;
+    private long invalidFrames;
+    private long violations;
+    private long processingNanos;
+    private long startTimeMicros = -1;
+
+    // the first frame that was paced, the replay is paced relative to it
+    private long startNanos;
+    private long startReceiveTimeMicros = -1;
+
+    /**
+     * @param autoRef the AutoRef to feed the frames to, which should not be started
+     * @param speed   the replay speed relative to real time, or 0 to replay as fast as possible
+     */
+    public ReplayDriver(SSLAutoRef autoRef, double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("The replay speed can not be negative, got " + speed);
+        }
+
+        this.autoRef = autoRef;
+        this.speed = speed;
+    }
+
+    /**
+     * Replay all remaining frames of the reader.
+     *
+     * @param reader the recording to replay
+     * @throws IOException if the recording could not be read
+     */
+    public void run(RecordingReader reader) throws IOException {
+        RecordingReader.RecordedFrame frame;
+        while ((frame = reader.next()) != null && !Thread.currentThread().isInterrupted()) {
+            pace(frame.receiveTimeMicros());
+            process(frame, false);
+        }
+    }
+
+    /**
+     * Replay all remaining messages of an SSL log file, with a State assembled for every tracker frame.
+     *
+     * @param reader    the log file to replay
+     * @param assembler the assembler to build the States with
+     * @throws IOException if the log file could not be read
+     */
+    public void run(SslLogReader reader, StateAssembler assembler) throws IOException {
+        SslLogReader.LogMessage message;
+        while ((message = reader.next()) != null && !Thread.currentThread().isInterrupted()) {
+            StateOuterClass.State state;
+            try {
+                state = assembler.accept(message);
+            } catch (InvalidProtocolBufferException e) {
+                invalidFrames++;
+                continue;
+            }
+
+            if (state != null) {
+                long receiveTimeMicros = message.timestamp() / 1000;
+                pace(receiveTimeMicros);
+                process(state, receiveTimeMicros, false);
+            }
+        }
+    }
+
+    /**
+     * Wait until the time a frame was received at, relative to the first replayed frame, if the replay is paced.
+     */
+    private void pace(long receiveTimeMicros) {
+        if (startTimeMicros < 0) {
+            startTimeMicros = receiveTimeMicros;
+        }
+
+        if (speed > 0) {
+            if (startReceiveTimeMicros < 0) {
+                startNanos = System.nanoTime();
+                startReceiveTimeMicros = receiveTimeMicros;
+            }
+
+            long deadline = startNanos + (long) ((receiveTimeMicros - startReceiveTimeMicros) * 1000 / speed);
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    /**
+     * Move the reader to an entry of the index. The frames from the checkpoint before the entry up to the entry
+     * are processed without reporting violations, so the AutoRef is in the right state when the entry is reached.
+     * The frame of the entry itself is processed normally, {@link #run(RecordingReader)} continues after it.
+     *
+     * @param reader the reader of the recording
+     * @param index  the index of the recording
+     * @param target the entry to move to
+     * @throws IOException if the recording could not be read
+     */
+    public void seek(RecordingReader reader, RecordingIndex index, RecordingIndex.Entry target) throws IOException {
+        RecordingIndex.Entry checkpoint = index.findCheckpoint(target);
+        if (checkpoint != null) {
+            reader.seek(checkpoint.segment(), checkpoint.offset());
+        } else {
+            reader.seek(0, RecordingFormat.SEGMENT_HEADER_SIZE);
+        }
+
+        RecordingReader.RecordedFrame frame;
+        while ((frame = reader.next()) != null) {
+            boolean reached = target.pointsAt(frame);
+            process(frame, !reached);
+            if (reached) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run a single frame through the AutoRef.
+     *
+     * @param frame  the frame to process
+     * @param silent true to only update the state of the AutoRef, without counting the frame or reporting violations
+     */
+    public void process(RecordingReader.RecordedFrame frame, boolean silent) {
+        long start = System.nanoTime();
+
+        StateOuterClass.State state;
+        try {
+            state = StateDecoder.decode(frame.data());
+        } catch (InvalidProtocolBufferException e) {
+            invalidFrames++;
+            return;
+        }
+
+        process(state, frame.receiveTimeMicros(), silent, start);
+    }
+
+    /**
+     * Run a single State through the AutoRef.
+     *
+     * @param state             the State to process
+     * @param receiveTimeMicros the time the State was received at, in microseconds since the epoch
+     * @param silent            true to only update the state of the AutoRef, without counting the frame or reporting violations
+     */
+    public void process(StateOuterClass.State state, long receiveTimeMicros, boolean silent) {
+        process(state, receiveTimeMicros, silent, System.nanoTime());
+    }
+
+    private void process(StateOuterClass.State state, long receiveTimeMicros, boolean silent, long start) {
+        autoRef.processWorldState(state);
+        List<RuleViolation> frameViolations = autoRef.getReferee().validate();
+        if (silent) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        processingNanos += elapsed;
+        frames++;
+        if (onFrameProcessed != null) {
+            onFrameProcessed.accept(elapsed);
+        }
+
+        for (RuleViolation violation : frameViolations) {
+            violations++;
+            if (onViolation != null) {
+                onViolation.accept(new ReplayedViolation(frames - 1, receiveTimeMicros, autoRef.getReferee().getGame().getTime(), violation));
+            }
+        }
+    }
+
+    /**
+     * @param onViolation called for every violation found in the replayed frames
+     */
+    public void setOnViolation(Consumer<ReplayedViolation> onViolation) {
+        this.onViolation = onViolation;
+    }
+
+    /**
+     * @param onFrameProcessed called with the time it took to process a frame in nanoseconds, after every frame
+     */
+    public void setOnFrameProcessed(LongConsumer onFrameProcessed) {
+        this.onFrameProcessed = onFrameProcessed;
+    }
+
+    /**
+     * @return the amount of frames processed
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the amount of frames that could not be decoded
+     */
+    public long getInvalidFrames() {
+        return invalidFrames;
+    }
+
+    /**
+     * @return the amount of violations found
+     */
+    public long getViolations() {
+        return violations;
+    }
+
+    /**
+     * @return the total time spent processing frames, in nanoseconds
+     */
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
+
+    /**
+     * @return the receive time of the start of the recording in microseconds since the epoch, which is the first frame
+     * processed unless set otherwise, or -1 if not known yet
+     */
+    public long getStartTimeMicros() {
+        return startTimeMicros;
+    }
+
+    /**
+     * @param startTimeMicros the receive time of the start of the recording in microseconds since the epoch
+     */
+    public void setStartTimeMicros(long startTimeMicros) {
+        this.startTimeMicros = startTimeMicros;
+    }
+
+    /**
+     * Find a command given as {@code COMMAND[,STAGE][,N]}, for example {@code DIRECT_FREE_BLUE,NORMAL_SECOND_HALF,2}.
+     */
+    private static RecordingIndex.Entry findCommand(RecordingIndex index, String spec) {
+        String[] parts = spec.split(",");
+        SslGcRefereeMessage.SSL_Referee.Command command = SslGcRefereeMessage.SSL_Referee.Command.valueOf(parts[0].toUpperCase());
+        SslGcRefereeMessage.SSL_Referee.Stage stage = null;
+        int occurrence = 1;
+
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].chars().allMatch(Character::isDigit)) {
+                occurrence = Integer.parseInt(parts[i]);
+            } else {
+                stage = SslGcRefereeMessage.SSL_Referee.Stage.valueOf(parts[i].toUpperCase());
+            }
+        }
+
+        return index.findCommand(command, stage, occurrence);
+    }
+
+    /**
+     * A violation found while replaying.
+     *
+     * @param frame             the index of the frame in the replay
+     * @param receiveTimeMicros the time the frame was received at, in microseconds since the epoch
+     * @param gameTime          the time of the game in the frame, in seconds
+     * @param violation         the violation
+     */
+    public record ReplayedViolation(long frame, long receiveTimeMicros, double gameTime, RuleViolation violation) {
+    }
+
+    public static void main(String[] args) {
+        Path recording = null;
+        double speed = 0;
+        Division division = Division.B;
+        boolean recycleGames = false;
+        boolean parallelValidators = false;
+        Double seekTime = null;
+        Integer seekCounter = null;
+        String seekCommand = null;
+        String trackerSource = null;
+        boolean visionTracker = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--speed=")) {
+                    speed = Double.parseDouble(arg.substring("--speed=".length()));
+                } else if (arg.equals("--realtime")) {
+                    speed = 1;
+                } else if (arg.startsWith("--division=")) {
+                    division = arg.substring("--division=".length()).equalsIgnoreCase("a") ? Division.A : Division.B;
+                } else if (arg.equals("--recycle-games")) {
+                    recycleGames = true;
+                } else if (arg.equals("--parallel-validators")) {
+                    parallelValidators = true;
+                } else if (arg.startsWith("--seek-time=")) {
+                    seekTime = Double.parseDouble(arg.substring("--seek-time=".length()));
+                } else if (arg.startsWith("--seek-counter=")) {
+                    seekCounter = Integer.parseInt(arg.substring("--seek-counter=".length()));
+                } else if (arg.startsWith("--seek-command=")) {
+                    seekCommand = arg.substring("--seek-command=".length());
+                } else if (arg.equals("--vision")) {
+                    visionTracker = true;
+                } else if (arg.startsWith("--tracker=")) {
+                    trackerSource = arg.substring("--tracker=".length());
+                } else if (!arg.startsWith("--") && recording == null) {
+                    recording = Path.of(arg);
+                } else {
+                    System.err.println("Unknown argument " + arg);
+                    System.exit(1);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Failed to parse speed or seek program argument.");
+            System.exit(1);
+            return;
+        }
+
+        if (recording == null) {
+            System.err.println("Usage: <recording directory | .log(.gz) file> [--speed=N | --realtime] [--division=A|B] [--recycle-games] [--parallel-validators]"
+                    + " [--seek-time=seconds | --seek-counter=N | --seek-command=COMMAND[,STAGE][,N]] [--tracker=source name | --vision]");
+            System.exit(1);
+            return;
+        }
+
+        SSLAutoRef autoRef = new SSLAutoRef();
+        autoRef.setDivision(division);
+        autoRef.setRecycleGames(recycleGames);
+        autoRef.setParallelValidators(parallelValidators);
+
+        ReplayDriver driver = new ReplayDriver(autoRef, speed);
+        driver.setOnViolation((replayed) -> {
+            double offset = (replayed.receiveTimeMicros() - driver.getStartTimeMicros()) / 1_000_000.0;
+            System.out.printf("[%d:%06.3f #%d] %s%n", (int) (offset / 60), offset % 60, replayed.frame(), replayed.violation());
+        });
+
+        boolean seek = seekTime != null || seekCounter != null || seekCommand != null;
+        boolean logFile = SslLogReader.isLogFile(recording);
+        if (seek && logFile) {
+            System.err.println("Seeking is only supported in recordings made with --record");
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (logFile) {
+            StateAssembler assembler = new StateAssembler();
+            assembler.setTrackerSource(trackerSource);
+            assembler.setVisionTracker(visionTracker ? new VisionTracker() : null);
+            try (SslLogReader reader = new SslLogReader(recording)) {
+                driver.run(reader, assembler);
+            } catch (IOException e) {
+                System.err.println("Failed to read log file " + recording);
+                e.printStackTrace();
+                System.exit(1);
+                return;
+            }
+        } else {
+            try (RecordingReader reader = new RecordingReader(recording)) {
+                if (seek) {
+                    RecordingIndex index = RecordingIndex.open(recording);
+                    RecordingIndex.Entry target;
+                    if (seekTime != null) {
+                        target = index.findTime(seekTime);
+                    } else if (seekCounter != null) {
+                        target = index.findCommandCounter(seekCounter);
+                    } else {
+                        try {
+                            target = findCommand(index, seekCommand);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Unknown command or stage in " + seekCommand);
+                            System.exit(1);
+                            return;
+                        }
+                    }
+
+                    if (target == null) {
+                        System.err.println("Seek target not found in recording " + recording);
+                        System.exit(1);
+                        return;
+                    }
+
+                    driver.setStartTimeMicros(index.getStartTimeMicros());
+                    driver.seek(reader, index, target);
+                }
+
+                driver.run(reader);
+            } catch (IOException e) {
+                System.err.println("Failed to read recording " + recording);
+                e.printStackTrace();
+                System.exit(1);
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.printf("Replayed %d frames (%d invalid) with %d violations in %.2f s, %.0f frames/s, %.1f us/frame in the referee%n",
+                driver.getFrames(), driver.getInvalidFrames(), driver.getViolations(), seconds, driver.getFrames() / seconds,
+                driver.getFrames() == 0 ? 0.0 : driver.getProcessingNanos() / 1000.0 / driver.getFrames());
+    }
+}
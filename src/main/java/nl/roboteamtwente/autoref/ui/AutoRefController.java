@@ -12,15 +12,20 @@ import javafx.scene.control.ListView;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
+import nl.roboteamtwente.autoref.GameControllerConnection;
 import nl.roboteamtwente.autoref.SSLAutoRef;
+import nl.roboteamtwente.autoref.metrics.MetricsServer;
 import nl.roboteamtwente.autoref.model.Division;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.ResourceBundle;
 
 public class AutoRefController implements Initializable {
     private SSLAutoRef sslAutoRef;
+    private MetricsServer metricsServer;
 
     @FXML
     public ComboBox<String> modeBox;
@@ -62,6 +67,18 @@ public class AutoRefController implements Initializable {
             });
         });
 
+        sslAutoRef.setOnGameEventRejected((rejected) -> {
+            System.out.println(rejected.getMessage());
+
+            Text rejectedText = new Text("[GC] " + rejected.getMessage() + " (" + rejected.getGameEvent().getType() + ")");
+            rejectedText.setFill(Color.RED);
+
+            Platform.runLater(() -> {
+                logList.getItems().add(new TextFlow(rejectedText));
+                logList.scrollTo(logList.getItems().size() - 1);
+            });
+        });
+
         modeBox.getItems().addAll("Passive", "Active");
         divisionBox.getItems().addAll("A", "B");
 
@@ -93,9 +110,23 @@ public class AutoRefController implements Initializable {
             String ipGameController = parameters.getNamed().getOrDefault("gc-ip", "127.0.0.1");
             int portWorld = Integer.parseInt(parameters.getNamed().getOrDefault("world-port", "5558"));
             int portGameController = Integer.parseInt(parameters.getNamed().getOrDefault("gc-port", "10007"));
+            int latencySummaryInterval = Integer.parseInt(parameters.getNamed().getOrDefault("latency-summary", "0"));
+            String metricsPort = parameters.getNamed().get("metrics-port");
+            int gcPipelineWindow = Integer.parseInt(parameters.getNamed().getOrDefault("gc-pipeline", "1"));
+            long gcMaxEventAge = Long.parseLong(parameters.getNamed().getOrDefault("gc-max-event-age", String.valueOf(GameControllerConnection.DEFAULT_MAX_EVENT_AGE)));
 
             boolean active = parameters.getUnnamed().contains("--active");
+            boolean fullDecode = parameters.getUnnamed().contains("--full-decode");
+            boolean recycleGames = parameters.getUnnamed().contains("--recycle-games");
+            boolean parallelValidators = parameters.getUnnamed().contains("--parallel-validators");
+            boolean gcUnsigned = parameters.getUnnamed().contains("--gc-unsigned");
             String divisionString = parameters.getNamed().getOrDefault("division", "B").toLowerCase();
+            String gcKeyFile = parameters.getNamed().get("gc-key");
+            String recordingDirectory = parameters.getNamed().get("record");
+            String overflowString = parameters.getNamed().getOrDefault("gc-queue-overflow", "oldest").toLowerCase();
+            String inputString = parameters.getNamed().getOrDefault("input", "world").toLowerCase();
+            String trackerSource = parameters.getNamed().get("tracker");
+            String networkInterface = parameters.getNamed().get("interface");
 
             Division division;
             if (divisionString.equals("a")) {
@@ -108,19 +139,82 @@ public class AutoRefController implements Initializable {
                 return;
             }
 
+            GameControllerConnection.OverflowPolicy overflowPolicy;
+            if (overflowString.equals("oldest")) {
+                overflowPolicy = GameControllerConnection.OverflowPolicy.DROP_OLDEST;
+            } else if (overflowString.equals("newest")) {
+                overflowPolicy = GameControllerConnection.OverflowPolicy.DROP_NEWEST;
+            } else {
+                System.err.println("Unknown queue overflow policy " + overflowString);
+                System.exit(1);
+                return;
+            }
+
+            if (gcPipelineWindow < 1 || (gcPipelineWindow > 1 && !gcUnsigned)) {
+                System.err.println("The Game Controller pipeline must be at least 1, and can only be above 1 with --gc-unsigned.");
+                System.exit(1);
+                return;
+            }
+
+            if (gcUnsigned && gcKeyFile != null) {
+                System.err.println("--gc-unsigned cannot be used with --gc-key, messages are always signed with a key file.");
+                System.exit(1);
+                return;
+            }
+
+            SSLAutoRef.InputSource inputSource;
+            if (inputString.equals("world")) {
+                inputSource = SSLAutoRef.InputSource.WORLD;
+            } else if (inputString.equals("tracker")) {
+                inputSource = SSLAutoRef.InputSource.TRACKER;
+            } else if (inputString.equals("vision")) {
+                inputSource = SSLAutoRef.InputSource.VISION;
+            } else {
+                System.err.println("Unknown input " + inputString);
+                System.exit(1);
+                return;
+            }
+
             modeBox.setValue(active ? "Active" : "Passive");
             divisionBox.setValue(division.toString());
 
             sslAutoRef.setActive(active);
             sslAutoRef.setDivision(division);
+            sslAutoRef.setFullStateDecoding(fullDecode);
+            sslAutoRef.setRecycleGames(recycleGames);
+            sslAutoRef.setParallelValidators(parallelValidators);
+            sslAutoRef.setGcOverflowPolicy(overflowPolicy);
+            sslAutoRef.setGcKeyFile(gcKeyFile != null ? Path.of(gcKeyFile) : null);
+            sslAutoRef.setGcSigning(!gcUnsigned);
+            sslAutoRef.setGcPipelineWindow(gcPipelineWindow);
+            sslAutoRef.setGcMaxEventAge(gcMaxEventAge);
+            sslAutoRef.setRecordingDirectory(recordingDirectory != null ? Path.of(recordingDirectory) : null);
+            sslAutoRef.setInputSource(inputSource);
+            sslAutoRef.setTrackerSource(trackerSource);
+            sslAutoRef.setNetworkInterface(networkInterface);
+            sslAutoRef.setLatencySummaryInterval(latencySummaryInterval);
             sslAutoRef.start(ipWorld, ipGameController, portWorld, portGameController);
+
+            if (metricsPort != null) {
+                metricsServer = new MetricsServer(Integer.parseInt(metricsPort));
+                metricsServer.addAutoRef("main", sslAutoRef);
+                try {
+                    metricsServer.start();
+                } catch (IOException e) {
+                    System.err.println("Failed to serve metrics on port " + metricsPort + ", continuing without metrics.");
+                    e.printStackTrace();
+                }
+            }
         } catch (NumberFormatException e) {
-            System.err.println("Failed to parse port program argument.");
+            System.err.println("Failed to parse port, pipeline, max event age or latency summary program argument.");
             System.exit(1);
         }
     }
 
     public void stop() {
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
         sslAutoRef.stop();
     }
 }
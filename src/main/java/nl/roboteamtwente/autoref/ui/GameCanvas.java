@@ -5,6 +5,7 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import nl.roboteamtwente.autoref.SSLAutoRef;
 import nl.roboteamtwente.autoref.model.FieldLine;
+import nl.roboteamtwente.autoref.model.Game;
 import nl.roboteamtwente.autoref.model.Robot;
 import nl.roboteamtwente.autoref.model.TeamColor;
 import nl.roboteamtwente.autoref.model.Vector2;
@@ -56,13 +57,15 @@ public class GameCanvas extends Canvas {
     public void redraw() {
         GraphicsContext g = getGraphicsContext2D();
 
-        if (sslAutoRef.getReferee().getGame() == null) {
+        // get the game once, so the whole drawing shows the same frame even when a new one arrives meanwhile
+        Game game = sslAutoRef.getReferee().getGame();
+        if (game == null) {
             return;
         }
 
         float scale = (float) Math.min(
-                getWidth() / (sslAutoRef.getReferee().getGame().getField().getSize().getX() + 0.8f),
-                getHeight() / (sslAutoRef.getReferee().getGame().getField().getSize().getY() + 0.5f)
+                getWidth() / (game.getField().getSize().getX() + 0.8f),
+                getHeight() / (game.getField().getSize().getY() + 0.5f)
         );
         ScaledDrawer s = new ScaledDrawer(g, new Vector2(0, 0), scale);
 
@@ -70,9 +73,9 @@ public class GameCanvas extends Canvas {
         g.fillRect(0, 0, getWidth(), getHeight());
 
         g.setFill(Color.WHITE);
-        g.fillText(sslAutoRef.getReferee().getGame().getState().toString(), 10.0, 20.0);
+        g.fillText(game.getState().toString(), 10.0, 20.0);
 
-        for (FieldLine fieldLine : sslAutoRef.getReferee().getGame().getField().getLines()) {
+        for (FieldLine fieldLine : game.getField().getLines()) {
             s.drawLine(fieldLine.p1(), fieldLine.p2(), 2, Color.WHITE);
 
 //            g.setFill(Color.WHITE);
@@ -82,7 +85,7 @@ public class GameCanvas extends Canvas {
 //                    s.translateY((fieldLine.p1().getY() + fieldLine.p2().getY()) / 2));
         }
 
-        for (Robot robot : sslAutoRef.getReferee().getGame().getRobots()) {
+        for (Robot robot : game.getRobots()) {
             s.drawCircle(robot.getPosition().xy(), 0.2f, robot.getTeam().getColor() == TeamColor.BLUE ? Color.BLUE : Color.YELLOW);
             s.drawCircle(robot.getPosition().xy(), 0.1f, robot.isGoalkeeper() ? Color.BLACK : Color.WHITE);
             s.drawLine(robot.getPosition().xy(), robot.getPosition().xy().add(new Vector2(0.15f, 0.0f).rotate(robot.getAngle())), 2, Color.CYAN);
@@ -93,6 +96,6 @@ public class GameCanvas extends Canvas {
             g.fillText(robot.getTeam().getColor() + " " + robot.getId(), x, y - 20f);
         }
 
-        s.drawCircle(sslAutoRef.getReferee().getGame().getBall().getPosition().xy(), 0.15f, Color.RED);
+        s.drawCircle(game.getBall().getPosition().xy(), 0.15f, Color.RED);
     }
 }
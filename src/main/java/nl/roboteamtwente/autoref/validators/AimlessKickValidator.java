@@ -7,7 +7,6 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
-
 public class AimlessKickValidator implements RuleValidator {
     private static final double GRACE_PERIOD = 2.0;
     private double lastViolation = Double.NEGATIVE_INFINITY;
@@ -33,7 +32,7 @@ public class AimlessKickValidator implements RuleValidator {
         Robot byBot = game.getRobot(touch.by());
 
         //Check if the bot retrieved was in their own half before the ball went out.
-        if (game.getField().isInOwnHalf(byBot.getTeam().getSide(), touch.endLocation().xy())
+        if (game.getField().getZones().isInOwnHalf(byBot.getTeam().getSide(), touch.endLocation().getX())
                 && game.getTime() - lastViolation > GRACE_PERIOD) {
 
             //If the ball left the right goal line and the side of the bot was left then an aimless kick happened.
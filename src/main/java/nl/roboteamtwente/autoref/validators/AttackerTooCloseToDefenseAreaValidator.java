@@ -7,10 +7,8 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import static java.lang.Math.abs;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AttackerTooCloseToDefenseAreaValidator implements RuleValidator {
 
@@ -20,14 +18,19 @@ public class AttackerTooCloseToDefenseAreaValidator implements RuleValidator {
     private static final double GRACE_PERIOD = 2.0;
 
     /**
-     * Map of the last violation with a grace period
+     * Time of the last violation of every robot, for the grace period
      */
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    private final RobotTimes lastViolations = new RobotTimes();
 
     /**
      * The distance from the defender area lines that the violation will begin to trigger
      */
-    private static final double MAX_DISTANCE = 0.2;
+    private static final float MAX_DISTANCE = 0.2f;
+
+    /**
+     * Robots around a defense area, reused between frames
+     */
+    private final List<Robot> nearbyRobots = new ArrayList<>();
 
     /**
      * The validate method of this validator checks if there is a robot within 0.2m of the opponent's defender area.
@@ -46,67 +49,39 @@ public class AttackerTooCloseToDefenseAreaValidator implements RuleValidator {
             return null;
         }
 
-        Field field = game.getField();
+        FieldZones zones = game.getField().getZones();
 
-        // Loop through all robots and check if they are in the other team's defender area
-        for (Robot robot : game.getRobots()) {
-
-            TeamColor teamColor = robot.getTeam().getColor();
+        // Check for both teams if their robots are in or close to the other team's defender area
+        for (TeamColor teamColor : TeamColor.values()) {
 
             // Opponent's side
             Side opponentSide = game.getTeam(teamColor).getSide().getOpposite();
-            String sideString = opponentSide == Side.LEFT ? "Left" : "Right";
-
-            // Get FieldLine for the defending side
-            FieldLine penaltyStretch = field.getLineByName(sideString + "PenaltyStretch");
-
-            // Distance from the defender area (returns 0 if robot is inside)
-            float distance = 0;
-
-            // Easier to read
-            float robotX = robot.getPosition().getX() * opponentSide.getCardinality();
-            float robotY = robot.getPosition().getY();
-            float lineX = penaltyStretch.p1().getX() * opponentSide.getCardinality();
-            float lineY = penaltyStretch.p1().getY();
-
-            // Check if robot is within defender area
-            if (field.isInDefenseArea(opponentSide, robot.getPosition().xy())) {
-                if (!lastViolations.containsKey(robot.getIdentifier()) || lastViolations.get(robot.getIdentifier()) + GRACE_PERIOD < game.getTime()) {
-                    lastViolations.put(robot.getIdentifier(), game.getTime());
-                    return new Violation(robot.getTeam().getColor(), robot.getIdentifier(), robot.getPosition().xy(), distance, game.getBall().getPosition().xy());
-                }
+            if (!zones.hasDefenseArea(opponentSide)) {
+                continue;
             }
 
-            // Check if robot's X is within 0.2 m of the defender area
-            if (robotX > lineX - MAX_DISTANCE) {
-
-                // Check if robot's Y is also within 0.2m of the defender area
-                // Can use the absolute value of the Y position as the Y coordinate is mirrored from the middle line of the field
-                if (abs(robotY) < abs(lineY) + MAX_DISTANCE) {
+            // Only robots in the rectangle around the defender area can be close to it, the area is open towards the goal
+            float frontX = zones.getDefenseAreaFrontX(opponentSide);
+            float minX = opponentSide == Side.LEFT ? Float.NEGATIVE_INFINITY : frontX - MAX_DISTANCE;
+            float maxX = opponentSide == Side.LEFT ? frontX + MAX_DISTANCE : Float.POSITIVE_INFINITY;
+            nearbyRobots.clear();
+            game.getRobotGrid().getRobotsInRectangle(minX, zones.getDefenseAreaBottomY(opponentSide) - MAX_DISTANCE,
+                    maxX, zones.getDefenseAreaTopY(opponentSide) + MAX_DISTANCE, nearbyRobots);
+
+            for (Robot robot : nearbyRobots) {
+                if (robot.getTeam().getColor() != teamColor) {
+                    continue;
+                }
 
-                    if (abs(robotY) < abs(lineY)) {
-                        // Robot is in front of the line
-                        distance = lineX - robotX;
-                    } else if (robotX > lineX) {
-                        // Robot is above or below the defender area, within 0.2m
-                        distance = abs(robotY) - abs(lineY);
-                    }
+                // Distance from the defender area (returns 0 if robot is inside)
+                float distance = zones.distanceToDefenseArea(opponentSide, robot.getPosition().getX(), robot.getPosition().getY());
 
-                    // Check if robot is within one of the corners and calculate distance to the corner
-                    // Can get either p1 or p2, they should have the same coordinates when taken the absolute Y value
-                    if (robotX < lineX && abs(robotY) > abs(lineY)) {
-                        // Robot is in one of the corners, use pythagorean theorem to get distance to that corner
-                        distance = (float) Math.sqrt(Math.pow(lineX - robotX, 2) + Math.pow(abs(lineY) - abs(robotY), 2));
-                        if (distance > MAX_DISTANCE) {
-                            // Robot is not within 0.2m of the corner, so check next robot
-                            continue;
-                        }
-                    }
+                // Check if robot is within 0.2m of the defender area, or inside it
+                if (distance < MAX_DISTANCE || zones.isInDefenseArea(opponentSide, robot.getPosition().getX(), robot.getPosition().getY(), 0)) {
 
                     // Finally check if the violation has not been triggered for this robot yet in the past 2 seconds
-                    if (!lastViolations.containsKey(robot.getIdentifier()) || lastViolations.get(robot.getIdentifier()) + GRACE_PERIOD < game.getTime()) {
+                    if (!lastViolations.isWithin(robot.getIdentifier(), game.getTime(), GRACE_PERIOD)) {
                         lastViolations.put(robot.getIdentifier(), game.getTime());
-                        // If this returns 0 and the robot is not in the defender area, something's wrong
                         return new Violation(robot.getTeam().getColor(), robot.getIdentifier(), robot.getPosition().xy(), distance, game.getBall().getPosition().xy());
                     }
                 }
@@ -7,9 +7,6 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class AttackerTouchedBallInDefenseAreaValidator implements RuleValidator {
 
     /**
@@ -18,9 +15,9 @@ public class AttackerTouchedBallInDefenseAreaValidator implements RuleValidator
     private static final double GRACE_PERIOD = 2.0;
 
     /**
-     * Violations map to determine who did the violation and when.
+     * Time of the last violation of every robot.
      */
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    private final RobotTimes lastViolations = new RobotTimes();
 
     /**
      * The validate method of this class determines whether an attacker has touched the ball
@@ -35,11 +32,11 @@ public class AttackerTouchedBallInDefenseAreaValidator implements RuleValidator
     @Override
     public RuleViolation validate(Game game) {
         for (Robot robot : game.getBall().getRobotsTouching()) {
-            if (!game.getField().isInDefenseArea(robot.getTeam().getSide().getOpposite(), robot.getPosition().xy())) {
+            if (!game.getField().getZones().isInDefenseArea(robot.getTeam().getSide().getOpposite(), robot.getPosition().getX(), robot.getPosition().getY(), 0)) {
                 continue;
             }
 
-            if (!lastViolations.containsKey(robot.getIdentifier()) || lastViolations.get(robot.getIdentifier()) + GRACE_PERIOD < game.getTime()) {
+            if (!lastViolations.isWithin(robot.getIdentifier(), game.getTime(), GRACE_PERIOD)) {
                 lastViolations.put(robot.getIdentifier(), game.getTime());
                 return new Violation(robot.getTeam().getColor(),robot.getIdentifier(), robot.getPosition().xy());
             }
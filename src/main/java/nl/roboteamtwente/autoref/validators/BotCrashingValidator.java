@@ -8,8 +8,8 @@ import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BotCrashingValidator implements RuleValidator {
 
@@ -17,8 +17,15 @@ public class BotCrashingValidator implements RuleValidator {
     private static final float SPEED_VECTOR_THRESHOLD = 1.5f;
     private static final float MIN_SPEED_DIFFERENCE = 0.3f;
     private static final double GRACE_PERIOD = 2.0;
-    //Map from robotId -> last violation time
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    //Time of the last violation of every robot
+    private final RobotTimes lastViolations = new RobotTimes();
+    //Robots close to the robot being checked, reused between frames
+    private final List<Robot> nearbyRobots = new ArrayList<>();
+    //Positions and velocities of the pair of robots being checked, reused between frames
+    private final Vector2 robotYellowPos = new Vector2(0, 0);
+    private final Vector2 robotBluePos = new Vector2(0, 0);
+    private final Vector2 robotYellowVel = new Vector2(0, 0);
+    private final Vector2 robotBlueVel = new Vector2(0, 0);
 
     /**
      * Calculate the angle between 2 vectors
@@ -48,18 +55,22 @@ public class BotCrashingValidator implements RuleValidator {
      */
     public static float calculateCollisionVelocity(Vector2 position1, Vector2 velocity1, Vector2 position2, Vector2 velocity2) {
         // Calculate velocity difference vector
-        Vector2 velocityDifference = velocity2.subtract(velocity1);
+        float velocityDifferenceX = velocity2.getX() - velocity1.getX();
+        float velocityDifferenceY = velocity2.getY() - velocity1.getY();
 
         // Calculate position difference vector
-        Vector2 positionDifference = position2.subtract(position1);
+        float positionDifferenceX = position2.getX() - position1.getX();
+        float positionDifferenceY = position2.getY() - position1.getY();
 
         // Calculate projection of velocity difference vector onto position difference vector
-        float scalar = velocityDifference.dotProduct(positionDifference) / (positionDifference.magnitude() * positionDifference.magnitude());
+        float scalar = (velocityDifferenceX * positionDifferenceX + velocityDifferenceY * positionDifferenceY)
+                / (positionDifferenceX * positionDifferenceX + positionDifferenceY * positionDifferenceY);
 
-        Vector2 projection = new Vector2(positionDifference.getX() * scalar, positionDifference.getY() * scalar);
+        float projectionX = positionDifferenceX * scalar;
+        float projectionY = positionDifferenceY * scalar;
 
-        // Return the result
-        return projection.magnitude();
+        // Return the length of the projection
+        return (float) Math.sqrt(projectionX * projectionX + projectionY * projectionY);
     }
 
 
@@ -71,16 +82,7 @@ public class BotCrashingValidator implements RuleValidator {
      * @return true if bot still under GRACE_PERIOD
      */
     private boolean botStillOnCoolDown(RobotIdentifier bot, double currentTimeStamp) {
-        if (lastViolations.containsKey(bot)) {
-            Double timestampLastViolation = lastViolations.get(bot);
-            if (currentTimeStamp <= timestampLastViolation + GRACE_PERIOD) {
-                return true;
-            } else {
-                lastViolations.remove(bot);
-                return false;
-            }
-        }
-        return false;
+        return lastViolations.isWithin(bot, currentTimeStamp, GRACE_PERIOD);
     }
 
     /**
@@ -101,23 +103,29 @@ public class BotCrashingValidator implements RuleValidator {
             if (botStillOnCoolDown(robotYellow.getIdentifier(), game.getTime())) {
                 continue;
             }
-            for (Robot robotBlue : game.getTeam(TeamColor.BLUE).getRobots()) {
+            nearbyRobots.clear();
+            game.getRobotGrid().getRobotsInRadius(robotYellow.getPosition().getX(), robotYellow.getPosition().getY(), BOT_CRASH_DISTANCE, nearbyRobots);
+            for (Robot robotBlue : nearbyRobots) {
+                if (robotBlue.getTeam().getColor() != TeamColor.BLUE) {
+                    continue;
+                }
                 if (botStillOnCoolDown(robotBlue.getIdentifier(), game.getTime())) {
                     continue;
                 }
-                Vector2 robotYellowPos = robotYellow.getPosition().xy();
-                Vector2 robotBluePos = robotBlue.getPosition().xy();
-                Vector2 robotYellowVel = robotYellow.getVelocity().xy();
-                Vector2 robotBlueVel = robotBlue.getVelocity().xy();
-                float distanceBetweenRobots = robotYellowPos.distance(robotBluePos);
+                float distanceBetweenRobots = robotYellow.getPosition().distance2d(robotBlue.getPosition());
 
                 if (distanceBetweenRobots <= BOT_CRASH_DISTANCE) {
+                    robotYellow.getPosition().xy(robotYellowPos);
+                    robotBlue.getPosition().xy(robotBluePos);
+                    robotYellow.getVelocity().xy(robotYellowVel);
+                    robotBlue.getVelocity().xy(robotBlueVel);
+
                     // projection length of difference between speed vector
                     float crashSpeed = calculateCollisionVelocity(robotBluePos, robotBlueVel, robotYellowPos, robotYellowVel);
 
                     if (crashSpeed > SPEED_VECTOR_THRESHOLD) {
                         //speed difference
-                        float speedDiff = robotBlueVel.magnitude() - robotYellowVel.magnitude();
+                        float speedDiff = game.getFrameContext().getRobotSpeed(robotBlue) - game.getFrameContext().getRobotSpeed(robotYellow);
                         speedDiff = roundFloatTo1DecimalPlace(speedDiff);
                         //center position of 2 robots
                         Vector2 location = new Vector2(roundFloatTo1DecimalPlace((float) ((robotBluePos.getX() + robotYellowPos.getX()) * 0.5))
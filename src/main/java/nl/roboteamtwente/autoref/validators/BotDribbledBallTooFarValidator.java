@@ -15,29 +15,41 @@ public class BotDribbledBallTooFarValidator implements RuleValidator {
     private static final double GRACE_PERIOD = 2.0;
 
     /**
-     * Violations map to determine who did the violation and when.
+     * Time of the last violation of every robot.
      */
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    private final RobotTimes lastViolations = new RobotTimes();
+
+    /**
+     * End time of the last finished touch of every robot that was checked.
+     */
+    private final RobotTimes lastChecked = new RobotTimes();
+
+    /**
+     * The newest touch of every robot that went too far but is not reported yet, because the robot was reported
+     * less than the grace period ago.
+     */
+    private final Map<RobotIdentifier, Touch> unreported = new HashMap<>();
 
     @Override
     public RuleViolation validate(Game game) {
-        if (game.getFinishedTouches().isEmpty()) {
-            return null;
-        }
-
-        for (Touch touch : game.getFinishedTouches()) {
-            Vector2 startLocation = touch.startLocation().xy();
-            Vector2 endLocation = touch.endLocation().xy();
-            Robot robot = game.getRobot(touch.by());
-            float dist = startLocation.distance(endLocation);
+        // only the last finished touch of every robot can be new since the previous frame
+        for (Robot robot : game.getRobots()) {
+            RobotIdentifier identifier = robot.getIdentifier();
+            Touch touch = game.getLastFinishedTouch(identifier);
+            if (touch != null && touch.endTime() > lastChecked.get(identifier)) {
+                lastChecked.put(identifier, touch.endTime());
 
-            if (dist <= 1) {
-                continue;
+                if (touch.startLocation().distance2d(touch.endLocation()) > 1) {
+                    unreported.put(identifier, touch);
+                }
             }
 
-            if (!lastViolations.containsKey(robot.getIdentifier()) || lastViolations.get(robot.getIdentifier()) + GRACE_PERIOD < game.getTime()) {
-                lastViolations.put(robot.getIdentifier(), game.getTime());
-                return new Violation(robot.getTeam().getColor(), robot.getId(), startLocation, endLocation);
+            // a touch that went too far during the grace period is reported once the grace period is over
+            Touch tooFar = unreported.get(identifier);
+            if (tooFar != null && !lastViolations.isWithin(identifier, game.getTime(), GRACE_PERIOD)) {
+                unreported.remove(identifier);
+                lastViolations.put(identifier, game.getTime());
+                return new Violation(robot.getTeam().getColor(), robot.getId(), tooFar.startLocation().xy(), tooFar.endLocation().xy());
             }
         }
         return null;
@@ -51,6 +63,8 @@ public class BotDribbledBallTooFarValidator implements RuleValidator {
     @Override
     public void reset(Game game) {
         lastViolations.clear();
+        lastChecked.clear();
+        unreported.clear();
     }
 
 
@@ -8,28 +8,38 @@ import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BotInterferedPlacementValidator implements RuleValidator {
     private static final double GRACE_PERIOD = 2.0;
 
     private static final float MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT = 0.5f;
 
-    //Map from robotId -> last enter the distance <= MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT
-    private final Map<RobotIdentifier, Double> lastEnterForbiddenArea = new HashMap<>();
+    //Time every robot last entered the distance <= MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT
+    private final RobotTimes lastEnterForbiddenArea = new RobotTimes();
+
+    //Robots in the corridor between the ball and the placement position, reused between frames
+    private final List<Robot> nearbyRobots = new ArrayList<>();
+    private final RobotFlags robotsInForbiddenArea = new RobotFlags();
+
+    //Positions of the current frame, reused between frames and only copied into a violation
+    private final Vector2 placementPos = new Vector2(0, 0);
+    private final Vector2 ballPos = new Vector2(0, 0);
+    private final Vector2 robotPos = new Vector2(0, 0);
 
     /**
      * Check if the distance between a point to
      * the stadium shape formed by the line capped by point 1 and point 2
      * smaller than the distance threshold
      *
-     * @param p1 - first point of the line
-     * @param p2 - second point of the line
-     * @param p3 - the point to calculate distance to the line
+     * @param p1           - first point of the line
+     * @param p2           - second point of the line
+     * @param p3           - the point to calculate distance to the line
+     * @param distanceToP2 - the distance between point 3 and point 2, which the frame context already knows
      * @return the distance between the point 3 and the line defined by point 1 and 2
      */
-    public boolean calculateDistancePointToLine(Vector2 p1, Vector2 p2, Vector2 p3) {
+    public boolean calculateDistancePointToLine(Vector2 p1, Vector2 p2, Vector2 p3, float distanceToP2) {
         double x1 = p1.getX();
         double y1 = p1.getY();
         double x2 = p2.getX();
@@ -39,7 +49,8 @@ public class BotInterferedPlacementValidator implements RuleValidator {
 
         // If distance from p3 to p1 or p2 < threshold then it's a violation
         // Step1: Circle check
-        if ((p3.distance(p2) < MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT) || (p3.distance(p2) < MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT)) {
+        float minDistanceSquared = MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT * MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT;
+        if ((p3.distanceSquared(p1) < minDistanceSquared) || (distanceToP2 < MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT)) {
             return true;
         }
 
@@ -99,10 +110,9 @@ public class BotInterferedPlacementValidator implements RuleValidator {
      */
 
     public boolean checkViolation(RobotIdentifier bot, double currentTimeStamp) {
-        if (lastEnterForbiddenArea.containsKey(bot)) {
-            Double timestampLastViolation = lastEnterForbiddenArea.get(bot);
+        if (lastEnterForbiddenArea.contains(bot)) {
             // if enter forbidden area more than 2 second => return fault and reset enter forbidden area time
-            if (currentTimeStamp > timestampLastViolation + GRACE_PERIOD) {
+            if (!lastEnterForbiddenArea.isWithin(bot, currentTimeStamp, GRACE_PERIOD)) {
                 lastEnterForbiddenArea.put(bot, currentTimeStamp);
                 return true;
             }
@@ -122,18 +132,28 @@ public class BotInterferedPlacementValidator implements RuleValidator {
     public RuleViolation validate(Game game) {
         if (game.getState() == GameState.BALL_PLACEMENT) {
 
-            Team opponentTeam = game.getTeam(game.getStateForTeam().getOpponentColor());
-            for (Robot robot : opponentTeam.getRobots()) {
-                Vector2 robotPos = robot.getPosition().xy();
-                Vector2 placementPos = game.getDesignatedPosition();
-                Vector2 ballPos = game.getBall().getPosition().xy();
-                if (calculateDistancePointToLine(ballPos, placementPos, robotPos)) {
-                    if (checkViolation(robot.getIdentifier(), game.getTime())) {
-                        Vector2 roundRobotPos = new Vector2(roundFloatTo1DecimalPlace(robot.getPosition().getX()), roundFloatTo1DecimalPlace(robot.getPosition().getY()));
-                        return new BotInterferedPlacementValidator.BotInterferedPlacementViolation(robot.getTeam().getColor(), robot.getId(), roundRobotPos, ballPos, placementPos);
-                    }
-                } else if (lastEnterForbiddenArea.containsKey(robot.getIdentifier())) {
-                    lastEnterForbiddenArea.remove(robot.getIdentifier());
+            TeamColor opponentColor = game.getStateForTeam().getOpponentColor();
+            placementPos.set(game.getDesignatedPosition());
+            game.getBall().getPosition().xy(ballPos);
+
+            // only robots in the corridor around the line from the ball to the placement position can be in the forbidden area
+            nearbyRobots.clear();
+            robotsInForbiddenArea.clear();
+            game.getRobotGrid().getRobotsNearSegment(ballPos.getX(), ballPos.getY(), placementPos.getX(), placementPos.getY(), MIN_DISTANCE_BETWEEN_ROBOT_AND_PLACEMENT, nearbyRobots);
+            for (Robot robot : nearbyRobots) {
+                if (robot.getTeam().getColor() == opponentColor && calculateDistancePointToLine(ballPos, placementPos,
+                        robot.getPosition().xy(robotPos), game.getFrameContext().getDistanceToDesignatedPosition(robot))) {
+                    robotsInForbiddenArea.add(robot.getIdentifier());
+                }
+            }
+
+            // robots that left the forbidden area start over when they enter it again
+            lastEnterForbiddenArea.retainAll(robotsInForbiddenArea);
+
+            for (Robot robot : nearbyRobots) {
+                if (robotsInForbiddenArea.contains(robot.getIdentifier()) && checkViolation(robot.getIdentifier(), game.getTime())) {
+                    Vector2 roundRobotPos = new Vector2(roundFloatTo1DecimalPlace(robot.getPosition().getX()), roundFloatTo1DecimalPlace(robot.getPosition().getY()));
+                    return new BotInterferedPlacementValidator.BotInterferedPlacementViolation(robot.getTeam().getColor(), robot.getId(), roundRobotPos, ballPos.copy(), placementPos.copy());
                 }
             }
         }
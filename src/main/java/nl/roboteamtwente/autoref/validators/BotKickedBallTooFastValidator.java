@@ -7,13 +7,10 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class BotKickedBallTooFastValidator implements RuleValidator {
 
-    // Hashmap of previous violations
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    // Time of the previous violation of every robot
+    private final RobotTimes lastViolations = new RobotTimes();
 
     // Grace period in seconds
     private static final double GRACE_PERIOD = 2.0;
@@ -28,7 +25,7 @@ public class BotKickedBallTooFastValidator implements RuleValidator {
     public RuleViolation validate(Game game) {
         // Ball speed in m/s
         Ball ball = game.getBall();
-        float speed = ball.getVelocity().xy().magnitude();
+        float speed = game.getFrameContext().getBallSpeed();
 
         // If speed in one frame is higher than 6.5 m/s, ball was kicked too fast by the bot.
         if (speed > 6.5) {
@@ -37,7 +34,7 @@ public class BotKickedBallTooFastValidator implements RuleValidator {
             Vector2 location = ball.getPosition().xy();
 
             // Only if this violation has not been sent in the last 2 seconds, raise it
-            if (!lastViolations.containsKey(robotID) || lastViolations.get(robotID) + GRACE_PERIOD < game.getTime()) {
+            if (!lastViolations.isWithin(robotID, game.getTime(), GRACE_PERIOD)) {
                 lastViolations.put(robotID, game.getTime());
                 return new Violation(team, robotID.id(), location, speed);
             }
@@ -8,8 +8,6 @@ import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
 
 public class BotTooFastInStopValidator implements RuleValidator {
     private static final float MAX_SPEED_ALLOWED = 1.5f;
@@ -18,7 +16,7 @@ public class BotTooFastInStopValidator implements RuleValidator {
     private static final double GRACE_PERIOD = 2.0;
 
     //Set of violators in STOP state
-    private final Set<RobotIdentifier> violatorsSet = new HashSet<>();
+    private final RobotFlags violatorsSet = new RobotFlags();
 
     //Hashmap of last violation per team
     private final HashMap<TeamColor, Double> teamLastViolation = new HashMap<>();
@@ -32,7 +30,7 @@ public class BotTooFastInStopValidator implements RuleValidator {
         for (TeamColor team : TeamColor.values()) {
             if (!teamLastViolation.containsKey(team) || teamLastViolation.get(team) + GRACE_PERIOD > game.getTime()) {
                 for (Robot robot : game.getTeam(team).getRobots()) {
-                    RuleViolation violation = validateRobot(robot);
+                    RuleViolation violation = validateRobot(robot, game.getFrameContext().getRobotSpeed(robot));
                     if (violation != null) {
                         teamLastViolation.put(team, game.getTime());
                         return violation;
@@ -47,13 +45,12 @@ public class BotTooFastInStopValidator implements RuleValidator {
     /**
      * Check if the robot is too fast
      * @param robot robot
+     * @param robotSpeed speed of the robot
      * @return violation record || null
      */
-    public RuleViolation validateRobot(Robot robot) {
-        float robotSpeed = robot.getVelocity().xy().magnitude();
+    public RuleViolation validateRobot(Robot robot, float robotSpeed) {
         //Rule state: A robot must not move faster than 1.5 meters per second during stop. A violation of this rule is only counted once per robot and stoppage.
-        if (robotSpeed > MAX_SPEED_ALLOWED && !violatorsSet.contains(robot.getIdentifier())) {
-            violatorsSet.add(robot.getIdentifier());
+        if (robotSpeed > MAX_SPEED_ALLOWED && violatorsSet.add(robot.getIdentifier())) {
             return new BotTooFastInStopValidator.BotTooFastInStopViolation(robot.getId(), robot.getTeam().getColor(), robot.getPosition().xy(), robotSpeed);
         }
         return null;
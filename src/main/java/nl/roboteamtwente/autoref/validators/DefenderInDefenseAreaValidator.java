@@ -7,12 +7,9 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class DefenderInDefenseAreaValidator implements RuleValidator {
 
-    private final Map<RobotIdentifier, Double> lastViolations = new HashMap<>();
+    private final RobotTimes lastViolations = new RobotTimes();
 
     private static final double GRACE_PERIOD = 2.0;
 
@@ -24,16 +21,7 @@ public class DefenderInDefenseAreaValidator implements RuleValidator {
      * @return true if bot still under GRACE_PERIOD
      */
     private boolean botStillOnCoolDown(RobotIdentifier bot, double currentTimeStamp) {
-        if (lastViolations.containsKey(bot)) {
-            Double timestampLastViolation = lastViolations.get(bot);
-            if (currentTimeStamp <= timestampLastViolation + GRACE_PERIOD) {
-                return true;
-            } else {
-                lastViolations.remove(bot);
-                return false;
-            }
-        }
-        return false;
+        return lastViolations.isWithin(bot, currentTimeStamp, GRACE_PERIOD);
     }
 
 
@@ -47,22 +35,21 @@ public class DefenderInDefenseAreaValidator implements RuleValidator {
      */
     @Override
     public RuleViolation validate(Game game) {
+        FieldZones zones = game.getField().getZones();
+
         for (Robot robot : game.getBall().getRobotsTouching()) {
             Side side = game.getTeam(robot.getTeam().getColor()).getSide();
-            String sideString = side == Side.LEFT ? "Left" : "Right";
 
             if (robot.isGoalkeeper()) {
                 continue;
             }
 
-            if (!game.getField().isInDefenseArea(robot.getTeam().getSide(), robot.getPosition().xy())) {
+            if (!zones.isInDefenseArea(side, robot.getPosition().getX(), robot.getPosition().getY(), 0)) {
                 continue;
             }
 
-            FieldLine penaltyStretch = game.getField().getLineByName(sideString + "PenaltyStretch");
-            FieldLine rightPenaltyStretch = game.getField().getLineByName(sideString + "FieldRightPenaltyStretch");
-            FieldLine leftPenaltyStretch = game.getField().getLineByName(sideString + "FieldLeftPenaltyStretch");
-            float dist = Math.min(Math.abs(game.getLastStartedTouch().startLocation().getX() - penaltyStretch.p1().getX()), Math.min(Math.abs( game.getLastStartedTouch().startLocation().getY() - rightPenaltyStretch.p1().getY()), Math.abs(game.getLastStartedTouch().startLocation().getY() - leftPenaltyStretch.p1().getY())));
+            Vector3 touchLocation = game.getLastStartedTouch().startLocation();
+            float dist = Math.min(Math.abs(touchLocation.getX() - zones.getDefenseAreaFrontX(side)), Math.min(Math.abs(touchLocation.getY() - zones.getDefenseAreaTopY(side)), Math.abs(touchLocation.getY() - zones.getDefenseAreaBottomY(side))));
             if (!botStillOnCoolDown(robot.getIdentifier(), game.getTime())) {
                 lastViolations.put(robot.getIdentifier(), game.getTime());
                 return new Violation(robot.getTeam().getColor(), robot.getId(), robot.getPosition().xy(), dist);
@@ -7,6 +7,8 @@ import org.robocup.ssl.proto.SslGcCommon;
 import org.robocup.ssl.proto.SslGcGameEvent;
 import org.robocup.ssl.proto.SslGcGeometry;
 
+import java.util.ArrayList;
+import java.util.List;
 
 public class DefenderTooCloseToKickPointValidator implements RuleValidator {
 
@@ -16,6 +18,9 @@ public class DefenderTooCloseToKickPointValidator implements RuleValidator {
     // Game time in seconds since the last violation was raised
     private double lastViolation = Double.NEGATIVE_INFINITY;
 
+    // Robots close to the ball, reused between frames
+    private final List<Robot> nearbyRobots = new ArrayList<>();
+
     /**
      * The validate method of this class determines if a robot of the defending team
      * is too close to the ball during the relevant game states
@@ -32,23 +37,27 @@ public class DefenderTooCloseToKickPointValidator implements RuleValidator {
 
         // Height is not important in this case:
         // ball will always remain on the ground during these game states
-        Vector2 ball = game.getBall().getPosition().xy();
+        Vector3 ball = game.getBall().getPosition();
 
         // Get defending teamColor from the game state
         TeamColor defendingTeamColor = game.getStateForTeam().getOpponentColor();
 
         // Check if defender robots are too close to the ball (within 0.5m)
-        for (Robot robot : game.getTeam(defendingTeamColor).getRobots()) {
-            Vector2 robotPos = robot.getPosition().xy();
+        nearbyRobots.clear();
+        game.getRobotGrid().getRobotsInRadius(ball.getX(), ball.getY(), 0.5f, nearbyRobots);
+        for (Robot robot : nearbyRobots) {
+            if (robot.getTeam().getColor() != defendingTeamColor) {
+                continue;
+            }
 
-            // Calculate distance to ball
-            float distanceToBall = ball.distance(robotPos);
+            // Distance to ball, shared with the other validators
+            float distanceToBall = game.getFrameContext().getDistanceToBall(robot);
 
             // If robot is within 0.5m of the ball, it is too close
             if (distanceToBall < 0.5) {
                 if (lastViolation + GRACE_PERIOD < game.getTime()) {
                     lastViolation = game.getTime();
-                    return new Violation(robot.getTeam().getColor(), robot.getId(), robotPos, distanceToBall);
+                    return new Violation(robot.getTeam().getColor(), robot.getId(), robot.getPosition().xy(), distanceToBall);
                 }
             }
         }
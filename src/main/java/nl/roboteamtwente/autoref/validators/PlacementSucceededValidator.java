@@ -19,10 +19,10 @@ public class PlacementSucceededValidator implements RuleValidator {
 
     private static final float STATIONARY_THRESHOLD = 0.005f;
 
-    private static Vector3 initialBallPosition;
+    private Vector3 initialBallPosition;
 
     //Rule states: validator only raised 1 per ball placement
-    private static boolean issueValidator = false;
+    private boolean issueValidator = false;
 
     /**
      * Check if the ball is stationary with its velocity
@@ -33,16 +33,15 @@ public class PlacementSucceededValidator implements RuleValidator {
      */
     public boolean isConsideredPlacedSuccessfully(Game game) {
         // Ball must be stationary during placement
-        if (game.getBall().getVelocity().xy().magnitude() > STATIONARY_THRESHOLD) {
+        FrameContext context = game.getFrameContext();
+        if (context.getBallSpeed() > STATIONARY_THRESHOLD) {
             return false;
         }
 
-        //All robot must keep distance to ball during the placement
+        //All robot must keep distance to ball during the placement, so the closest robot of each team must
         double minDistance = isNextCommandForPlacingTeam(game) ? FREE_KICK_PLACEMENT_DISTANCE : FORCE_START_PLACEMENT_DISTANCE;
-        Vector2 ballPosition = game.getBall().getPosition().xy();
-
-        for (Robot robot : game.getRobots()) {
-            if (robot.getPosition().xy().distance(ballPosition) < minDistance) {
+        for (TeamColor color : TeamColor.values()) {
+            if (context.getNearestDistanceToBall(color) < minDistance) {
                 return false;
             }
         }
@@ -76,14 +75,14 @@ public class PlacementSucceededValidator implements RuleValidator {
 
         Vector3 currentBallPos = game.getBall().getPosition();
         TeamColor forTeam = game.getStateForTeam();
-        float precision = game.getDesignatedPosition().distance(currentBallPos.xy());
+        float precision = currentBallPos.distance2d(game.getDesignatedPosition());
         double timeTaken = game.getTime() - game.getTimeLastGameStateChange();
 
         //Check the constraint for distance between ball and designated position and the ball placement cannot perform earlier than 2 seconds after the ball placement command has been issued
         if (precision <= MAXIMUM_PLACEMENT_DISTANCE_BETWEEN_BALL_AND_DESIGNATED_POS && timeTaken >= MIN_PLACEMENT_TIME) {
             if (isConsideredPlacedSuccessfully(game)) {
                 issueValidator = true;
-                float distance = initialBallPosition.xy().distance(currentBallPos.xy());
+                float distance = initialBallPosition.distance2d(currentBallPos);
 
                 return new PlacementSucceededValidator.PlacementSucceededViolation(forTeam, (float) timeTaken, precision, distance);
             }
@@ -94,7 +93,7 @@ public class PlacementSucceededValidator implements RuleValidator {
 
     @Override
     public void reset(Game game) {
-        initialBallPosition = game.getBall().getPosition();
+        initialBallPosition = game.getBall().getPosition().copy();
         issueValidator = false;
     }
 
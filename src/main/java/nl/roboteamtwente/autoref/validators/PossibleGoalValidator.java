@@ -12,6 +12,9 @@ public class PossibleGoalValidator implements RuleValidator {
     // Check if possible goal is raised
     private boolean isEventRaised = false;
 
+    // Position of the ball in the current frame, reused between frames
+    private final Vector2 ballPos = new Vector2(0, 0);
+
     /**
      * Check if the ball position is inside the goal post
      * Division A and B have different goal size
@@ -68,7 +71,7 @@ public class PossibleGoalValidator implements RuleValidator {
         if (isEventRaised) {
             return null;
         }
-        Vector2 ballPos = game.getBall().getPosition().xy();
+        game.getBall().getPosition().xy(ballPos);
 
         Touch touch = game.getLastFinishedTouch();
         if (touch == null) {
@@ -91,7 +94,7 @@ public class PossibleGoalValidator implements RuleValidator {
 
             int numRobotsByTeam = game.getTeam(byTeam).getRobots().size();
             isEventRaised = true;
-            return new PossibleGoalValidator.PossibleGoal(byTeam, kickingTeam, kickBot.id(), ballPos, kickLocation, 0f, numRobotsByTeam, (int) lastTouchTimeStampByTeam);
+            return new PossibleGoalValidator.PossibleGoal(byTeam, kickingTeam, kickBot.id(), ballPos.copy(), kickLocation, 0f, numRobotsByTeam, (int) lastTouchTimeStampByTeam);
         }
         return null;
     }
@@ -0,0 +1,100 @@
+package nl.roboteamtwente.autoref;
+
+import nl.roboteamtwente.proto.StateOuterClass;
+import nl.roboteamtwente.proto.Vector2FOuterClass;
+import nl.roboteamtwente.proto.WorldBallOuterClass;
+import nl.roboteamtwente.proto.WorldOuterClass;
+import nl.roboteamtwente.proto.WorldRobotOuterClass;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that deriving recycled games allocates less than deriving a new game for every frame, so a change that
+ * makes the recycled path allocate again is noticed.
+ */
+class RecycledGameAllocationTest {
+    private static final int FRAMES = 500;
+    private static final int ROBOTS_PER_TEAM = 11;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void recycledGamesAllocateLess() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        List<StateOuterClass.State> states = states();
+
+        // the first runs warm up the JIT, so escape analysis is the same for both
+        derive(states, false);
+        derive(states, true);
+
+        long allocated = derive(states, false);
+        long recycled = derive(states, true);
+
+        assertTrue(recycled < allocated,
+                "recycled games allocated " + recycled / FRAMES + " B/frame, new games " + allocated / FRAMES + " B/frame");
+    }
+
+    /**
+     * @return the bytes allocated while deriving the games of all states
+     */
+    private long derive(List<StateOuterClass.State> states, boolean recycleGames) {
+        SSLAutoRef autoRef = new SSLAutoRef();
+        autoRef.setRecycleGames(recycleGames);
+
+        long bytes = 0;
+        for (StateOuterClass.State state : states) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            autoRef.processWorldState(state);
+            bytes += threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return bytes;
+    }
+
+    /**
+     * Robots of both teams driving in circles, without the referee and the geometry, which are not needed to
+     * derive a game.
+     */
+    private static List<StateOuterClass.State> states() {
+        List<StateOuterClass.State> states = new ArrayList<>();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            double time = frame / 100.0;
+
+            WorldOuterClass.World.Builder world = WorldOuterClass.World.newBuilder()
+                    .setTime((long) (time * 1_000_000_000L))
+                    .setId(frame)
+                    .setBall(WorldBallOuterClass.WorldBall.newBuilder()
+                            .setPos(vector((float) Math.cos(time), 0.0f))
+                            .setVel(vector((float) -Math.sin(time), 0.0f))
+                            .setVisible(true));
+
+            for (int id = 0; id < ROBOTS_PER_TEAM; id++) {
+                world.addBlue(robot(id, -1.0f - id * 0.3f, time));
+                world.addYellow(robot(id, 1.0f + id * 0.3f, time));
+            }
+
+            states.add(StateOuterClass.State.newBuilder().setCommandExtrapolatedWorld(world).build());
+        }
+        return states;
+    }
+
+    private static WorldRobotOuterClass.WorldRobot robot(int id, float x, double time) {
+        float angle = (float) (time + id);
+        return WorldRobotOuterClass.WorldRobot.newBuilder()
+                .setId(id)
+                .setPos(vector(x + 0.2f * (float) Math.cos(angle), 0.2f * (float) Math.sin(angle)))
+                .setAngle(angle)
+                .setVel(vector(-0.2f * (float) Math.sin(angle), 0.2f * (float) Math.cos(angle)))
+                .build();
+    }
+
+    private static Vector2FOuterClass.Vector2f vector(float x, float y) {
+        return Vector2FOuterClass.Vector2f.newBuilder().setX(x).setY(y).build();
+    }
+}
@@ -0,0 +1,63 @@
+package nl.roboteamtwente.autoref.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldZonesTest {
+    /**
+     * A division B field of 9 by 6 m with defense areas of 1 by 2 m, leaving out the lines of the defense areas
+     * of the given sides.
+     */
+    private static Field field(Side... withoutDefenseArea) {
+        List<FieldLine> lines = new ArrayList<>();
+        lines.add(line("HalfwayLine", 0, -3, 0, 3));
+        for (Side side : Side.values()) {
+            String name = side == Side.LEFT ? "Left" : "Right";
+            float goalX = 4.5f * side.getCardinality();
+            float frontX = 3.5f * side.getCardinality();
+            lines.add(line(name + "GoalLine", goalX, -3, goalX, 3));
+
+            if (!List.of(withoutDefenseArea).contains(side)) {
+                lines.add(line(name + "PenaltyStretch", frontX, -1, frontX, 1));
+                lines.add(line(name + "FieldRightPenaltyStretch", goalX, -1, frontX, -1));
+                lines.add(line(name + "FieldLeftPenaltyStretch", goalX, 1, frontX, 1));
+            }
+        }
+        return new Field(new Vector2(-4.5f, -3), new Vector2(9, 6), 0.3f, 1, 0.18f, lines);
+    }
+
+    private static FieldLine line(String name, float x1, float y1, float x2, float y2) {
+        return new FieldLine(name, new Vector2(x1, y1), new Vector2(x2, y2), 0.01f);
+    }
+
+    @Test
+    void classifiesPointsAroundDefenseArea() {
+        FieldZones zones = field().getZones();
+
+        assertTrue(zones.hasDefenseArea(Side.LEFT));
+        assertTrue(zones.isInDefenseArea(Side.LEFT, -4.0f, 0.5f, 0));
+        assertFalse(zones.isInDefenseArea(Side.LEFT, -3.4f, 0.5f, 0));
+        assertTrue(zones.isInDefenseArea(Side.LEFT, -3.4f, 0.5f, 0.2f));
+        assertFalse(zones.isInDefenseArea(Side.RIGHT, -4.0f, 0.5f, 0));
+
+        assertEquals(0.0f, zones.distanceToDefenseArea(Side.RIGHT, 4.0f, 0.0f), 1e-6f);
+        assertEquals(0.5f, zones.distanceToDefenseArea(Side.RIGHT, 3.0f, 0.0f), 1e-6f);
+        assertEquals(0.5f, zones.distanceToDefenseArea(Side.RIGHT, 4.0f, 1.5f), 1e-6f);
+    }
+
+    @Test
+    void missingLinesOnlyDisableTheirOwnSide() {
+        FieldZones zones = field(Side.RIGHT).getZones();
+
+        assertTrue(zones.hasDefenseArea(Side.LEFT));
+        assertFalse(zones.hasDefenseArea(Side.RIGHT));
+
+        assertTrue(zones.isInDefenseArea(Side.LEFT, -4.0f, 0.0f, 0));
+        assertFalse(zones.isInDefenseArea(Side.RIGHT, 4.0f, 0.0f, 0));
+        assertEquals(Float.POSITIVE_INFINITY, zones.distanceToDefenseArea(Side.RIGHT, 4.0f, 0.0f), 0);
+    }
+}
@@ -0,0 +1,46 @@
+package nl.roboteamtwente.autoref.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotFlagsTest {
+    @Test
+    void addReportsOnlyNewRobots() {
+        RobotFlags flags = new RobotFlags();
+        RobotIdentifier robot = RobotIdentifier.of(TeamColor.BLUE, 15);
+
+        assertTrue(flags.isEmpty());
+        assertTrue(flags.add(robot));
+        assertFalse(flags.add(robot));
+        assertTrue(flags.contains(robot));
+        assertFalse(flags.contains(RobotIdentifier.of(TeamColor.YELLOW, 15)));
+    }
+
+    @Test
+    void keepsRobotsWithoutSlot() {
+        RobotFlags flags = new RobotFlags();
+        RobotIdentifier robot = RobotIdentifier.of(TeamColor.YELLOW, 16);
+        assertEquals(-1, robot.slot());
+
+        assertTrue(flags.add(robot));
+        assertFalse(flags.add(RobotIdentifier.of(TeamColor.YELLOW, 16)));
+        assertTrue(flags.contains(robot));
+        assertFalse(flags.isEmpty());
+
+        flags.remove(robot);
+        assertFalse(flags.contains(robot));
+        assertTrue(flags.isEmpty());
+    }
+
+    @Test
+    void clearRemovesAllRobots() {
+        RobotFlags flags = new RobotFlags();
+        flags.add(RobotIdentifier.of(TeamColor.BLUE, 0));
+        flags.add(RobotIdentifier.of(TeamColor.BLUE, 40));
+
+        flags.clear();
+        assertTrue(flags.isEmpty());
+        assertFalse(flags.contains(RobotIdentifier.of(TeamColor.BLUE, 40)));
+    }
+}
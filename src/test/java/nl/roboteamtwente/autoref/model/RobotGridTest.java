@@ -0,0 +1,146 @@
+package nl.roboteamtwente.autoref.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotGridTest {
+    private static Robot robot(int id, float x, float y) {
+        Robot robot = new Robot(id);
+        robot.getPosition().setX(x);
+        robot.getPosition().setY(y);
+        return robot;
+    }
+
+    private static Set<Integer> ids(List<Robot> robots) {
+        Set<Integer> ids = new HashSet<>();
+        for (Robot robot : robots) {
+            assertTrue(ids.add(robot.getId()), "robot " + robot.getId() + " was found twice");
+        }
+        return ids;
+    }
+
+    @Test
+    void findsRobotsOnCellBoundaries() {
+        // cells are 0.5 m wide starting at the lowest robot, so these robots are on the edges of cells
+        List<Robot> robots = List.of(robot(0, 0, 0), robot(1, 0.5f, 0), robot(2, 1.0f, 0), robot(3, 0.49f, 0.49f), robot(4, 3, 3));
+        RobotGrid grid = new RobotGrid();
+        grid.rebuild(robots);
+
+        assertEquals(Set.of(0, 1, 2, 3), ids(grid.getRobotsInRadius(0.5f, 0, 0.5f, new ArrayList<>())));
+        assertEquals(Set.of(1), ids(grid.getRobotsInRadius(0.5f, 0, 0.0f, new ArrayList<>())));
+        assertEquals(Set.of(1, 2), ids(grid.getRobotsInRectangle(0.5f, 0, 1.0f, 0, new ArrayList<>())));
+        assertEquals(Set.of(4), ids(grid.getRobotsInRadius(3, 3, 0.1f, new ArrayList<>())));
+
+        // queries reaching outside the robots are clamped to the grid
+        assertEquals(Set.of(0, 1, 2, 3, 4), ids(grid.getRobotsInRectangle(-100, -100, 100, 100, new ArrayList<>())));
+        assertTrue(grid.getRobotsInRadius(-10, -10, 1, new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    void findsRobotsInCorridorAroundSegment() {
+        List<Robot> robots = List.of(
+                robot(0, 1.0f, 0.5f), robot(1, 1.0f, 0.6f),
+                robot(2, 2.4f, 0), robot(3, 2.6f, 0),
+                robot(4, -0.3f, 0.3f), robot(5, -0.4f, 0.4f),
+                robot(6, 1.0f, -0.25f));
+        RobotGrid grid = new RobotGrid();
+        grid.rebuild(robots);
+
+        assertEquals(Set.of(0, 2, 4, 6), ids(grid.getRobotsNearSegment(0, 0, 2, 0, 0.5f, new ArrayList<>())));
+        assertEquals(Set.of(0, 2, 4, 6), ids(grid.getRobotsNearSegment(2, 0, 0, 0, 0.5f, new ArrayList<>())));
+
+        // a segment of length zero is a circle
+        assertEquals(Set.of(2, 3), ids(grid.getRobotsNearSegment(2.5f, 0, 2.5f, 0, 0.1f, new ArrayList<>())));
+    }
+
+    @Test
+    void matchesBruteForceForRandomRobotsAndQueries() {
+        Random random = new Random(42);
+        List<Robot> robots = new ArrayList<>();
+        for (int id = 0; id < 200; id++) {
+            robots.add(robot(id, random.nextFloat() * 12 - 6, random.nextFloat() * 9 - 4.5f));
+        }
+        RobotGrid grid = new RobotGrid();
+        grid.rebuild(robots);
+        assertEquals(200, grid.size());
+
+        for (int query = 0; query < 500; query++) {
+            float x1 = random.nextFloat() * 14 - 7;
+            float y1 = random.nextFloat() * 11 - 5.5f;
+            float x2 = random.nextFloat() * 14 - 7;
+            float y2 = random.nextFloat() * 11 - 5.5f;
+            float radius = random.nextFloat() * 2;
+
+            Set<Integer> inRadius = new HashSet<>();
+            Set<Integer> nearSegment = new HashSet<>();
+            Set<Integer> inRectangle = new HashSet<>();
+            for (Robot robot : robots) {
+                float x = robot.getPosition().getX();
+                float y = robot.getPosition().getY();
+                if ((x - x1) * (x - x1) + (y - y1) * (y - y1) <= radius * radius) {
+                    inRadius.add(robot.getId());
+                }
+                if (distanceToSegment(x, y, x1, y1, x2, y2) <= radius - 1e-4) {
+                    nearSegment.add(robot.getId());
+                }
+                if (x >= Math.min(x1, x2) && x <= Math.max(x1, x2) && y >= Math.min(y1, y2) && y <= Math.max(y1, y2)) {
+                    inRectangle.add(robot.getId());
+                }
+            }
+
+            assertEquals(inRadius, ids(grid.getRobotsInRadius(x1, y1, radius, new ArrayList<>())));
+            assertEquals(inRectangle, ids(grid.getRobotsInRectangle(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2), new ArrayList<>())));
+
+            // the grid may find robots within rounding distance of the corridor, but never misses one
+            Set<Integer> found = ids(grid.getRobotsNearSegment(x1, y1, x2, y2, radius, new ArrayList<>()));
+            assertTrue(found.containsAll(nearSegment));
+            for (int id : found) {
+                Robot robot = robots.get(id);
+                assertTrue(distanceToSegment(robot.getPosition().getX(), robot.getPosition().getY(), x1, y1, x2, y2) <= radius + 1e-4);
+            }
+        }
+    }
+
+    private static double distanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    @Test
+    void growsCellsForRobotsFarApart() {
+        List<Robot> robots = List.of(robot(0, 0, 0), robot(1, 1000, 1000), robot(2, 999.9f, 1000));
+        RobotGrid grid = new RobotGrid();
+        grid.rebuild(robots);
+
+        assertEquals(Set.of(1, 2), ids(grid.getRobotsInRadius(1000, 1000, 0.2f, new ArrayList<>())));
+        assertEquals(Set.of(0), ids(grid.getRobotsNearSegment(-1, 0, 1, 0, 0.1f, new ArrayList<>())));
+    }
+
+    @Test
+    void forgetsRobotsOfEarlierRebuilds() {
+        RobotGrid grid = new RobotGrid();
+        grid.rebuild(List.of(robot(0, 0, 0), robot(1, 1, 1), robot(2, 2, 2)));
+        grid.rebuild(List.of(robot(3, 1, 1)));
+
+        assertEquals(1, grid.size());
+        assertEquals(Set.of(3), ids(grid.getRobotsInRectangle(-10, -10, 10, 10, new ArrayList<>())));
+
+        grid.rebuild(List.of());
+        assertEquals(0, grid.size());
+        assertTrue(grid.getRobotsInRadius(1, 1, 5, new ArrayList<>()).isEmpty());
+
+        grid.rebuild(List.of(robot(4, 0, 0)));
+        grid.clear();
+        assertTrue(grid.getRobotsInRadius(0, 0, 1, new ArrayList<>()).isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package nl.roboteamtwente.autoref.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotTimesTest {
+    private static final RobotIdentifier IN_RULES = RobotIdentifier.of(TeamColor.BLUE, 3);
+    private static final RobotIdentifier OUT_OF_RULES = RobotIdentifier.of(TeamColor.YELLOW, 20);
+
+    @Test
+    void robotsWithoutTimeAreNeverWithinPeriod() {
+        RobotTimes times = new RobotTimes();
+
+        assertFalse(times.contains(IN_RULES));
+        assertTrue(Double.isNaN(times.get(OUT_OF_RULES)));
+        assertFalse(times.isWithin(IN_RULES, 0.0, 10.0));
+        assertFalse(times.isWithin(OUT_OF_RULES, 0.0, 10.0));
+    }
+
+    @Test
+    void keepsTimesOfRobotsWithAndWithoutSlot() {
+        RobotTimes times = new RobotTimes();
+        times.put(IN_RULES, 1.0);
+        times.put(OUT_OF_RULES, 2.0);
+
+        assertEquals(1.0, times.get(IN_RULES));
+        assertEquals(2.0, times.get(RobotIdentifier.of(TeamColor.YELLOW, 20)));
+        assertTrue(times.isWithin(OUT_OF_RULES, 3.0, 1.0));
+        assertFalse(times.isWithin(OUT_OF_RULES, 3.5, 1.0));
+
+        times.remove(OUT_OF_RULES);
+        assertFalse(times.contains(OUT_OF_RULES));
+        assertTrue(times.contains(IN_RULES));
+    }
+
+    @Test
+    void retainAllForgetsRobotsNotInSet() {
+        RobotIdentifier otherInRules = RobotIdentifier.of(TeamColor.YELLOW, 3);
+        RobotIdentifier otherOutOfRules = RobotIdentifier.of(TeamColor.BLUE, 99);
+
+        RobotTimes times = new RobotTimes();
+        times.put(IN_RULES, 1.0);
+        times.put(otherInRules, 1.0);
+        times.put(OUT_OF_RULES, 1.0);
+        times.put(otherOutOfRules, 1.0);
+
+        RobotFlags keep = new RobotFlags();
+        keep.add(IN_RULES);
+        keep.add(OUT_OF_RULES);
+        times.retainAll(keep);
+
+        assertTrue(times.contains(IN_RULES));
+        assertTrue(times.contains(OUT_OF_RULES));
+        assertFalse(times.contains(otherInRules));
+        assertFalse(times.contains(otherOutOfRules));
+
+        times.clear();
+        assertFalse(times.contains(IN_RULES));
+        assertFalse(times.contains(OUT_OF_RULES));
+    }
+}
@@ -0,0 +1,120 @@
+package nl.roboteamtwente.autoref.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TouchTimelineTest {
+    private static final RobotIdentifier BLUE_1 = RobotIdentifier.of(TeamColor.BLUE, 1);
+    private static final RobotIdentifier YELLOW_2 = RobotIdentifier.of(TeamColor.YELLOW, 2);
+
+    private static Touch touch(int id, RobotIdentifier by) {
+        Vector3 location = new Vector3(id, 0, 0);
+        Vector3 velocity = new Vector3(0, 0, 0);
+        return new Touch(id, location, location, id, id + 0.5, velocity, velocity, by);
+    }
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(2, new TouchTimeline(1).getCapacity());
+        assertEquals(8, new TouchTimeline(5).getCapacity());
+        assertEquals(8, new TouchTimeline(8).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new TouchTimeline(0));
+    }
+
+    @Test
+    void rejectsUnfinishedTouches() {
+        TouchTimeline timeline = new TouchTimeline(4);
+        Touch unfinished = new Touch(0, new Vector3(0, 0, 0), null, 0, null, new Vector3(0, 0, 0), null, BLUE_1);
+
+        assertThrows(IllegalArgumentException.class, () -> timeline.add(unfinished));
+        assertEquals(0, timeline.size());
+    }
+
+    @Test
+    void releasesOldestTouchesWhenWrappingAround() {
+        TouchTimeline timeline = new TouchTimeline(4);
+        for (int id = 0; id < 10; id++) {
+            assertEquals(id, timeline.add(touch(id, BLUE_1)));
+        }
+
+        assertEquals(10, timeline.size());
+        assertEquals(6, timeline.getOldest());
+        for (int position = 6; position < 10; position++) {
+            assertEquals(position, timeline.get(position).id());
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> timeline.get(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> timeline.get(10));
+
+        List<Touch> all = timeline.view(0, 10);
+        assertEquals(4, all.size());
+        assertEquals(6, all.get(0).id());
+        assertEquals(9, all.get(3).id());
+
+        List<Touch> range = timeline.view(7, 9);
+        assertEquals(2, range.size());
+        assertEquals(7, range.get(0).id());
+        assertEquals(8, range.get(1).id());
+        assertTrue(timeline.view(0, 6).isEmpty());
+
+        assertEquals(9, timeline.getLast(0, 10).id());
+        assertEquals(9, timeline.getLast(0, 100).id());
+        assertEquals(7, timeline.getLast(0, 8).id());
+        assertNull(timeline.getLast(0, 6));
+        assertNull(timeline.getLast(8, 8));
+    }
+
+    @Test
+    void followsLinksToPreviousTouchOfSameRobot() {
+        TouchTimeline timeline = new TouchTimeline(16);
+        timeline.add(touch(0, BLUE_1));
+        timeline.add(touch(1, YELLOW_2));
+        timeline.add(touch(2, YELLOW_2));
+        timeline.add(touch(3, BLUE_1));
+        timeline.add(touch(4, YELLOW_2));
+
+        assertEquals(3, timeline.getLastBy(BLUE_1, 0, 5).id());
+        assertEquals(0, timeline.getLastBy(BLUE_1, 0, 3).id());
+        assertNull(timeline.getLastBy(BLUE_1, 1, 3));
+        assertEquals(4, timeline.getLastBy(YELLOW_2, 0, 5).id());
+        assertEquals(2, timeline.getLastBy(YELLOW_2, 0, 4).id());
+        assertNull(timeline.getLastBy(RobotIdentifier.of(TeamColor.BLUE, 5), 0, 5));
+    }
+
+    @Test
+    void doesNotFollowLinksPastReleasedTouches() {
+        TouchTimeline timeline = new TouchTimeline(4);
+        timeline.add(touch(0, BLUE_1));
+        for (int id = 1; id < 5; id++) {
+            timeline.add(touch(id, YELLOW_2));
+        }
+        timeline.add(touch(5, BLUE_1));
+
+        // the first touch of the blue robot was released, its link must not lead to the touch now in its place
+        assertEquals(2, timeline.getOldest());
+        assertEquals(5, timeline.getLastBy(BLUE_1, 0, 6).id());
+        assertNull(timeline.getLastBy(BLUE_1, 0, 5));
+
+        for (int id = 6; id < 10; id++) {
+            timeline.add(touch(id, YELLOW_2));
+        }
+        assertNull(timeline.getLastBy(BLUE_1, 0, 10));
+        assertEquals(9, timeline.getLastBy(YELLOW_2, 0, 10).id());
+    }
+
+    @Test
+    void findsTouchesOfRobotsWithoutSlot() {
+        RobotIdentifier withoutSlot = RobotIdentifier.of(TeamColor.BLUE, 20);
+        TouchTimeline timeline = new TouchTimeline(4);
+        timeline.add(touch(0, withoutSlot));
+        timeline.add(touch(1, BLUE_1));
+        timeline.add(touch(2, withoutSlot));
+        timeline.add(touch(3, BLUE_1));
+
+        assertEquals(2, timeline.getLastBy(withoutSlot, 0, 4).id());
+        assertEquals(0, timeline.getLastBy(withoutSlot, 0, 2).id());
+        assertNull(timeline.getLastBy(withoutSlot, 3, 4));
+    }
+}